@@ -44,6 +44,9 @@ public class SpoutConfiguration extends ConfigurationHolderConfiguration {
 	public static final ConfigurationHolder RECLAIM_MEMORY = new ConfigurationHolder(true, "general", "reclaim-memory");
 	public static final ConfigurationHolder AUTOSAVE_INTERVAL = new ConfigurationHolder(60000, "general", "autosave-interval");
 	public static final ConfigurationHolder CONSOLE_TYPE = new ConfigurationHolder("jline", "general", "console");
+	public static final ConfigurationHolder ASYNC_TASK_THREADS = new ConfigurationHolder(20, "general", "async-task-threads");
+	public static final ConfigurationHolder ASYNC_TASK_QUEUE = new ConfigurationHolder(1024, "general", "async-task-queue-per-plugin");
+	public static final ConfigurationHolder PRELOAD_THREADS = new ConfigurationHolder(0, "general", "preload-threads");
 	// Lightning
 	public static final ConfigurationHolder LIGHTING_ENABLED = new ConfigurationHolder(true, "lightning", "enabled");
 	public static final ConfigurationHolder LIVE_LIGHTING = new ConfigurationHolder(false, "lightning", "live-lighting");
@@ -53,12 +56,20 @@ public class SpoutConfiguration extends ConfigurationHolderConfiguration {
 	public static final ConfigurationHolder UNLOAD_CHUNKS_PER_TICK = new ConfigurationHolder(50, "chunks", "unload-per-tick");
 	public static final ConfigurationHolder DYNAMIC_BLOCKS = new ConfigurationHolder(true, "chunks", "dynamic-blocks");
 	public static final ConfigurationHolder BLOCK_PHYSICS = new ConfigurationHolder(true, "chunks", "block-physics");
+	public static final ConfigurationHolder GENERATOR_THREADS = new ConfigurationHolder(0, "chunks", "generator-threads");
+	public static final ConfigurationHolder POPULATION_BUDGET = new ConfigurationHolder(10, "chunks", "population-budget");
+	public static final ConfigurationHolder PARALLEL_POPULATION = new ConfigurationHolder(false, "chunks", "parallel-population");
+	// Rendering
+	public static final ConfigurationHolder MESH_THREADS = new ConfigurationHolder(0, "rendering", "mesh-threads");
+	public static final ConfigurationHolder GREEDY_MESHING = new ConfigurationHolder(true, "rendering", "greedy-meshing");
 	// Messages
 	public static final ConfigurationHolder DEFAULT_LANGUAGE = new ConfigurationHolder("EN_US", "messages", "default-language");
 	// Network
 	public static final ConfigurationHolder UPNP = new ConfigurationHolder(true, "network", "upnp");
 	public static final ConfigurationHolder BONJOUR = new ConfigurationHolder(false, "network", "bonjour");
 	public static final ConfigurationHolder SHOW_CONNECTIONS = new ConfigurationHolder(false, "network", "show-connections");
+	public static final ConfigurationHolder CHUNK_SEND_BYTES_PER_TICK = new ConfigurationHolder(131072, "network", "chunk-send-bytes-per-tick");
+	public static final ConfigurationHolder PROXY_RAW_FORWARDING = new ConfigurationHolder(true, "network", "proxy-raw-forwarding");
 	// Debug
 	public static final ConfigurationHolder SEND_LATENCY = new ConfigurationHolder(0L, "debug", "send-latency");
 	public static final ConfigurationHolder SEND_SPIKE_LATENCY = new ConfigurationHolder(0L, "debug", "send-spike-latency");
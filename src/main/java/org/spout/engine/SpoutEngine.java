@@ -127,7 +127,7 @@ import org.spout.engine.util.thread.snapshotable.SnapshotableReference;
 import org.spout.engine.world.MemoryReclamationThread;
 import org.spout.engine.world.SpoutRegion;
 import org.spout.engine.world.SpoutWorld;
-import org.spout.engine.world.WorldGeneratorThread;
+import org.spout.engine.world.WorldGeneratorThreadPool;
 import org.spout.engine.world.WorldSavingThread;
 
 public abstract class SpoutEngine implements AsyncManager, Engine {
@@ -272,7 +272,7 @@ public abstract class SpoutEngine implements AsyncManager, Engine {
 
 		scheduler.startMainThread();
 		WorldSavingThread.startThread();
-		WorldGeneratorThread.startThread();
+		WorldGeneratorThreadPool.startThreads();
 		setupComplete.set(true);
 	}
 
@@ -492,9 +492,9 @@ public abstract class SpoutEngine implements AsyncManager, Engine {
 					getLogger().info("Thread interrupted when waiting for network shutdown");
 				}
 				WorldSavingThread.finish();
-				WorldGeneratorThread.finish();
+				WorldGeneratorThreadPool.finish();
 				WorldSavingThread.staticJoin();
-				WorldGeneratorThread.staticJoin();
+				WorldGeneratorThreadPool.staticJoin();
 			}
 		};
 		scheduler.submitLastTickTask(lastTickTask);
@@ -49,6 +49,14 @@ public class ChunkMeshBatchAggregator extends Cuboid {
 	public final static int SIZE_Z = 1;
 	public final static Vector3 SIZE = new Vector3(SIZE_X, SIZE_Y, SIZE_Z);
 	public final static int COUNT = SIZE_X * SIZE_Y * SIZE_Z;
+	/**
+	 * Spare vertices reserved after each sub batch, on top of a quarter of its size
+	 */
+	private final static int SPARE_VERTICES = 96;
+	/**
+	 * Fraction of unused vertices above which the buffer is packed again
+	 */
+	private final static float COMPACT_THRESHOLD = 0.5f;
 
 	private int count = 0;
 
@@ -66,6 +74,13 @@ public class ChunkMeshBatchAggregator extends Cuboid {
 	private long time;
 
 	private final BufferContainer bufferContainer[] = new BufferContainer[COUNT];
+	/**
+	 * Range of vertices reserved for each sub batch in the uploaded buffer
+	 */
+	private final int offsets[] = new int[COUNT];
+	private final int capacities[] = new int[COUNT];
+	private final boolean dirty[] = new boolean[COUNT];
+	private boolean rebuild = true;
 
 	private int getIndex(int x, int y, int z){
 		int index = (x - getBase().getChunkX()) * SIZE_Y * SIZE_Z + (y - getBase().getChunkY()) * SIZE_Z + (z - getBase().getChunkZ());
@@ -114,8 +129,13 @@ public class ChunkMeshBatchAggregator extends Cuboid {
 
 		//Send data
 		if(!dataSended){
-			((BatchVertexRenderer)renderer).setBufferContainers(bufferContainer);
 			dataSended = true;
+			//Rewrite only the changed ranges when the current layout still fits
+			if(generated && !flushing && !rebuild && !isFragmented() && updateRanges()){
+				return true;
+			}
+			layout();
+			((BatchVertexRenderer)renderer).setBufferContainers(bufferContainer, capacities);
 		}
 
 		//Start to flush
@@ -138,6 +158,69 @@ public class ChunkMeshBatchAggregator extends Cuboid {
 		
 	}
 
+	/**
+	 * Gets the number of vertices the next {@link #update()} has to prepare before uploading
+	 * @return the vertex count, or 0 if only upload steps are left
+	 */
+	public int getPendingVertices() {
+		if(dataSended)
+			return 0;
+		int vertices = 0;
+		for(BufferContainer buffer : bufferContainer)
+			if(buffer != null)
+				vertices += buffer.element;
+		return vertices;
+	}
+
+	/**
+	 * Writes the dirty sub batches into their reserved ranges
+	 * @return false if a full upload is needed
+	 */
+	private boolean updateRanges() {
+		for(int i = 0; i < COUNT; i++){
+			if(!dirty[i])
+				continue;
+			if(!((BatchVertexRenderer)renderer).updateBufferContainer(bufferContainer[i], offsets[i], capacities[i]))
+				return false;
+			dirty[i] = false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if too much of the uploaded buffer is spare or left over from removed sub batches
+	 */
+	private boolean isFragmented() {
+		int used = 0, total = 0;
+		for(int i = 0; i < COUNT; i++){
+			if(bufferContainer[i] != null)
+				used += bufferContainer[i].element;
+			total += capacities[i];
+		}
+		return total - used > total * COMPACT_THRESHOLD;
+	}
+
+	/**
+	 * Packs the sub batches again, with spare room after each one
+	 */
+	private void layout() {
+		int offset = 0;
+		for(int i = 0; i < COUNT; i++){
+			int capacity = 0;
+			if(bufferContainer[i] != null){
+				int element = bufferContainer[i].element;
+				capacity = element + Math.max(element / 4, SPARE_VERTICES);
+				//Keep whole triangles so the spare room stays degenerate
+				capacity -= capacity % 3;
+			}
+			offsets[i] = offset;
+			capacities[i] = capacity;
+			dirty[i] = false;
+			offset += capacity;
+		}
+		rebuild = false;
+	}
+
 	public void render(RenderMaterial material) {
 		if (closed) {
 			throw new IllegalStateException("Already closed");
@@ -176,7 +259,10 @@ public class ChunkMeshBatchAggregator extends Cuboid {
 		else if(bufferContainer != null && this.bufferContainer[index] == null)
 			count++;
 		
-		this.bufferContainer[getIndex(x, y, z)] = bufferContainer;
+		this.bufferContainer[index] = bufferContainer;
+		dirty[index] = true;
+		if(bufferContainer != null && bufferContainer.element > capacities[index])
+			rebuild = true;
 		dataSended = false;
 	}
 
@@ -0,0 +1,324 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.entity;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.spout.api.entity.Entity;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.geo.discrete.Point;
+
+/**
+ * An immutable index of the entities in a region, bucketed by the chunk containing their snapshot position.<br>
+ * <br>
+ * A new grid is built each time the region is snapshotted, so queries may be made from any thread
+ * without locking, and only visit the chunks overlapping the area being searched.
+ */
+public class EntityGrid {
+	public static final EntityGrid EMPTY = new EntityGrid(0, 0, 0, new SpoutEntity[0], new float[0], new int[Region.CHUNKS.VOLUME + 1]);
+	/**
+	 * The base block coordinates of the region
+	 */
+	private final int baseX, baseY, baseZ;
+	/**
+	 * Entities sorted by cell, entities in cell i are at [cellStart[i], cellStart[i + 1])
+	 */
+	private final SpoutEntity[] entities;
+	/**
+	 * Snapshot positions, three floats per entity in the same order as entities
+	 */
+	private final float[] positions;
+	private final int[] cellStart;
+
+	private EntityGrid(int baseX, int baseY, int baseZ, SpoutEntity[] entities, float[] positions, int[] cellStart) {
+		this.baseX = baseX;
+		this.baseY = baseY;
+		this.baseZ = baseZ;
+		this.entities = entities;
+		this.positions = positions;
+		this.cellStart = cellStart;
+	}
+
+	/**
+	 * Builds a grid from the snapshot positions of the given entities
+	 *
+	 * @param region the region containing the entities
+	 * @param all the entities
+	 * @return the grid
+	 */
+	public static EntityGrid build(Region region, Collection<SpoutEntity> all) {
+		return build(region.getBlockX(), region.getBlockY(), region.getBlockZ(), all);
+	}
+
+	/**
+	 * Builds a grid for the region with the given base block coordinates
+	 */
+	static EntityGrid build(final int baseX, final int baseY, final int baseZ, Collection<SpoutEntity> all) {
+		if (all.isEmpty()) {
+			return EMPTY;
+		}
+		final int count = all.size();
+		final SpoutEntity[] unsorted = new SpoutEntity[count];
+		final float[] unsortedPositions = new float[count * 3];
+		final int[] cells = new int[count];
+		final int[] cellStart = new int[Region.CHUNKS.VOLUME + 1];
+
+		int n = 0;
+		for (SpoutEntity e : all) {
+			if (n == count) {
+				break;
+			}
+			Point p = e.getScene().getPosition();
+			if (p == null) {
+				continue;
+			}
+			unsorted[n] = e;
+			unsortedPositions[n * 3] = p.getX();
+			unsortedPositions[n * 3 + 1] = p.getY();
+			unsortedPositions[n * 3 + 2] = p.getZ();
+			int cell = cellIndex(cellCoord(p.getX(), baseX), cellCoord(p.getY(), baseY), cellCoord(p.getZ(), baseZ));
+			cells[n] = cell;
+			cellStart[cell + 1]++;
+			n++;
+		}
+		for (int i = 0; i < Region.CHUNKS.VOLUME; i++) {
+			cellStart[i + 1] += cellStart[i];
+		}
+
+		// Counting sort into cell order
+		final SpoutEntity[] entities = new SpoutEntity[n];
+		final float[] positions = new float[n * 3];
+		final int[] next = Arrays.copyOf(cellStart, Region.CHUNKS.VOLUME);
+		for (int i = 0; i < n; i++) {
+			int j = next[cells[i]]++;
+			entities[j] = unsorted[i];
+			positions[j * 3] = unsortedPositions[i * 3];
+			positions[j * 3 + 1] = unsortedPositions[i * 3 + 1];
+			positions[j * 3 + 2] = unsortedPositions[i * 3 + 2];
+		}
+		return new EntityGrid(baseX, baseY, baseZ, entities, positions, cellStart);
+	}
+
+	/**
+	 * Gets the number of entities in the grid
+	 */
+	public int size() {
+		return entities.length;
+	}
+
+	/**
+	 * Adds all entities strictly closer than the range to the given list
+	 *
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param range the range
+	 * @param ignore an entity to skip, or null
+	 * @param playersOnly true to only find players
+	 * @param out the list to add to
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> void getInRange(float x, float y, float z, float range, Entity ignore, boolean playersOnly, List<? super T> out) {
+		if (entities.length == 0) {
+			return;
+		}
+		final float rangeSquared = range * range;
+		final int minX = cellCoord(x - range, baseX), maxX = cellCoord(x + range, baseX);
+		final int minY = cellCoord(y - range, baseY), maxY = cellCoord(y + range, baseY);
+		final int minZ = cellCoord(z - range, baseZ), maxZ = cellCoord(z + range, baseZ);
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cy = minY; cy <= maxY; cy++) {
+				for (int cz = minZ; cz <= maxZ; cz++) {
+					int cell = cellIndex(cx, cy, cz);
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+						if (distanceSquared(i, x, y, z) < rangeSquared && matches(i, ignore, playersOnly)) {
+							out.add((T) entities[i]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds all entities inside the given box to the list, bounds inclusive
+	 *
+	 * @param ignore an entity to skip, or null
+	 * @param playersOnly true to only find players
+	 * @param out the list to add to
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> void getInBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Entity ignore, boolean playersOnly, List<? super T> out) {
+		if (entities.length == 0) {
+			return;
+		}
+		final int cMinX = cellCoord(minX, baseX), cMaxX = cellCoord(maxX, baseX);
+		final int cMinY = cellCoord(minY, baseY), cMaxY = cellCoord(maxY, baseY);
+		final int cMinZ = cellCoord(minZ, baseZ), cMaxZ = cellCoord(maxZ, baseZ);
+		for (int cx = cMinX; cx <= cMaxX; cx++) {
+			for (int cy = cMinY; cy <= cMaxY; cy++) {
+				for (int cz = cMinZ; cz <= cMaxZ; cz++) {
+					int cell = cellIndex(cx, cy, cz);
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+						float ex = positions[i * 3], ey = positions[i * 3 + 1], ez = positions[i * 3 + 2];
+						if (ex >= minX && ex <= maxX && ey >= minY && ey <= maxY && ez >= minZ && ez <= maxZ && matches(i, ignore, playersOnly)) {
+							out.add((T) entities[i]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Offers the entities strictly closer than the range to a nearest neighbour search
+	 *
+	 * @param x the x coordinate of the center
+	 * @param y the y coordinate of the center
+	 * @param z the z coordinate of the center
+	 * @param range the range
+	 * @param ignore an entity to skip, or null
+	 * @param playersOnly true to only find players
+	 * @param nearest the search to offer entities to
+	 */
+	public void getNearest(float x, float y, float z, float range, Entity ignore, boolean playersOnly, NearestEntities nearest) {
+		if (entities.length == 0) {
+			return;
+		}
+		final int minX = cellCoord(x - range, baseX), maxX = cellCoord(x + range, baseX);
+		final int minY = cellCoord(y - range, baseY), maxY = cellCoord(y + range, baseY);
+		final int minZ = cellCoord(z - range, baseZ), maxZ = cellCoord(z + range, baseZ);
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cy = minY; cy <= maxY; cy++) {
+				for (int cz = minZ; cz <= maxZ; cz++) {
+					int cell = cellIndex(cx, cy, cz);
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+						float distance = distanceSquared(i, x, y, z);
+						if (distance < nearest.getWorstDistanceSquared() && matches(i, ignore, playersOnly)) {
+							nearest.offer(entities[i], distance);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private float distanceSquared(int i, float x, float y, float z) {
+		float dx = positions[i * 3] - x;
+		float dy = positions[i * 3 + 1] - y;
+		float dz = positions[i * 3 + 2] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private boolean matches(int i, Entity ignore, boolean playersOnly) {
+		SpoutEntity e = entities[i];
+		return e != ignore && (!playersOnly || e instanceof Player);
+	}
+
+	/**
+	 * Gets the chunk coordinate within the region for a block coordinate, clamped to the region
+	 */
+	private static int cellCoord(float coord, int base) {
+		int c = ((int) Math.floor(coord) - base) >> Chunk.BLOCKS.BITS;
+		if (c < 0) {
+			return 0;
+		} else if (c >= Region.CHUNKS.SIZE) {
+			return Region.CHUNKS.SIZE - 1;
+		}
+		return c;
+	}
+
+	private static int cellIndex(int cx, int cy, int cz) {
+		return (cx * Region.CHUNKS.SIZE + cy) * Region.CHUNKS.SIZE + cz;
+	}
+
+	/**
+	 * A bounded nearest neighbour search, which keeps the closest entities offered to it
+	 */
+	public static class NearestEntities {
+		private final SpoutEntity[] found;
+		private final float[] distances;
+		private final float rangeSquared;
+		private int size = 0;
+
+		/**
+		 * @param count the maximum number of entities to keep
+		 * @param range the search range
+		 */
+		public NearestEntities(int count, float range) {
+			if (count < 0) {
+				throw new IllegalArgumentException("Count must not be negative: " + count);
+			}
+			this.found = new SpoutEntity[count];
+			this.distances = new float[count];
+			this.rangeSquared = range * range;
+		}
+
+		/**
+		 * Gets the distance an entity must be closer than to be kept
+		 */
+		public float getWorstDistanceSquared() {
+			if (found.length == 0) {
+				return Float.NEGATIVE_INFINITY;
+			}
+			return size < found.length ? rangeSquared : distances[size - 1];
+		}
+
+		private void offer(SpoutEntity e, float distanceSquared) {
+			// Insertion into a small sorted array
+			int i = size < found.length ? size++ : size - 1;
+			while (i > 0 && distances[i - 1] > distanceSquared) {
+				found[i] = found[i - 1];
+				distances[i] = distances[i - 1];
+				i--;
+			}
+			found[i] = e;
+			distances[i] = distanceSquared;
+		}
+
+		/**
+		 * Adds the entities kept to the list, nearest first
+		 */
+		@SuppressWarnings("unchecked")
+		public <T extends Entity> void addTo(List<? super T> out) {
+			for (int i = 0; i < size; i++) {
+				out.add((T) found[i]);
+			}
+		}
+
+		/**
+		 * Gets the nearest entity kept, or null if none were found
+		 */
+		public SpoutEntity getNearest() {
+			return size == 0 ? null : found[0];
+		}
+	}
+}
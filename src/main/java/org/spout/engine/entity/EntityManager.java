@@ -40,6 +40,7 @@ import org.spout.api.protocol.NetworkSynchronizer;
 import org.spout.engine.entity.component.SpoutSceneComponent;
 import org.spout.engine.util.thread.snapshotable.SnapshotManager;
 import org.spout.engine.util.thread.snapshotable.SnapshotableHashMap;
+import org.spout.engine.util.thread.snapshotable.SnapshotableIntObjectMap;
 import org.spout.engine.world.SpoutChunk;
 import org.spout.engine.world.SpoutRegion;
 
@@ -54,7 +55,7 @@ public class EntityManager {
 	/**
 	 * A map of all the entity ids to the corresponding entities.
 	 */
-	private final SnapshotableHashMap<Integer, SpoutEntity> entities = new SnapshotableHashMap<Integer, SpoutEntity>(snapshotManager);
+	private final SnapshotableIntObjectMap<SpoutEntity> entities = new SnapshotableIntObjectMap<SpoutEntity>(snapshotManager);
 	/**
 	 * The next id to check.
 	 */
@@ -67,6 +68,10 @@ public class EntityManager {
 	 * Player listings plus listings of sync'd entities per player
 	 */
 	private final SnapshotableHashMap<Player, ArrayList<SpoutEntity>> players = new SnapshotableHashMap<Player, ArrayList<SpoutEntity>>(snapshotManager);
+	/**
+	 * Spatial index of the snapshot entity positions, rebuilt at every snapshot
+	 */
+	private volatile EntityGrid grid = EntityGrid.EMPTY;
 
 	public EntityManager(SpoutRegion region) {
 		if (region == null) {
@@ -80,7 +85,7 @@ public class EntityManager {
 	 * @return A collection of entities.
 	 */
 	public Collection<SpoutEntity> getAll() {
-		return entities.get().values();
+		return entities.get();
 	}
 
 	/**
@@ -88,7 +93,7 @@ public class EntityManager {
 	 * @return A collection of entities
 	 */
 	public Collection<SpoutEntity> getAllLive() {
-		return entities.getLive().values();
+		return entities.getLive();
 	}
 
 	/**
@@ -105,7 +110,7 @@ public class EntityManager {
 	 * @return The entity, or {@code null} if it could not be found.
 	 */
 	public SpoutEntity getEntity(int id) {
-		return entities.get().get(id);
+		return entities.get(id);
 	}
 
 	/**
@@ -149,14 +154,9 @@ public class EntityManager {
 		if (entity instanceof Player) {
 			players.remove((Player) entity);
 		}
-		final SpoutSceneComponent scene = (SpoutSceneComponent) entity.getScene();
-		if (scene.getBody() != null) {
-			try {
-				region.getPhysicsLock().writeLock().lock();
-				region.getSimulation().removeRigidBody(scene.getBody());
-			} finally {
-				region.getPhysicsLock().writeLock().unlock();
-			}
+		//Entities moving to another region keep their body, the new region takes it over in addEntity
+		if (entity.isRemoved()) {
+			((SpoutSceneComponent) entity.getScene()).removeFromSimulation();
 		}
 	}
 
@@ -164,7 +164,7 @@ public class EntityManager {
 	 * Finalizes the manager at the FINALIZERUN tick stage
 	 */
 	public void finalizeRun() {
-		for (SpoutEntity e : entities.get().values()) {
+		for (SpoutEntity e : entities.get()) {
 			e.finalizeRun();
 			if (e.isRemoved()) {
 				removeEntity(e);
@@ -176,7 +176,7 @@ public class EntityManager {
 	 * Prepares the manager for a snapshot in the PRESNAPSHOT tickstage
 	 */
 	public void preSnapshotRun() {
-		for (SpoutEntity e : entities.get().values()) {
+		for (SpoutEntity e : entities.get()) {
 			e.preSnapshotRun();
 		}
 	}
@@ -185,10 +185,19 @@ public class EntityManager {
 	 * Snapshots the manager and all the entities managed in the SNAPSHOT tickstage.
 	 */
 	public void copyAllSnapshots() {
-		for (SpoutEntity e : entities.get().values()) {
+		for (SpoutEntity e : entities.get()) {
 			e.copySnapshot();
 		}
 		snapshotManager.copyAllSnapshots();
+		grid = EntityGrid.build(region, entities.get());
+	}
+
+	/**
+	 * Gets the spatial index of the entities in this region, as of the last snapshot
+	 * @return the grid
+	 */
+	public EntityGrid getGrid() {
+		return grid;
 	}
 
 	/**
@@ -27,18 +27,24 @@
 package org.spout.engine.entity.component;
 
 import javax.vecmath.Vector3f;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.bulletphysics.collision.dispatch.CollisionFlags;
 import com.bulletphysics.collision.dispatch.CollisionObject;
 import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
 import com.bulletphysics.linearmath.DefaultMotionState;
+import com.bulletphysics.linearmath.MotionState;
 
 import org.spout.api.ClientOnly;
 import org.spout.api.component.impl.SceneComponent;
 import org.spout.api.entity.Entity;
+import org.spout.api.geo.LoadOption;
 import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Region;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.geo.discrete.Transform;
 import org.spout.api.math.GenericMath;
@@ -47,15 +53,57 @@ import org.spout.api.math.Vector3;
 import org.spout.api.math.VectorMath;
 
 import org.spout.engine.world.SpoutRegion;
+import org.spout.engine.world.SpoutWorld;
 
 /**
- * The Spout implementation of {@link SceneComponent}.
+ * The Spout implementation of {@link SceneComponent}.<br>
+ * <br>
+ * A body close to a region border is mirrored into the neighbouring regions as a ghost, so it collides with
+ * the bodies simulated there. Ghosts are kinematic objects, which have infinite mass: they push the bodies
+ * of the neighbouring region out of the way but are never pushed back, and the real body only reacts to
+ * what its own region simulates. Two bodies meeting across a border therefore both move as if they had hit
+ * a wall, rather than exchanging momentum.
  */
 public class SpoutSceneComponent extends SceneComponent {
 	private final Transform snapshot = new Transform();
 	private final Transform live = new Transform();
 	private final AtomicReference<SpoutRegion> simulationRegion = new AtomicReference<SpoutRegion>(null);
-	private RigidBody body;
+	private volatile RigidBody body;
+	/**
+	 * The state of the body for lock free reads, republished after every physics step
+	 */
+	private final AtomicReference<PhysicsState> physics = new AtomicReference<PhysicsState>(PhysicsState.NONE);
+	/**
+	 * The body whose state was last published while it was asleep, only used by the region simulating the body
+	 */
+	private RigidBody publishedAsleep = null;
+	/**
+	 * The number of staged updates not yet applied to the body. The published state is not replaced by the
+	 * state of the body while the body still lags behind the changes made through the API.
+	 */
+	private final AtomicInteger staged = new AtomicInteger();
+	/**
+	 * How close, in blocks, a body must be to a region border to be mirrored into the neighbouring region
+	 */
+	public static final float GHOST_MARGIN = 2f;
+	/**
+	 * Kinematic copies of the body in neighbouring regions, by region
+	 */
+	private final ConcurrentHashMap<SpoutRegion, RigidBody> ghosts = new ConcurrentHashMap<SpoutRegion, RigidBody>();
+	/**
+	 * The user pointer of the ghosts, which resolves to the entity for collision dispatch
+	 */
+	private final GhostHolder ghostHolder = new GhostHolder(this);
+	/**
+	 * The transform of the body after the last step, read by the ghosts
+	 */
+	private volatile com.bulletphysics.linearmath.Transform ghostTransform = new com.bulletphysics.linearmath.Transform();
+	/**
+	 * The buffers ghostTransform alternates between. The neighbouring regions step while the owner publishes,
+	 * so the owner writes the buffer they are not reading. Only used by the region simulating the body.
+	 */
+	private final com.bulletphysics.linearmath.Transform[] ghostBuffers = {new com.bulletphysics.linearmath.Transform(), new com.bulletphysics.linearmath.Transform()};
+	private int ghostBuffer = 0;
 
 	//Client/Rendering
 	private final Transform render = new Transform();
@@ -178,119 +226,97 @@ public class SpoutSceneComponent extends SceneComponent {
 	}
 
 	@Override
-	public SceneComponent impulse(Vector3 impulse, Vector3 offset) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyImpulse(VectorMath.toVector3f(impulse), VectorMath.toVector3f(offset));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent impulse(final Vector3 impulse, final Vector3 offset) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyImpulse(VectorMath.toVector3f(impulse), VectorMath.toVector3f(offset));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent impulse(Vector3 impulse) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyCentralImpulse(VectorMath.toVector3f(impulse));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent impulse(final Vector3 impulse) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyCentralImpulse(VectorMath.toVector3f(impulse));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent force(Vector3 force, Vector3 offset) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyForce(VectorMath.toVector3f(force), VectorMath.toVector3f(offset));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent force(final Vector3 force, final Vector3 offset) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyForce(VectorMath.toVector3f(force), VectorMath.toVector3f(offset));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent force(Vector3 force) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyCentralForce(VectorMath.toVector3f(force));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent force(final Vector3 force) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyCentralForce(VectorMath.toVector3f(force));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent torque(Vector3 torque) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyTorque(VectorMath.toVector3f(torque));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent torque(final Vector3 torque) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyTorque(VectorMath.toVector3f(torque));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent impulseTorque(Vector3 torque) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.applyTorqueImpulse(VectorMath.toVector3f(torque));
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent impulseTorque(final Vector3 torque) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.applyTorqueImpulse(VectorMath.toVector3f(torque));
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent dampenMovement(float damp) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setDamping(damp, body.getAngularDamping());
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent dampenMovement(final float damp) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setDamping(damp, body.getAngularDamping());
+			}
+		});
+		return this;
 	}
 
 	@Override
-	public SceneComponent dampenRotation(float damp) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setDamping(body.getLinearDamping(), damp);
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent dampenRotation(final float damp) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setDamping(body.getLinearDamping(), damp);
+			}
+		});
+		return this;
 	}
 
 	@Override
 	public CollisionShape getShape() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			return body.getCollisionShape();
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().shape;
 	}
 
 	@Override
@@ -302,158 +328,170 @@ public class SpoutSceneComponent extends SceneComponent {
 		shape.calculateLocalInertia(mass, inertia);
 		//Construct body blueprint
 		final RigidBodyConstructionInfo blueprint = new RigidBodyConstructionInfo(mass, new SpoutMotionState(getOwner()), shape, inertia);
-		body = new RigidBody(blueprint);
-		body.setUserPointer(getOwner());
-		body.activate();
+		final RigidBody next = new RigidBody(blueprint);
+		next.setUserPointer(getOwner());
+		next.activate();
+		body = next;
+		physics.set(new PhysicsState(next));
+		//Ghosts have the old shape, they are rebuilt after the next step
+		for (SpoutRegion ghostRegion : ghosts.keySet()) {
+			removeGhost(ghostRegion);
+		}
 		final SpoutRegion region = simulationRegion.get();
 		if (region != null) {
-			try {
-				region.getPhysicsLock().writeLock().lock();
-				if (previous != null) {
-					region.getSimulation().removeRigidBody(previous);
+			region.queuePhysicsUpdate(new Runnable() {
+				@Override
+				public void run() {
+					if (previous != null) {
+						region.getSimulation().removeRigidBody(previous);
+					}
+					region.getSimulation().addRigidBody(next);
 				}
-				region.getSimulation().addRigidBody(body);
-			} finally {
-				region.getPhysicsLock().writeLock().unlock();
-			}
+			});
 		}
 		return this;
 	}
 
 	@Override
 	public float getFriction() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			return body.getFriction();
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().friction;
 	}
 
 	@Override
-	public SceneComponent setFriction(float friction) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setFriction(friction);
-			updatePhysicsSpace();
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent setFriction(final float friction) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setFriction(friction);
+				updatePhysicsSpace(body, region);
+			}
+		});
+		PhysicsState state;
+		do {
+			state = physics.get();
+		} while (!physics.compareAndSet(state, state.withFriction(friction)));
+		return this;
 	}
 
 	@Override
 	public float getMass() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			return body.getInvMass();
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().inverseMass;
 	}
 
 	@Override
 	public float getRestitution() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			return body.getRestitution();
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().restitution;
 	}
 
 	@Override
-	public SceneComponent setRestitution(float restitution) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setRestitution(restitution);
-			updatePhysicsSpace();
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent setRestitution(final float restitution) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setRestitution(restitution);
+				updatePhysicsSpace(body, region);
+			}
+		});
+		PhysicsState state;
+		do {
+			state = physics.get();
+		} while (!physics.compareAndSet(state, state.withRestitution(restitution)));
+		return this;
 	}
 
 	@Override
 	public Vector3 getMovementVelocity() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			//TODO Snapshot/live values needed?
-			return VectorMath.toVector3(body.getLinearVelocity(new Vector3f()));
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().movementVelocity;
 	}
 
 	@Override
-	public SceneComponent setMovementVelocity(Vector3 velocity) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setLinearVelocity(VectorMath.toVector3f(velocity));
-			//TODO May need to perform a Physics space update...testing needed.
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent setMovementVelocity(final Vector3 velocity) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setLinearVelocity(VectorMath.toVector3f(velocity));
+				//TODO May need to perform a Physics space update...testing needed.
+			}
+		});
+		PhysicsState state;
+		do {
+			state = physics.get();
+		} while (!physics.compareAndSet(state, state.withMovementVelocity(velocity)));
+		return this;
 	}
 
 	@Override
 	public Vector3 getRotationVelocity() {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().readLock().lock();
-			//TODO Snapshot/live values needed?
-			return VectorMath.toVector3(body.getAngularVelocity(new Vector3f()));
-		} finally {
-			region.getPhysicsLock().readLock().unlock();
-		}
+		validateBody(simulationRegion.get());
+		return physics.get().rotationVelocity;
 	}
 
 	@Override
-	public SceneComponent setRotationVelocity(Vector3 velocity) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setAngularVelocity(VectorMath.toVector3f(velocity));
-			//TODO May need to perform a Physics space update...testing needed.
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent setRotationVelocity(final Vector3 velocity) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setAngularVelocity(VectorMath.toVector3f(velocity));
+				//TODO May need to perform a Physics space update...testing needed.
+			}
+		});
+		PhysicsState state;
+		do {
+			state = physics.get();
+		} while (!physics.compareAndSet(state, state.withRotationVelocity(velocity)));
+		return this;
 	}
 
 	@Override
-	public SceneComponent setActivated(boolean activate) {
-		final SpoutRegion region = simulationRegion.get();
-		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setActivationState(activate == true ? CollisionObject.ACTIVE_TAG : CollisionObject.DISABLE_SIMULATION);
-			return this;
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
-		}
+	public SceneComponent setActivated(final boolean activate) {
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setActivationState(activate == true ? CollisionObject.ACTIVE_TAG : CollisionObject.DISABLE_SIMULATION);
+			}
+		});
+		PhysicsState state;
+		do {
+			state = physics.get();
+		} while (!physics.compareAndSet(state, state.withActivated(activate)));
+		return this;
 	}
 
 	@Override
 	public boolean isActivated() {
-		return body != null && body.getActivationState() == CollisionObject.ACTIVE_TAG;
+		return body != null && physics.get().activated;
+	}
+
+	/**
+	 * Publishes the state of the body after a physics step, for lock free reads.
+	 * <p/>
+	 * This is called by the region stepping the simulation, while it holds the physics lock. Sleeping bodies
+	 * do not move, so their state is only published once when they fall asleep. Nothing is published while
+	 * updates staged through the API are waiting, the state they set is newer than the body's.
+	 */
+	public void publishPhysicsState() {
+		final RigidBody current = body;
+		if (current == null || staged.get() != 0) {
+			return;
+		}
+		final boolean asleep = !current.isActive();
+		if (asleep && publishedAsleep == current) {
+			return;
+		}
+		final PhysicsState next = new PhysicsState(current);
+		PhysicsState state;
+		do {
+			state = physics.get();
+			//A setter staged an update, or the shape was replaced, since the checks above
+			if (staged.get() != 0 || body != current) {
+				return;
+			}
+		} while (!physics.compareAndSet(state, next));
+		publishedAsleep = asleep ? current : null;
 	}
 
 	/**
@@ -542,22 +580,156 @@ public class SpoutSceneComponent extends SceneComponent {
 	 * <p/>
 	 * TODO See if clearing cache pairs solves this without hotswapping?
 	 */
-	private void updatePhysicsSpace() {
-		final SpoutRegion region = simulationRegion.get();
+	private static void updatePhysicsSpace(RigidBody body, SpoutRegion region) {
+		if (body.getBroadphaseHandle() == null) {
+			//Not simulated yet, the change is picked up when the body is added
+			return;
+		}
 		//swap
 		region.getSimulation().removeRigidBody(body);
 		region.getSimulation().addRigidBody(body);
 	}
 
-	public void simulate(SpoutRegion region) {
-		SpoutRegion previous = simulationRegion.getAndSet(region);
-		if (previous != region && body != null) {
-			try {
-				region.getPhysicsLock().writeLock().lock();
-				region.getSimulation().addRigidBody(body);
-			} finally {
-				region.getPhysicsLock().writeLock().unlock();
+	/**
+	 * Moves the body of this component into the simulation of a region.
+	 * <p/>
+	 * The body is removed from the previous region's simulation before its next step and only then added to
+	 * the new one, so it is never part of two simulations. A ghost of the body the new region already held is
+	 * replaced by the body itself.
+	 * @param region the region now simulating this component
+	 */
+	public void simulate(final SpoutRegion region) {
+		final SpoutRegion previous = simulationRegion.getAndSet(region);
+		final RigidBody current = body;
+		if (previous == region || current == null) {
+			return;
+		}
+		final RigidBody ghost = ghosts.remove(region);
+		final Runnable add = new Runnable() {
+			@Override
+			public void run() {
+				if (ghost != null) {
+					region.getSimulation().removeRigidBody(ghost);
+				}
+				region.getSimulation().addRigidBody(current);
+			}
+		};
+		if (previous == null) {
+			region.queuePhysicsUpdate(add);
+		} else {
+			previous.queuePhysicsUpdate(new Runnable() {
+				@Override
+				public void run() {
+					previous.getSimulation().removeRigidBody(current);
+					region.queuePhysicsUpdate(add);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Removes the body of this component, and any ghosts of it, from simulation
+	 */
+	public void removeFromSimulation() {
+		final SpoutRegion region = simulationRegion.get();
+		final RigidBody current = body;
+		if (region != null && current != null) {
+			region.queuePhysicsUpdate(new Runnable() {
+				@Override
+				public void run() {
+					region.getSimulation().removeRigidBody(current);
+				}
+			});
+		}
+		for (SpoutRegion ghostRegion : ghosts.keySet()) {
+			removeGhost(ghostRegion);
+		}
+	}
+
+	/**
+	 * Mirrors the body into the neighbouring regions it is close to, so bodies on either side of a region
+	 * border collide with each other.
+	 * <p/>
+	 * This is called by the region simulating the body after each step, while it holds the physics lock.
+	 * @param owner the region simulating the body
+	 * @param min scratch vector
+	 * @param max scratch vector
+	 */
+	public void updateGhosts(SpoutRegion owner, Vector3f min, Vector3f max) {
+		final RigidBody current = body;
+		if (current == null) {
+			return;
+		}
+		current.getAabb(min, max);
+		final int size = Region.BLOCKS.SIZE;
+		final int baseX = owner.getX() * size;
+		final int baseY = owner.getY() * size;
+		final int baseZ = owner.getZ() * size;
+		final int lowX = min.x - GHOST_MARGIN < baseX ? -1 : 0;
+		final int lowY = min.y - GHOST_MARGIN < baseY ? -1 : 0;
+		final int lowZ = min.z - GHOST_MARGIN < baseZ ? -1 : 0;
+		final int highX = max.x + GHOST_MARGIN >= baseX + size ? 1 : 0;
+		final int highY = max.y + GHOST_MARGIN >= baseY + size ? 1 : 0;
+		final int highZ = max.z + GHOST_MARGIN >= baseZ + size ? 1 : 0;
+		final boolean nearBorder = (lowX | lowY | lowZ | highX | highY | highZ) != 0;
+		if (!nearBorder && ghosts.isEmpty()) {
+			return;
+		}
+		//Drop ghosts in regions the body moved away from
+		for (SpoutRegion ghostRegion : ghosts.keySet()) {
+			final int dx = ghostRegion.getX() - owner.getX();
+			final int dy = ghostRegion.getY() - owner.getY();
+			final int dz = ghostRegion.getZ() - owner.getZ();
+			if (dx < lowX || dx > highX || dy < lowY || dy > highY || dz < lowZ || dz > highZ || ghostRegion.getWorld() != owner.getWorld()) {
+				removeGhost(ghostRegion);
+			}
+		}
+		if (!nearBorder) {
+			return;
+		}
+		ghostBuffer ^= 1;
+		ghostTransform = current.getWorldTransform(ghostBuffers[ghostBuffer]);
+		final SpoutWorld world = owner.getWorld();
+		for (int dx = lowX; dx <= highX; dx++) {
+			for (int dy = lowY; dy <= highY; dy++) {
+				for (int dz = lowZ; dz <= highZ; dz++) {
+					if (dx == 0 && dy == 0 && dz == 0) {
+						continue;
+					}
+					final SpoutRegion neighbour = world.getRegion(owner.getX() + dx, owner.getY() + dy, owner.getZ() + dz, LoadOption.NO_LOAD);
+					if (neighbour != null && !ghosts.containsKey(neighbour)) {
+						addGhost(neighbour, current);
+					}
+				}
+			}
+		}
+	}
+
+	private void addGhost(final SpoutRegion region, RigidBody source) {
+		final RigidBodyConstructionInfo blueprint = new RigidBodyConstructionInfo(0, new GhostMotionState(), source.getCollisionShape(), new Vector3f());
+		final RigidBody ghost = new RigidBody(blueprint);
+		//Ghosts are moved by their owner, their contacts are reported to the owner's entity
+		ghost.setCollisionFlags(ghost.getCollisionFlags() | CollisionFlags.KINEMATIC_OBJECT);
+		ghost.setActivationState(CollisionObject.DISABLE_DEACTIVATION);
+		ghost.setUserPointer(ghostHolder);
+		ghosts.put(region, ghost);
+		region.queuePhysicsUpdate(new Runnable() {
+			@Override
+			public void run() {
+				region.getSimulation().addRigidBody(ghost);
 			}
+		});
+	}
+
+	private void removeGhost(final SpoutRegion region) {
+		final RigidBody ghost = ghosts.remove(region);
+		if (ghost != null) {
+			region.queuePhysicsUpdate(new Runnable() {
+				@Override
+				public void run() {
+					region.getSimulation().removeRigidBody(ghost);
+				}
+			});
 		}
 	}
 
@@ -577,14 +749,140 @@ public class SpoutSceneComponent extends SceneComponent {
 	 * Forces a physics body translation without forces or any physics corrections.
 	 */
 	private void forcePhysicsUpdate() {
+		final Transform target = live.copy();
+		stage(new BodyUpdate() {
+			@Override
+			public void apply(RigidBody body, SpoutRegion region) {
+				body.setWorldTransform(GenericMath.toPhysicsTransform(target));
+				body.clearForces(); //TODO May not be correct here, needs testing.
+			}
+		});
+	}
+
+	/**
+	 * Stages an update to the body, which is applied by the region before its next physics step
+	 */
+	private void stage(final BodyUpdate update) {
 		final SpoutRegion region = simulationRegion.get();
 		validateBody(region);
-		try {
-			region.getPhysicsLock().writeLock().lock();
-			body.setWorldTransform(GenericMath.toPhysicsTransform(live));
-			body.clearForces(); //TODO May not be correct here, needs testing.
-		} finally {
-			region.getPhysicsLock().writeLock().unlock();
+		staged.incrementAndGet();
+		region.queuePhysicsUpdate(new StagedUpdate(update, region));
+	}
+
+	/**
+	 * Applies a staged update to the body and region current when it runs, so it follows setShape and region
+	 * changes made after it was staged
+	 */
+	private final class StagedUpdate implements Runnable {
+		private final BodyUpdate update;
+		private final SpoutRegion region;
+
+		private StagedUpdate(BodyUpdate update, SpoutRegion region) {
+			this.update = update;
+			this.region = region;
+		}
+
+		@Override
+		public void run() {
+			final SpoutRegion current = simulationRegion.get();
+			if (current != null && current != region) {
+				current.queuePhysicsUpdate(new StagedUpdate(update, current));
+				return;
+			}
+			try {
+				final RigidBody target = body;
+				if (current != null && target != null) {
+					update.apply(target, region);
+				}
+			} finally {
+				staged.decrementAndGet();
+			}
+		}
+	}
+
+	private static interface BodyUpdate {
+		public void apply(RigidBody body, SpoutRegion region);
+	}
+
+	/**
+	 * An immutable copy of the state of a body, as of the last physics step plus any staged changes
+	 */
+	private static final class PhysicsState {
+		private static final PhysicsState NONE = new PhysicsState(Vector3.ZERO, Vector3.ZERO, 0f, 0f, 0f, null, false);
+		private final Vector3 movementVelocity;
+		private final Vector3 rotationVelocity;
+		private final float friction;
+		private final float restitution;
+		private final float inverseMass;
+		private final CollisionShape shape;
+		private final boolean activated;
+
+		private PhysicsState(RigidBody body) {
+			this(VectorMath.toVector3(body.getLinearVelocity(new Vector3f())), VectorMath.toVector3(body.getAngularVelocity(new Vector3f())), body.getFriction(), body.getRestitution(), body.getInvMass(), body.getCollisionShape(), body.getActivationState() == CollisionObject.ACTIVE_TAG);
+		}
+
+		private PhysicsState(Vector3 movementVelocity, Vector3 rotationVelocity, float friction, float restitution, float inverseMass, CollisionShape shape, boolean activated) {
+			this.movementVelocity = movementVelocity;
+			this.rotationVelocity = rotationVelocity;
+			this.friction = friction;
+			this.restitution = restitution;
+			this.inverseMass = inverseMass;
+			this.shape = shape;
+			this.activated = activated;
+		}
+
+		private PhysicsState withMovementVelocity(Vector3 velocity) {
+			return new PhysicsState(velocity, rotationVelocity, friction, restitution, inverseMass, shape, activated);
+		}
+
+		private PhysicsState withRotationVelocity(Vector3 velocity) {
+			return new PhysicsState(movementVelocity, velocity, friction, restitution, inverseMass, shape, activated);
+		}
+
+		private PhysicsState withFriction(float friction) {
+			return new PhysicsState(movementVelocity, rotationVelocity, friction, restitution, inverseMass, shape, activated);
+		}
+
+		private PhysicsState withRestitution(float restitution) {
+			return new PhysicsState(movementVelocity, rotationVelocity, friction, restitution, inverseMass, shape, activated);
+		}
+
+		private PhysicsState withActivated(boolean activated) {
+			return new PhysicsState(movementVelocity, rotationVelocity, friction, restitution, inverseMass, shape, activated);
+		}
+	}
+
+	/**
+	 * The user pointer of a ghost body, which is neither simulated nor published by the region holding it
+	 */
+	public static final class GhostHolder {
+		private final SpoutSceneComponent scene;
+
+		private GhostHolder(SpoutSceneComponent scene) {
+			this.scene = scene;
+		}
+
+		/**
+		 * Gets the entity whose body the ghost mirrors
+		 * @return the entity
+		 */
+		public Entity getEntity() {
+			return scene.getOwner();
+		}
+	}
+
+	/**
+	 * Moves a ghost body along with the body it mirrors
+	 */
+	private final class GhostMotionState extends MotionState {
+		@Override
+		public com.bulletphysics.linearmath.Transform getWorldTransform(com.bulletphysics.linearmath.Transform out) {
+			out.set(ghostTransform);
+			return out;
+		}
+
+		@Override
+		public void setWorldTransform(com.bulletphysics.linearmath.Transform in) {
 		}
 	}
 
@@ -31,9 +31,17 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
 
 import org.spout.api.Engine;
 import org.spout.api.FileSystem;
@@ -42,21 +50,36 @@ import org.spout.api.resource.ResourceLoader;
 import org.spout.api.resource.ResourceNotFoundException;
 import org.spout.api.resource.ResourcePathResolver;
 
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.SpoutEngine;
 import org.spout.engine.filesystem.path.FilePathResolver;
 import org.spout.engine.filesystem.path.JarFilePathResolver;
 import org.spout.engine.filesystem.path.ZipFilePathResolver;
 import org.spout.engine.resources.loader.CommandBatchLoader;
 import org.spout.engine.resources.loader.TextureLoader;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
 
 /**
- * The basic filesystem of Spout.
+ * The basic filesystem of Spout.<br>
+ * <br>
+ * Each resource is loaded once through a task stored against its path. A
+ * preloaded resource runs on the preload pool; anything asking for it
+ * before it finishes waits for that task, or runs it itself if no worker
+ * has started it yet. Loaders fetch their dependencies through
+ * {@link #getResource(URI)}, so a model waits on its material, which waits
+ * on its shader, while unrelated resources load in parallel.<br>
+ * <br>
+ * Resources must not depend on each other in a cycle. Such a cycle used to
+ * recurse until the stack overflowed; now the second request for a resource
+ * waits in {@link #join(URI, FutureTask)} for a task that is waiting on it,
+ * and the loading threads deadlock.
  */
 public class SharedFileSystem implements FileSystem {
 	private static File parentDir = new File(".");
 	private ResourcePathResolver[] searchPaths;
 	private final Map<String, Map<String, ResourceLoader<?>>> loaders = new HashMap<String, Map<String, ResourceLoader<?>>>();
-	private final HashMap<URI, Resource> loadedResources = new HashMap<URI, Resource>();
+	private final ConcurrentHashMap<URI, FutureTask<Resource>> loadedResources = new ConcurrentHashMap<URI, FutureTask<Resource>>();
+	private ExecutorService preloadPool;
 	private Engine engine;
 
 	public synchronized static File getParentDirectory() {
@@ -136,14 +159,21 @@ public class SharedFileSystem implements FileSystem {
 	}
 
 	private void loadFallbacks() {
+		List<String> fallbacks = new ArrayList<String>();
 		for (Map<String, ResourceLoader<?>> protocolLoaders : loaders.values()) {
 			for (ResourceLoader<?> loader : protocolLoaders.values()) {
 				String fallback = loader.getFallbackResourceName();
-				if (fallback != null) {
-					loadResource(fallback);
+				if (fallback != null && !fallbacks.contains(fallback)) {
+					fallbacks.add(fallback);
 				}
 			}
 		}
+		for (String fallback : fallbacks) {
+			preloadResource(fallback);
+		}
+		for (String fallback : fallbacks) {
+			loadResource(fallback);
+		}
 	}
 
 	@Override
@@ -185,22 +215,146 @@ public class SharedFileSystem implements FileSystem {
 		}
 	}
 
+	/**
+	 * Loads a resource unless it is already loaded or being loaded, waiting
+	 * for it either way.
+	 */
 	@Override
 	public void loadResource(URI path) throws ResourceNotFoundException {
-		String protocol = path.getScheme();
-		if (!loaders.containsKey(protocol)) {
-			throw new IllegalArgumentException("Unknown resource type: " + protocol);
+		join(path, getLoadTask(path));
+	}
+
+	/**
+	 * Starts loading a resource on the preload pool, if it isn't loaded or being loaded already.
+	 *
+	 * @param path the resource
+	 */
+	public void preloadResource(URI path) {
+		FutureTask<Resource> task = loadedResources.get(path);
+		if (task == null) {
+			task = newLoadTask(path);
+			if (loadedResources.putIfAbsent(path, task) == null) {
+				getPreloadPool().execute(task);
+			}
 		}
+	}
 
-		String fileName = new File(path.getPath()).getName();
-		String ext = fileName.substring(fileName.lastIndexOf(".") + 1, fileName.length());
+	public void preloadResource(String path) {
+		try {
+			preloadResource(new URI(path));
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Tried to preload resource at '" + path + "', but path is not a URI.", e);
+		}
+	}
+
+	/**
+	 * Starts loading a list of resources on the preload pool
+	 *
+	 * @param paths the resources
+	 */
+	public void preloadResources(Collection<URI> paths) {
+		for (URI path : paths) {
+			preloadResource(path);
+		}
+	}
+
+	/**
+	 * Starts loading every file under a path that has a loader for its protocol and extension.
+	 *
+	 * @param uri the directory
+	 */
+	public void preloadResources(URI uri) {
+		ResourcePathResolver resolver = getPathResolver(uri);
+		if (resolver == null) {
+			throw new IllegalArgumentException("Could not resolve path '" + uri.toString() + "'");
+		}
+
+		for (String file : resolver.list(uri)) {
+			URI path;
+			try {
+				path = new URI(uri.getScheme() + "://" + uri.getHost() + uri.getPath() + file);
+			} catch (URISyntaxException e) {
+				continue;
+			}
+			if (getLoader(path.getScheme(), getExtension(path)) != null) {
+				preloadResource(path);
+			}
+		}
+	}
+
+	private FutureTask<Resource> getLoadTask(URI path) {
+		FutureTask<Resource> task = loadedResources.get(path);
+		if (task == null) {
+			FutureTask<Resource> created = newLoadTask(path);
+			task = loadedResources.putIfAbsent(path, created);
+			if (task == null) {
+				task = created;
+			}
+		}
+		return task;
+	}
+
+	private FutureTask<Resource> newLoadTask(final URI path) {
+		return new FutureTask<Resource>(new Callable<Resource>() {
+			@Override
+			public Resource call() throws ResourceNotFoundException {
+				String protocol = path.getScheme();
+				if (!loaders.containsKey(protocol)) {
+					throw new IllegalArgumentException("Unknown resource type: " + protocol);
+				}
 
-		ResourceLoader<?> loader = getLoader(protocol, ext);
-		if (loader == null) {
-			throw new IllegalArgumentException("Unsupported file extension for protocol '" + protocol + "': " + ext);
+				String ext = getExtension(path);
+				ResourceLoader<?> loader = getLoader(protocol, ext);
+				if (loader == null) {
+					throw new IllegalArgumentException("Unsupported file extension for protocol '" + protocol + "': " + ext);
+				}
+				return loader.getResource(path);
+			}
+		});
+	}
+
+	/**
+	 * Waits for a load task, running it on this thread if nothing has started it.<br>
+	 * A failed task is forgotten so the next request tries again.
+	 */
+	private Resource join(URI path, FutureTask<Resource> task) throws ResourceNotFoundException {
+		task.run();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			loadedResources.remove(path, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof ResourceNotFoundException) {
+				throw (ResourceNotFoundException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Unable to load resource " + path, cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private synchronized ExecutorService getPreloadPool() {
+		if (preloadPool == null) {
+			int threads = SpoutConfiguration.PRELOAD_THREADS.getInt();
+			if (threads <= 0) {
+				threads = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+			}
+			preloadPool = Executors.newFixedThreadPool(threads, new NamedThreadFactory("SharedFileSystem - preload", true));
 		}
-		Resource r = loader.getResource(path);
-		loadedResources.put(path, r);
+		return preloadPool;
 	}
 
 	@Override
@@ -216,36 +370,41 @@ public class SharedFileSystem implements FileSystem {
 
 	@Override
 	public Resource getResource(URI path) {
-		if (!loadedResources.containsKey(path)) {
+		FutureTask<Resource> task = loadedResources.get(path);
+		if (task == null) {
 			if (getEngine().debugMode() && ((SpoutEngine)getEngine()).isSetupComplete()) {
 				getEngine().getLogger().warning("Late Precache of resource: " + path.toString());
 			}
-			try {
-				loadResource(path);
-			} catch (ResourceNotFoundException e) {
-				String scheme = path.getScheme();
-				String extension = getExtension(path);
-				ResourceLoader<?> loader = getLoader(scheme, extension);
-				if (loader == null) {
-					throw new IllegalArgumentException("No loader found for " + scheme + " protocol with extension " + extension + "!");
-				}
+			task = getLoadTask(path);
+		}
+		try {
+			return join(path, task);
+		} catch (ResourceNotFoundException e) {
+			String scheme = path.getScheme();
+			String extension = getExtension(path);
+			ResourceLoader<?> loader = getLoader(scheme, extension);
+			if (loader == null) {
+				throw new IllegalArgumentException("No loader found for " + scheme + " protocol with extension " + extension + "!");
+			}
 
-				String name = loader.getFallbackResourceName();
-				if (name == null) {
-					getEngine().getLogger().info("Resource not found for path '" + path + "' and does not have fallback.");
-					return null;
-				}
+			String name = loader.getFallbackResourceName();
+			if (name == null) {
+				getEngine().getLogger().info("Resource not found for path '" + path + "' and does not have fallback.");
+				return null;
+			}
 
-				try {
-					URI fallbackName = new URI(name);
-					return loadedResources.get(fallbackName);
-				} catch (URISyntaxException e1) {
-					e1.printStackTrace();
-					return null;
-				}
+			try {
+				URI fallbackName = new URI(name);
+				FutureTask<Resource> fallback = loadedResources.get(fallbackName);
+				return fallback == null ? null : join(fallbackName, fallback);
+			} catch (URISyntaxException e1) {
+				getEngine().getLogger().log(Level.SEVERE, "Invalid fallback resource name '" + name + "' for " + path, e1);
+				return null;
+			} catch (ResourceNotFoundException e1) {
+				getEngine().getLogger().log(Level.SEVERE, "Fallback resource '" + name + "' for " + path + " not found", e1);
+				return null;
 			}
 		}
-		return loadedResources.get(path);
 	}
 
 	@Override
@@ -284,6 +443,9 @@ public class SharedFileSystem implements FileSystem {
 		}
 
 		String[] files = resolver.list(uri);
+		for (String file : files) {
+			preloadResource(uri.getScheme() + "://" + uri.getHost() + uri.getPath() + file);
+		}
 		for (String file : files) {
 			loadResource(uri.getScheme() + "://" + uri.getHost() + uri.getPath() + file);
 		}
@@ -307,6 +469,9 @@ public class SharedFileSystem implements FileSystem {
 		}
 
 		String[] files = resolver.list(uri);
+		for (String file : files) {
+			preloadResource(uri.getScheme() + "://" + uri.getHost() + uri.getPath() + file);
+		}
 		List<T> resources = new ArrayList<T>();
 		for (String file : files) {
 			resources.add((T) getResource(uri.getScheme() + "://" + uri.getHost() + uri.getPath() + file));
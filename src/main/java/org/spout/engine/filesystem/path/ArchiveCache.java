@@ -0,0 +1,238 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.filesystem.path;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.spout.api.Spout;
+
+/**
+ * Keeps resource archives open between lookups, with an index of their
+ * entries.<br>
+ * <br>
+ * An archive is opened and indexed the first time it is used, then reused
+ * until the file on disk changes. Every caller of {@link #acquire(File, boolean)}
+ * must {@link Archive#release()} it, and streams opened from an archive hold
+ * their own reference until closed, so an archive replaced on disk is only
+ * closed once nothing uses it anymore.
+ */
+public final class ArchiveCache {
+	private static final Map<File, Archive> archives = new HashMap<File, Archive>();
+
+	private ArchiveCache() {
+	}
+
+	/**
+	 * Gets the open archive for a file
+	 *
+	 * @param file the archive file
+	 * @param jar true to open it as a jar
+	 * @return the archive, with a reference held for the caller, or null if the file doesn't exist
+	 * @throws IOException if the archive can't be opened
+	 */
+	public static synchronized Archive acquire(File file, boolean jar) throws IOException {
+		File key = file.getAbsoluteFile();
+		Archive archive = archives.get(key);
+		if (archive != null && (archive.modified != key.lastModified() || archive.length != key.length())) {
+			archives.remove(key);
+			archive.releaseLocked();
+			archive = null;
+		}
+		if (archive == null) {
+			if (!key.isFile()) {
+				return null;
+			}
+			archive = new Archive(key, jar);
+			archives.put(key, archive);
+		}
+		archive.refs++;
+		return archive;
+	}
+
+	/**
+	 * Closes every cached archive once its current users release it
+	 */
+	public static synchronized void clear() {
+		for (Archive archive : archives.values()) {
+			archive.releaseLocked();
+		}
+		archives.clear();
+	}
+
+	/**
+	 * An open archive and its entry index
+	 */
+	public static final class Archive {
+		private final ZipFile zip;
+		private final long modified;
+		private final long length;
+		/**
+		 * Entries by name, without directories
+		 */
+		private final Map<String, ZipEntry> entries = new HashMap<String, ZipEntry>();
+		/**
+		 * Names of the directory entries in the archive, with their trailing slash
+		 */
+		private final Set<String> directoryEntries = new HashSet<String>();
+		/**
+		 * Entry names under each directory prefix ("" and "a/", "a/b/", ...), recursively
+		 */
+		private final Map<String, List<String>> directories = new HashMap<String, List<String>>();
+		/**
+		 * Starts at one for the cache itself
+		 */
+		private int refs = 1;
+
+		private Archive(File file, boolean jar) throws IOException {
+			this.modified = file.lastModified();
+			this.length = file.length();
+			this.zip = jar ? new JarFile(file) : new ZipFile(file);
+			Enumeration<? extends ZipEntry> e = zip.entries();
+			while (e.hasMoreElements()) {
+				ZipEntry entry = e.nextElement();
+				String name = entry.getName();
+				if (entry.isDirectory()) {
+					directoryEntries.add(name);
+					continue;
+				}
+				entries.put(name, entry);
+				int slash = -1;
+				do {
+					String directory = name.substring(0, slash + 1);
+					List<String> names = directories.get(directory);
+					if (names == null) {
+						names = new ArrayList<String>();
+						directories.put(directory, names);
+					}
+					names.add(name);
+					slash = name.indexOf('/', slash + 1);
+				} while (slash != -1);
+			}
+		}
+
+		/**
+		 * Checks if an entry exists. Like {@link ZipFile#getEntry(String)}, a directory entry is found
+		 * with or without its trailing slash.
+		 */
+		public boolean contains(String name) {
+			return entries.containsKey(name) || directoryEntries.contains(name) || directoryEntries.contains(name + "/");
+		}
+
+		/**
+		 * Lists the file entries whose name starts with the prefix, with the prefix removed
+		 */
+		public String[] list(String prefix) {
+			List<String> names;
+			if (prefix.isEmpty() || prefix.endsWith("/")) {
+				names = directories.get(prefix);
+				if (names == null) {
+					return new String[0];
+				}
+			} else {
+				names = new ArrayList<String>();
+				for (String name : entries.keySet()) {
+					if (name.startsWith(prefix)) {
+						names.add(name);
+					}
+				}
+			}
+			String[] list = new String[names.size()];
+			for (int i = 0; i < list.length; i++) {
+				list[i] = names.get(i).substring(prefix.length());
+			}
+			return list;
+		}
+
+		/**
+		 * Opens a file entry. The stream keeps the archive open until it is closed.
+		 *
+		 * @return the stream, or null if there is no such entry
+		 */
+		public InputStream getStream(String name) throws IOException {
+			ZipEntry entry = entries.get(name);
+			if (entry == null) {
+				return null;
+			}
+			synchronized (ArchiveCache.class) {
+				refs++;
+			}
+			try {
+				return new FilterInputStream(zip.getInputStream(entry)) {
+					private boolean closed = false;
+
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							if (!closed) {
+								closed = true;
+								release();
+							}
+						}
+					}
+				};
+			} catch (IOException e) {
+				release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Releases a reference, closing the archive if it was the last one
+		 */
+		public void release() {
+			synchronized (ArchiveCache.class) {
+				releaseLocked();
+			}
+		}
+
+		private void releaseLocked() {
+			if (--refs == 0) {
+				try {
+					zip.close();
+				} catch (IOException e) {
+					Spout.getLogger().log(Level.WARNING, "Unable to close archive " + zip.getName(), e);
+				}
+			}
+		}
+	}
+}
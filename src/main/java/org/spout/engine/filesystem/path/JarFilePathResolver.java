@@ -29,48 +29,44 @@ package org.spout.engine.filesystem.path;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import org.spout.api.Spout;
 import org.spout.api.plugin.Plugin;
 import org.spout.api.resource.ResourcePathResolver;
+import org.spout.engine.filesystem.path.ArchiveCache.Archive;
 
 public class JarFilePathResolver implements ResourcePathResolver {
-	public JarFile getJar(String host) throws IOException {
+	/**
+	 * Gets the cached archive for a plugin's jar. The caller must release it.
+	 *
+	 * @return the archive, or null if the plugin isn't loaded
+	 */
+	public Archive getJar(String host) throws IOException {
 		Plugin p = Spout.getEngine().getPluginManager().getPlugin(host);
 		if (p == null) {
 			return null;
 		}
-		return new JarFile(p.getFile());
+		return ArchiveCache.acquire(p.getFile(), true);
 	}
 
 	@Override
 	public boolean existsInPath(String host, String path) {
-		JarFile f = null;
-		boolean b = false;
+		Archive jar = null;
 		try {
-			f = getJar(host);
-			if (f == null) {
+			jar = getJar(host);
+			if (jar == null) {
 				Spout.log("Tried to get file " + path + " from plugin " + host + " but it isn't loaded!");
 				return false; //If the plugin doesn't exist, we don't have the file
 			}
-			b = f.getJarEntry(path.substring(1)) != null;
+			return jar.contains(path.substring(1));
 		} catch (IOException e) {
 			e.printStackTrace();
+			return false;
 		} finally {
-			if (f != null) {
-				try {
-					f.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			if (jar != null) {
+				jar.release();
 			}
 		}
-		return b;
 	}
 
 	@Override
@@ -80,19 +76,24 @@ public class JarFilePathResolver implements ResourcePathResolver {
 
 	@Override
 	public InputStream getStream(String host, String path) {
+		Archive jar = null;
 		try {
-			JarFile f = getJar(host);
-			if (f == null) {
+			jar = getJar(host);
+			if (jar == null) {
 				throw new IllegalArgumentException("Specified JarFile does not exist.");
 			}
-			JarEntry entry = f.getJarEntry(path.substring(1));
-			if (entry == null) {
+			InputStream in = jar.getStream(path.substring(1));
+			if (in == null) {
 				throw new IllegalArgumentException("Specified JarEntry does not exist.");
 			}
-			return f.getInputStream(entry);
+			return in;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			if (jar != null) {
+				jar.release();
+			}
 		}
 	}
 
@@ -103,38 +104,22 @@ public class JarFilePathResolver implements ResourcePathResolver {
 
 	@Override
 	public String[] list(String host, String path) {
-		JarFile jar = null;
+		Archive jar = null;
 		try {
 			jar = getJar(host);
 			if (jar == null) {
 				throw new IllegalArgumentException("Specified JarFile does not exist.");
 			}
-			// iterate through the JarEntries
-			Enumeration<JarEntry> entries = jar.entries();
-			List<String> list = new ArrayList<String>();
-			path = path.substring(1);
-			while (entries.hasMoreElements()) {
-				JarEntry entry = entries.nextElement();
-				String name = entry.getName();
-				// we can't load directories, no point in returning them
-				// verify that the entry is in the given path
-				if (!entry.isDirectory() && name.startsWith(path)) {
-					list.add(name.replaceFirst(path, ""));
-				}
-			}
-			return list.toArray(new String[list.size()]);
+			// directories are not indexed, so only loadable entries are returned
+			return jar.list(path.substring(1));
 		} catch (IOException e) {
 			e.printStackTrace();
+			return null;
 		} finally {
 			if (jar != null) {
-				try {
-					jar.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				jar.release();
 			}
 		}
-		return null;
 	}
 
 	@Override
@@ -29,101 +29,79 @@ package org.spout.engine.filesystem.path;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.spout.engine.filesystem.SharedFileSystem;
+import org.spout.engine.filesystem.path.ArchiveCache.Archive;
 
 public class ZipFilePathResolver extends FilePathResolver {
 	public ZipFilePathResolver() {
 		super(SharedFileSystem.getResourceDirectory().getPath());
 	}
 
-	public ZipFile getZip(String host) throws IOException {
-		File file = new File(directory + File.separatorChar + host + ".zip");
-		if (file.exists()) {
-			return new ZipFile(file);
-		}
-		return null;
+	/**
+	 * Gets the cached archive for a host. The caller must release it.
+	 *
+	 * @return the archive, or null if there is no zip for the host
+	 */
+	public Archive getZip(String host) throws IOException {
+		return ArchiveCache.acquire(new File(directory + File.separatorChar + host + ".zip"), false);
 	}
 
 	@Override
 	public boolean existsInPath(String host, String path) {
-		ZipFile f = null;
-		boolean b = false;
+		Archive zip = null;
 		try {
-			f = getZip(host);
-			if (f == null) {
-				return false;
-			}
-			b = f.getEntry(path.substring(1)) != null;
+			zip = getZip(host);
+			return zip != null && zip.contains(path.substring(1));
 		} catch (IOException e) {
 			e.printStackTrace();
+			return false;
 		} finally {
-			if (f != null) {
-				try {
-					f.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+			if (zip != null) {
+				zip.release();
 			}
 		}
-		return b;
 	}
 
 	@Override
 	public InputStream getStream(String host, String path) {
+		Archive zip = null;
 		try {
-			ZipFile f = getZip(host);
-			if (f == null) {
+			zip = getZip(host);
+			if (zip == null) {
 				throw new IllegalArgumentException("Specified ZipFile does not exist.");
 			}
-			ZipEntry entry = f.getEntry(path.substring(1));
-			if (entry == null) {
+			InputStream in = zip.getStream(path.substring(1));
+			if (in == null) {
 				throw new IllegalArgumentException("Specified ZipEntry does not exist.");
 			}
-			return f.getInputStream(entry);
+			return in;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			if (zip != null) {
+				zip.release();
+			}
 		}
 	}
 
 	public String[] list(String host, String path) {
-		ZipFile zip = null;
+		Archive zip = null;
 		try {
 			zip = getZip(host);
 			if (zip == null) {
 				throw new IllegalArgumentException("Specified ZipFile does not exist.");
 			}
-			// iterate through the zip's entries
-			Enumeration<? extends ZipEntry> entries = zip.entries();
-			List<String> list = new ArrayList<String>();
-			path = path.substring(1);
-			while (entries.hasMoreElements()) {
-				ZipEntry entry = entries.nextElement();
-				String name = entry.getName();
-				// we can't load directories, no point in returning them
-				// verify the entry is within the given path
-				if (!entry.isDirectory() && name.startsWith(path)) {
-					list.add(name.replaceFirst(path, ""));
-				}
-			}
-			return list.toArray(new String[list.size()]);
+			// directories are not indexed, so only loadable entries are returned
+			return zip.list(path.substring(1));
 		} catch (IOException e) {
 			e.printStackTrace();
+			return null;
 		} finally {
 			if (zip != null) {
-				try {
-					zip.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				zip.release();
 			}
 		}
-		return null;
 	}
 }
@@ -122,6 +122,14 @@ public class BaseMesh extends Resource implements Mesh{
 		container.setVerticeIndex(verticeIndex);
 	}
 
+	/**
+	 * Creates a mesh from buffers that are already in their final layout
+	 * @param container the vertex buffers
+	 */
+	public BaseMesh(GLBufferContainer container){
+		this.container = container;
+	}
+
 	public GLBufferContainer getContainer(){
 		return container;
 	}
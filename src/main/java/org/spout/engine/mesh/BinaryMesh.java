@@ -0,0 +1,186 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.spout.engine.renderer.GLBufferContainer;
+import org.spout.engine.renderer.vertexformat.vertexattributes.VertexAttributes;
+
+/**
+ * Compact binary form of a {@link BaseMesh}.<br>
+ * <br>
+ * The file holds the final vertex arrays of the mesh, so reading it is a
+ * bulk copy from a ByteBuffer into the buffers the renderer uploads, with
+ * no parsing and no per vertex objects. Layout, little endian:
+ * <pre>
+ * int   magic ("SPMB")
+ * byte  version
+ * byte  flags (1 normal, 2 color, 4 texture0, 8 vertex index)
+ * int   vertex count n
+ * float position[4n], normal[3n], color[4n], texture0[2n] (present ones only)
+ * int   index length m, int index[m] (if flagged)
+ * </pre>
+ */
+public final class BinaryMesh {
+	public static final int MAGIC = 0x53504D42;
+	public static final byte VERSION = 1;
+	private static final int NORMAL = 1, COLOR = 2, TEXTURE0 = 4, INDEX = 8;
+	private static final int HEADER = 10;
+
+	private BinaryMesh() {
+	}
+
+	/**
+	 * Checks if the data starts like a binary mesh
+	 * 
+	 * @param data the data
+	 * @param length the number of valid bytes
+	 * @return true if the magic number matches
+	 */
+	public static boolean isBinaryMesh(byte[] data, int length) {
+		return length >= 4 && ByteBuffer.wrap(data, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+	}
+
+	/**
+	 * Writes the mesh in the binary form
+	 * 
+	 * @param mesh the mesh
+	 * @param out the stream to write to, left open
+	 * @throws IOException
+	 */
+	public static void write(BaseMesh mesh, OutputStream out) throws IOException {
+		GLBufferContainer container = mesh.getContainer();
+		int vertices = container.element;
+		FloatBuffer position = (FloatBuffer) container.getBuffers().get(VertexAttributes.Position.getLayout());
+		FloatBuffer normal = (FloatBuffer) container.getBuffers().get(VertexAttributes.Normal.getLayout());
+		FloatBuffer color = (FloatBuffer) container.getBuffers().get(VertexAttributes.Color.getLayout());
+		FloatBuffer texture0 = (FloatBuffer) container.getBuffers().get(VertexAttributes.Texture0.getLayout());
+		int[] index = container.getVerticeIndex();
+
+		int flags = (normal != null ? NORMAL : 0) | (color != null ? COLOR : 0) | (texture0 != null ? TEXTURE0 : 0) | (index != null ? INDEX : 0);
+		int floats = vertices * (4 + (normal != null ? 3 : 0) + (color != null ? 4 : 0) + (texture0 != null ? 2 : 0));
+		int size = HEADER + floats * 4 + (index != null ? 4 + index.length * 4 : 0);
+
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+		buffer.put((byte) flags);
+		buffer.putInt(vertices);
+		putFloats(buffer, position, vertices * 4);
+		putFloats(buffer, normal, vertices * 3);
+		putFloats(buffer, color, vertices * 4);
+		putFloats(buffer, texture0, vertices * 2);
+		if (index != null) {
+			buffer.putInt(index.length);
+			buffer.asIntBuffer().put(index);
+		}
+		out.write(buffer.array(), 0, size);
+	}
+
+	private static void putFloats(ByteBuffer buffer, FloatBuffer source, int count) {
+		if (source == null) {
+			return;
+		}
+		FloatBuffer view = source.duplicate();
+		view.rewind();
+		view.limit(count);
+		buffer.asFloatBuffer().put(view);
+		buffer.position(buffer.position() + count * 4);
+	}
+
+	/**
+	 * Reads a mesh from its binary form
+	 * 
+	 * @param data the file content
+	 * @param length the number of valid bytes
+	 * @return the mesh
+	 * @throws IllegalArgumentException if the data is not a supported binary mesh, or is truncated or corrupt
+	 */
+	public static BaseMesh read(byte[] data, int length) {
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+		if (length < HEADER || buffer.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a binary mesh");
+		}
+		if (buffer.get() != VERSION) {
+			throw new IllegalArgumentException("Unsupported binary mesh version");
+		}
+		int flags = buffer.get();
+		int vertices = buffer.getInt();
+		// Every vertex has at least its position
+		if (vertices < 0 || vertices > buffer.remaining() / 16) {
+			throw new IllegalArgumentException("Invalid binary mesh vertex count: " + vertices);
+		}
+
+		GLBufferContainer container = new GLBufferContainer();
+		container.element = vertices;
+		container.setBuffers(VertexAttributes.Position.getLayout(), getFloats(buffer, vertices * 4));
+		if ((flags & NORMAL) != 0) {
+			container.setBuffers(VertexAttributes.Normal.getLayout(), getFloats(buffer, vertices * 3));
+		}
+		if ((flags & COLOR) != 0) {
+			container.setBuffers(VertexAttributes.Color.getLayout(), getFloats(buffer, vertices * 4));
+		}
+		if ((flags & TEXTURE0) != 0) {
+			container.setBuffers(VertexAttributes.Texture0.getLayout(), getFloats(buffer, vertices * 2));
+		}
+		if ((flags & INDEX) != 0) {
+			if (buffer.remaining() < 4) {
+				throw new IllegalArgumentException("Truncated binary mesh");
+			}
+			int indexLength = buffer.getInt();
+			if (indexLength < 0 || indexLength > buffer.remaining() / 4) {
+				throw new IllegalArgumentException("Invalid binary mesh index length: " + indexLength);
+			}
+			int[] index = new int[indexLength];
+			IntBuffer view = buffer.asIntBuffer();
+			view.get(index);
+			container.setVerticeIndex(index);
+		}
+		return new BaseMesh(container);
+	}
+
+	private static Buffer getFloats(ByteBuffer buffer, int count) {
+		if (buffer.remaining() / 4 < count) {
+			throw new IllegalArgumentException("Truncated binary mesh");
+		}
+		FloatBuffer floats = BufferUtils.createFloatBuffer(count);
+		FloatBuffer view = buffer.asFloatBuffer();
+		view.limit(count);
+		floats.put(view);
+		floats.flip();
+		buffer.position(buffer.position() + count * 4);
+		return floats;
+	}
+}
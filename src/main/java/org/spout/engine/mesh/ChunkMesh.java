@@ -27,6 +27,7 @@
 package org.spout.engine.mesh;
 
 import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -53,13 +54,45 @@ import org.spout.api.render.RenderMaterial;
 import org.spout.api.render.effect.BufferEffect;
 import org.spout.api.render.effect.SnapshotMesh;
 import org.spout.api.util.bytebit.ByteBitSet;
+import org.spout.engine.SpoutConfiguration;
+import org.spout.engine.renderer.ChunkConnectivity;
 import org.spout.engine.renderer.vertexformat.vertexattributes.VertexAttributes;
+import org.spout.engine.resources.ClientRenderMaterial;
 import org.spout.engine.world.SpoutChunkSnapshotModel;
 
 /**
  * Represents a mesh for a chunk.
  */
 public class ChunkMesh{
+	/**
+	 * Block offsets of the faces in {@link OrientedMeshFace#shouldRender}
+	 */
+	private static final int[][] FACE_OFFSETS;
+
+	static {
+		BlockFace[] faces = OrientedMeshFace.shouldRender;
+		FACE_OFFSETS = new int[faces.length][];
+		for (int i = 0; i < faces.length; i++) {
+			Vector3 offset = faces[i].getOffset();
+			FACE_OFFSETS[i] = new int[] {offset.getFloorX(), offset.getFloorY(), offset.getFloorZ()};
+		}
+	}
+
+	/**
+	 * Cached for materials which the greedy mesher doesn't handle
+	 */
+	private static final int[] NO_GREEDY_KEYS = new int[0];
+	/**
+	 * The tile of faces which are not greedy meshed, their texture coordinates are used as is
+	 */
+	private static final float[] NO_TILE = new float[4];
+
+	private static final ThreadLocal<ChunkConnectivity> connectivityScratch = new ThreadLocal<ChunkConnectivity>() {
+		@Override
+		protected ChunkConnectivity initialValue() {
+			return new ChunkConnectivity(Chunk.BLOCKS.SIZE);
+		}
+	};
 
 	private HashMap<RenderMaterial, BufferContainer> meshs = new HashMap<RenderMaterial, BufferContainer>();
 
@@ -69,6 +102,24 @@ public class ChunkMesh{
 	private final int chunkX,chunkY,chunkZ;
 	private boolean isUnloaded = false;
 	private boolean first = false;
+	/**
+	 * Scratch state reused for every block of the chunk
+	 */
+	private final boolean[] toRender = new boolean[OrientedMeshFace.shouldRender.length];
+	private final boolean greedy;
+	/**
+	 * The greedy merge keys of each side of a material, by material id and data
+	 */
+	private TIntObjectHashMap<int[]> greedyKeys;
+	/**
+	 * The distinct greedy faces, a merge key is an index in this list plus one
+	 */
+	private List<GreedyFace> greedyFaces;
+	private Map<GreedyFace, Integer> greedyFaceKeys;
+	/**
+	 * Which faces of the chunk see each other, see {@link ChunkConnectivity}
+	 */
+	private int connectivity = ChunkConnectivity.ALL;
 
 	/**
 	 * Time of the used SpoutChunkSnapshotModel generation
@@ -77,7 +128,12 @@ public class ChunkMesh{
 	private final long time;
 
 	public ChunkMesh(SpoutChunkSnapshotModel chunkModel) {
+		this(chunkModel, SpoutConfiguration.GREEDY_MESHING.getBoolean());
+	}
+
+	ChunkMesh(SpoutChunkSnapshotModel chunkModel, boolean greedy) {
 		this.chunkModel = chunkModel;
+		this.greedy = greedy;
 		first = chunkModel.isFirst();
 
 		world = chunkModel.getWorld();
@@ -112,6 +168,16 @@ public class ChunkMesh{
 		//Update mesh vertex and light
 		updateBlock();
 
+		final int bx = center.getBase().getBlockX();
+		final int by = center.getBase().getBlockY();
+		final int bz = center.getBase().getBlockZ();
+		connectivity = connectivityScratch.get().compute(new ChunkConnectivity.OpacitySource() {
+			@Override
+			public boolean isOpaque(int x, int y, int z) {
+				return isFullCube(center.getBlockMaterial(bx + x, by + y, bz + z));
+			}
+		});
+
 		//Execute post buffer effect for each renderMaterial
 		for(Entry<RenderMaterial, BufferContainer> entry : meshs.entrySet()){
 			for(BufferEffect effect : entry.getKey().getBufferEffects()){
@@ -128,13 +194,185 @@ public class ChunkMesh{
 	 * Updates the mesh.
 	 */
 	private void updateBlock() {
-		for (int x = center.getBase().getBlockX(); x < center.getBase().getBlockX() + Chunk.BLOCKS.SIZE; x++) {
-			for (int y = center.getBase().getBlockY(); y < center.getBase().getBlockY() + Chunk.BLOCKS.SIZE; y++) {
-				for (int z = center.getBase().getBlockZ(); z < center.getBase().getBlockZ() + Chunk.BLOCKS.SIZE; z++) {
+		final int bx = center.getBase().getBlockX();
+		final int by = center.getBase().getBlockY();
+		final int bz = center.getBase().getBlockZ();
+		if (greedy) {
+			greedyKeys = new TIntObjectHashMap<int[]>();
+			greedyFaces = new ArrayList<GreedyFace>();
+			greedyFaceKeys = new HashMap<GreedyFace, Integer>();
+			new GreedyMesher(Chunk.BLOCKS.SIZE).mesh(new GreedySource(bx, by, bz), new GreedySink(bx, by, bz));
+		}
+		for (int x = bx; x < bx + Chunk.BLOCKS.SIZE; x++) {
+			for (int y = by; y < by + Chunk.BLOCKS.SIZE; y++) {
+				for (int z = bz; z < bz + Chunk.BLOCKS.SIZE; z++) {
 					generateBlockVertices(chunkModel, x, y, z);
 				}
 			}
 		}
+		greedyKeys = null;
+		greedyFaces = null;
+		greedyFaceKeys = null;
+	}
+
+	/**
+	 * Gets the greedy merge keys of the sides of a material.<br>
+	 * <br>
+	 * Only full cubes whose render material wraps tiles in its shader are greedy meshed. Materials
+	 * with mesh effects, or whose render material overrides the mesh hooks, keep the per block path
+	 * so the hooks still see every block.
+	 *
+	 * @param material the block material
+	 * @return the keys by {@link GreedyMesher} direction, or an empty array
+	 */
+	private int[] getGreedyKeys(BlockMaterial material) {
+		int id = (material.getId() << 16) | (material.getData() & 0xFFFF);
+		int[] keys = greedyKeys.get(id);
+		if (keys != null) {
+			return keys;
+		}
+		keys = NO_GREEDY_KEYS;
+		GreedyFace[] faces = getGreedyFaces(material);
+		if (faces != null) {
+			keys = new int[faces.length];
+			for (int i = 0; i < faces.length; i++) {
+				Integer key = greedyFaceKeys.get(faces[i]);
+				if (key == null) {
+					greedyFaces.add(faces[i]);
+					key = greedyFaces.size();
+					greedyFaceKeys.put(faces[i], key);
+				}
+				keys[i] = key;
+			}
+		}
+		greedyKeys.put(id, keys);
+		return keys;
+	}
+
+	private static GreedyFace[] getGreedyFaces(BlockMaterial material) {
+		if (!isFullCube(material) || !material.getMeshEffects().isEmpty()) {
+			return null;
+		}
+		RenderMaterial renderMaterial = material.getModel().getRenderMaterial();
+		if (renderMaterial.getClass() != ClientRenderMaterial.class || !((ClientRenderMaterial) renderMaterial).isTileWrapped()) {
+			return null;
+		}
+		Object mesh = material.getModel().getMesh();
+		if (!(mesh instanceof OrientedMesh)) {
+			return null;
+		}
+		return GreedyFace.fromMesh((OrientedMesh) mesh, renderMaterial);
+	}
+
+	/**
+	 * Checks if the block is visible and occludes all of its faces
+	 */
+	private static boolean isFullCube(BlockMaterial material) {
+		if (material.isInvisible()) {
+			return false;
+		}
+		ByteBitSet occlusion = material.getOcclusion(material.getData());
+		for (BlockFace face : OrientedMeshFace.shouldRender) {
+			if (!occlusion.get(face)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if a face of the block is visible against its neighbor
+	 */
+	private boolean isFaceVisible(BlockMaterial material, int faceIndex, int x, int y, int z) {
+		BlockFace face = OrientedMeshFace.shouldRender[faceIndex];
+		int[] offset = FACE_OFFSETS[faceIndex];
+		int x1 = x + offset[0];
+		int y1 = y + offset[1];
+		int z1 = z + offset[2];
+
+		BlockMaterial neighbor = chunkModel.getChunkFromBlock(x1, y1, z1).getBlockMaterial(x1, y1, z1);
+
+		if (!material.isFaceRendered(face, neighbor)) {
+			return false;
+		}
+		return !neighbor.getOcclusion(material.getData()).get(face.getOpposite());
+	}
+
+	private BufferContainer getContainer(RenderMaterial renderMaterial) {
+		BufferContainer container = meshs.get(renderMaterial);
+		if (container == null) {
+			container = new BufferContainer();
+			container.setBuffers(VertexAttributes.Position.getLayout(), new TFloatArrayList());
+			container.setBuffers(VertexAttributes.Normal.getLayout(), new TFloatArrayList());
+			container.setBuffers(VertexAttributes.Texture0.getLayout(), new TFloatArrayList());
+			if (greedy && renderMaterial instanceof ClientRenderMaterial && ((ClientRenderMaterial) renderMaterial).isTileWrapped()) {
+				// The atlas tile of greedy quads, all zero for the faces of other blocks
+				container.setBuffers(VertexAttributes.Texture1.getLayout(), new TFloatArrayList());
+			}
+			meshs.put(renderMaterial, container);
+		}
+		return container;
+	}
+
+	/**
+	 * Reports the visible faces of greedy blocks by merge key
+	 */
+	private class GreedySource implements GreedyMesher.FaceSource {
+		private final int bx, by, bz;
+
+		public GreedySource(int bx, int by, int bz) {
+			this.bx = bx;
+			this.by = by;
+			this.bz = bz;
+		}
+
+		@Override
+		public int getFace(int x, int y, int z, int direction) {
+			x += bx;
+			y += by;
+			z += bz;
+			BlockMaterial material = center.getBlockMaterial(x, y, z);
+			if (material.isInvisible()) {
+				return GreedyMesher.NO_FACE;
+			}
+			int[] keys = getGreedyKeys(material);
+			if (keys.length == 0 || !chunkModel.hasRenderMaterial(greedyFaces.get(keys[direction] - 1).getRenderMaterial())) {
+				return GreedyMesher.NO_FACE;
+			}
+			if (!isFaceVisible(material, GreedyFace.DIRECTION_INDEXES[direction], x, y, z)) {
+				return GreedyMesher.NO_FACE;
+			}
+			return keys[direction];
+		}
+	}
+
+	/**
+	 * Writes greedy quads straight into the render material buffers
+	 */
+	private class GreedySink implements GreedyMesher.QuadSink {
+		private final float[] positions = new float[24];
+		private final float[] normals = new float[24];
+		private final float[] texCoords = new float[12];
+		private final float[] tiles = new float[24];
+		private final int bx, by, bz;
+
+		public GreedySink(int bx, int by, int bz) {
+			this.bx = bx;
+			this.by = by;
+			this.bz = bz;
+		}
+
+		@Override
+		public void quad(int key, int direction, int x, int y, int z, int width, int height) {
+			GreedyFace face = greedyFaces.get(key - 1);
+			BufferContainer container = getContainer(face.getRenderMaterial());
+			int vertices = face.write(bx + x, by + y, bz + z, width, height, positions, normals, texCoords, tiles);
+			((TFloatArrayList) container.getBuffers().get(VertexAttributes.Position.getLayout())).add(positions);
+			((TFloatArrayList) container.getBuffers().get(VertexAttributes.Normal.getLayout())).add(normals);
+			((TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture0.getLayout())).add(texCoords);
+			((TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture1.getLayout())).add(tiles);
+			container.element += vertices;
+		}
 	}
 
 	public List<MeshFace> buildBlock(ChunkSnapshotModel chunkSnapshotModel,Material blockMaterial,
@@ -180,34 +418,14 @@ public class ChunkMesh{
 			return;
 		}
 
-		Vector3 position = new Vector3(x, y, z);
+		if (greedy && getGreedyKeys(material).length != 0) {
+			return;
+		}
 
-		boolean toRender[] = new boolean[OrientedMeshFace.shouldRender.length];
 		boolean fullyOccluded = true;
-		for(int i = 0; i < OrientedMeshFace.shouldRender.length; i++){
-			BlockFace face = OrientedMeshFace.shouldRender[i];
-			Vector3 facePos = position.add(face.getOffset());
-			int x1 = facePos.getFloorX();
-			int y1 = facePos.getFloorY();
-			int z1 = facePos.getFloorZ();
-
-			BlockMaterial neighbor = chunkModel.getChunkFromBlock(x1, y1, z1).getBlockMaterial(x1, y1, z1);
-
-			if (material.isFaceRendered(face, neighbor)) {
-				toRender[i] = true;
-				fullyOccluded = false;
-			}else{
-				toRender[i] = false;
-				continue;
-			}
-
-			ByteBitSet occlusion = neighbor.getOcclusion(material.getData());
-
-			if (occlusion.get(face.getOpposite())) {
-				toRender[i] = false;
-				continue;
-			}else{
-				toRender[i] = true;
+		for(int i = 0; i < toRender.length; i++){
+			toRender[i] = isFaceVisible(material, i, x, y, z);
+			if (toRender[i]) {
 				fullyOccluded = false;
 			}
 		}
@@ -215,7 +433,7 @@ public class ChunkMesh{
 		if(fullyOccluded)
 			return;
 
-		SnapshotMesh snapshotMesh = new SnapshotMesh(material, chunkSnapshotModel, new Point(position, world), toRender);
+		SnapshotMesh snapshotMesh = new SnapshotMesh(material, chunkSnapshotModel, new Point(world, x, y, z), toRender);
 
 		renderMaterial.preMesh(snapshotMesh);
 		List<MeshFace> faces = buildBlock(snapshotMesh.getSnapshotModel(), snapshotMesh.getMaterial(),
@@ -225,27 +443,11 @@ public class ChunkMesh{
 		faces = snapshotMesh.getResult();
 
 		if(!faces.isEmpty()){
-			BufferContainer container = meshs.get(renderMaterial);
-			TFloatArrayList vertexBuffer, normalBuffer, textureBuffer;
-
-			if(container == null){
-				container = new BufferContainer();
-				
-				vertexBuffer = new TFloatArrayList();
-				container.setBuffers(VertexAttributes.Position.getLayout(), vertexBuffer);
-				
-				normalBuffer = new TFloatArrayList();
-				container.setBuffers(VertexAttributes.Normal.getLayout(), normalBuffer);
-				
-				textureBuffer = new TFloatArrayList();
-				container.setBuffers(VertexAttributes.Texture0.getLayout(), textureBuffer);
-				
-				meshs.put(renderMaterial, container);
-			}else{
-				 vertexBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Position.getLayout());
-				 normalBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Normal.getLayout());
-				 textureBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture0.getLayout());
-			}
+			BufferContainer container = getContainer(renderMaterial);
+			TFloatArrayList vertexBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Position.getLayout());
+			TFloatArrayList normalBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Normal.getLayout());
+			TFloatArrayList textureBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture0.getLayout());
+			TFloatArrayList tileBuffer = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture1.getLayout());
 
 			for (MeshFace meshFace : faces) {
 				for (Vertex vert : meshFace) {
@@ -267,6 +469,10 @@ public class ChunkMesh{
 						normalBuffer.add(0f);
 					}
 
+					if (tileBuffer != null) {
+						tileBuffer.add(NO_TILE);
+					}
+
 					container.element++;
 				}
 			}
@@ -303,6 +509,15 @@ public class ChunkMesh{
 		return time;
 	}
 
+	/**
+	 * Gets which faces of the chunk can see each other through it
+	 *
+	 * @return the {@link ChunkConnectivity} mask
+	 */
+	public int getConnectivity() {
+		return connectivity;
+	}
+
 	public World getWorld() {
 		return world;
 	}
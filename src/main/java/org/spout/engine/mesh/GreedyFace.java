@@ -0,0 +1,351 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spout.api.material.block.BlockFace;
+import org.spout.api.math.Vector3;
+import org.spout.api.model.mesh.OrientedMesh;
+import org.spout.api.model.mesh.OrientedMeshFace;
+import org.spout.api.model.mesh.Vertex;
+import org.spout.api.render.RenderMaterial;
+
+/**
+ * One side of a unit cube block mesh, in the form written by the {@link GreedyMesher}.<br>
+ * <br>
+ * A merged quad spans several blocks, so its texture coordinates are in block units and every
+ * vertex also carries the atlas tile of the face. The shader samples
+ * {@code tile.xy + fract(uv) * tile.zw}, which repeats exactly the texture the block mesh maps
+ * onto one block. Tile sizes are signed, so mirrored textures keep their orientation, and a
+ * texture turned by a quarter swaps the two axes of the quad.<br>
+ * <br>
+ * Faces which render the same are equal, so they can share a merge key across materials.
+ */
+public final class GreedyFace {
+	/**
+	 * Index in {@link OrientedMeshFace#shouldRender} for each {@link GreedyMesher} direction
+	 */
+	static final int[] DIRECTION_INDEXES = new int[6];
+	private static final float EPSILON = 1e-4f;
+
+	static {
+		BlockFace[] faces = OrientedMeshFace.shouldRender;
+		for (int i = 0; i < faces.length; i++) {
+			Vector3 offset = faces[i].getOffset();
+			int[] o = {offset.getFloorX(), offset.getFloorY(), offset.getFloorZ()};
+			for (int axis = 0; axis < 3; axis++) {
+				if (o[axis] != 0) {
+					DIRECTION_INDEXES[axis * 2 + (o[axis] > 0 ? 1 : 0)] = i;
+				}
+			}
+		}
+	}
+
+	private final RenderMaterial renderMaterial;
+	private final int direction;
+	/**
+	 * The lowest corner of the cube, relative to the block
+	 */
+	private final float offsetX, offsetY, offsetZ;
+	private final float normalX, normalY, normalZ;
+	private final float tileU, tileV, tileWidth, tileHeight;
+	/**
+	 * The texture x coordinate follows the second axis of the quad
+	 */
+	private final boolean swapped;
+	/**
+	 * The block mesh winds this face clockwise
+	 */
+	private final boolean flipped;
+
+	private GreedyFace(RenderMaterial renderMaterial, int direction, float[] offset, Vector3 normal, float[] tile, boolean swapped, boolean flipped) {
+		this.renderMaterial = renderMaterial;
+		this.direction = direction;
+		this.offsetX = offset[0];
+		this.offsetY = offset[1];
+		this.offsetZ = offset[2];
+		this.normalX = normal.getX();
+		this.normalY = normal.getY();
+		this.normalZ = normal.getZ();
+		this.tileU = tile[0];
+		this.tileV = tile[1];
+		this.tileWidth = tile[2];
+		this.tileHeight = tile[3];
+		this.swapped = swapped;
+		this.flipped = flipped;
+	}
+
+	public RenderMaterial getRenderMaterial() {
+		return renderMaterial;
+	}
+
+	public int getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Writes a merged quad of this face as two triangles.<br>
+	 * <br>
+	 * Positions and normals get four components, texture coordinates two and tiles four.
+	 *
+	 * @param x the block x coordinate of the quad origin, as given to a {@link GreedyMesher.QuadSink}
+	 * @param y the block y coordinate of the quad origin
+	 * @param z the block z coordinate of the quad origin
+	 * @param width the size of the quad along its first axis
+	 * @param height the size of the quad along its second axis
+	 * @return the number of vertices written (always 6)
+	 */
+	public int write(int x, int y, int z, int width, int height, float[] positions, float[] normals, float[] texCoords, float[] tiles) {
+		int vertices = GreedyMesher.writeQuad(direction, x + offsetX, y + offsetY, z + offsetZ, width, height, positions, 0, normals, 0, texCoords, 0);
+		for (int n = 0; n < vertices; n++) {
+			normals[n * 4] = normalX;
+			normals[n * 4 + 1] = normalY;
+			normals[n * 4 + 2] = normalZ;
+			if (swapped) {
+				float u = texCoords[n * 2];
+				texCoords[n * 2] = texCoords[n * 2 + 1];
+				texCoords[n * 2 + 1] = u;
+			}
+			tiles[n * 4] = tileU;
+			tiles[n * 4 + 1] = tileV;
+			tiles[n * 4 + 2] = tileWidth;
+			tiles[n * 4 + 3] = tileHeight;
+		}
+		if (flipped) {
+			for (int t = 0; t < vertices; t += 3) {
+				swap(positions, 4, t + 1, t + 2);
+				swap(texCoords, 2, t + 1, t + 2);
+			}
+		}
+		return vertices;
+	}
+
+	private static void swap(float[] values, int components, int a, int b) {
+		for (int i = 0; i < components; i++) {
+			float value = values[a * components + i];
+			values[a * components + i] = values[b * components + i];
+			values[b * components + i] = value;
+		}
+	}
+
+	/**
+	 * Gets the six sides of a block mesh, indexed by {@link GreedyMesher} direction.<br>
+	 * <br>
+	 * The mesh has to be a unit cube made of two triangles per side, each side only rendered
+	 * when that side is visible, with one normal per side and a texture which maps onto an axis
+	 * aligned rectangle of the atlas.
+	 *
+	 * @param mesh the block mesh
+	 * @param renderMaterial the render material of the block
+	 * @return the faces, or null if the mesh can't be greedy meshed
+	 */
+	public static GreedyFace[] fromMesh(OrientedMesh mesh, RenderMaterial renderMaterial) {
+		float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		boolean[] toRender = new boolean[OrientedMeshFace.shouldRender.length];
+		int triangles = 0;
+		for (OrientedMeshFace face : mesh) {
+			// Faces drawn with every side hidden would show through merged quads
+			if (face.canRender(toRender)) {
+				return null;
+			}
+			for (Vertex vertex : face) {
+				if (vertex.position == null || vertex.normal == null || vertex.texCoord0 == null) {
+					return null;
+				}
+				float[] p = toArray(vertex.position);
+				for (int axis = 0; axis < 3; axis++) {
+					min[axis] = Math.min(min[axis], p[axis]);
+					max[axis] = Math.max(max[axis], p[axis]);
+				}
+			}
+			triangles++;
+		}
+		for (int axis = 0; axis < 3; axis++) {
+			if (Math.abs(max[axis] - min[axis] - 1f) > EPSILON) {
+				return null;
+			}
+		}
+		GreedyFace[] faces = new GreedyFace[6];
+		List<OrientedMeshFace> side = new ArrayList<OrientedMeshFace>(2);
+		for (int direction = 0; direction < 6; direction++) {
+			toRender[DIRECTION_INDEXES[direction]] = true;
+			side.clear();
+			for (OrientedMeshFace face : mesh) {
+				if (face.canRender(toRender)) {
+					side.add(face);
+				}
+			}
+			toRender[DIRECTION_INDEXES[direction]] = false;
+			// Two triangles per side, none of them shared between sides
+			if (side.size() != 2) {
+				return null;
+			}
+			triangles -= 2;
+			faces[direction] = fromSide(side, direction, min, renderMaterial);
+			if (faces[direction] == null) {
+				return null;
+			}
+		}
+		return triangles == 0 ? faces : null;
+	}
+
+	private static GreedyFace fromSide(List<OrientedMeshFace> triangles, int direction, float[] min, RenderMaterial renderMaterial) {
+		final int d = direction >> 1;
+		final int u = (d + 1) % 3;
+		final int v = (d + 2) % 3;
+		final boolean positive = (direction & 1) == 1;
+		final float plane = min[d] + (positive ? 1f : 0f);
+		// Texture coordinates of the corners (0, 0), (1, 0), (0, 1) and (1, 1) in quad axes
+		float[][] corners = new float[4][];
+		int[][] indexes = new int[2][3];
+		float[] signs = new float[2];
+		Vector3 normal = null;
+		for (int t = 0; t < 2; t++) {
+			float[][] points = new float[3][];
+			int k = 0;
+			for (Vertex vertex : triangles.get(t)) {
+				if (k == 3) {
+					return null;
+				}
+				float[] p = toArray(vertex.position);
+				if (Math.abs(p[d] - plane) > EPSILON) {
+					return null;
+				}
+				int cu = toCorner(p[u] - min[u]);
+				int cv = toCorner(p[v] - min[v]);
+				if (cu < 0 || cv < 0) {
+					return null;
+				}
+				int corner = cu + cv * 2;
+				float[] tex = {vertex.texCoord0.getX(), vertex.texCoord0.getY()};
+				if (corners[corner] == null) {
+					corners[corner] = tex;
+				} else if (!equal(corners[corner], tex)) {
+					return null;
+				}
+				if (normal == null) {
+					normal = vertex.normal;
+				} else if (!normal.equals(vertex.normal)) {
+					return null;
+				}
+				indexes[t][k] = corner;
+				points[k++] = new float[] {cu, cv};
+			}
+			if (k != 3) {
+				return null;
+			}
+			signs[t] = (points[1][0] - points[0][0]) * (points[2][1] - points[0][1]) - (points[1][1] - points[0][1]) * (points[2][0] - points[0][0]);
+		}
+		// Both triangles wind the same way and meet along a diagonal, so they cover the square
+		if (signs[0] == 0 || signs[0] * signs[1] <= 0 || !coversSquare(indexes)) {
+			return null;
+		}
+		// u x v points along +d, so a counter clockwise positive side has a positive area
+		boolean flipped = (signs[0] > 0) != positive;
+
+		float[] origin = corners[0];
+		float[] stepU = {corners[1][0] - origin[0], corners[1][1] - origin[1]};
+		float[] stepV = {corners[2][0] - origin[0], corners[2][1] - origin[1]};
+		if (!equal(corners[3], new float[] {origin[0] + stepU[0] + stepV[0], origin[1] + stepU[1] + stepV[1]})) {
+			return null;
+		}
+		boolean swapped;
+		float[] tile;
+		if (Math.abs(stepU[1]) <= EPSILON && Math.abs(stepV[0]) <= EPSILON) {
+			swapped = false;
+			tile = new float[] {origin[0], origin[1], stepU[0], stepV[1]};
+		} else if (Math.abs(stepU[0]) <= EPSILON && Math.abs(stepV[1]) <= EPSILON) {
+			swapped = true;
+			tile = new float[] {origin[0], origin[1], stepV[0], stepU[1]};
+		} else {
+			return null;
+		}
+		// A tile size of 0 marks faces without a tile in the shader
+		if (tile[2] == 0 || tile[3] == 0) {
+			return null;
+		}
+		return new GreedyFace(renderMaterial, direction, min, normal, tile, swapped, flipped);
+	}
+
+	private static boolean coversSquare(int[][] indexes) {
+		int first = 0, second = 0;
+		for (int k = 0; k < 3; k++) {
+			first |= 1 << indexes[0][k];
+			second |= 1 << indexes[1][k];
+		}
+		int shared = first & second;
+		// Three distinct corners each, sharing the (0, 0)-(1, 1) or the (1, 0)-(0, 1) diagonal
+		return Integer.bitCount(first) == 3 && Integer.bitCount(second) == 3 && (shared == 0x9 || shared == 0x6);
+	}
+
+	private static int toCorner(float offset) {
+		if (Math.abs(offset) <= EPSILON) {
+			return 0;
+		} else if (Math.abs(offset - 1f) <= EPSILON) {
+			return 1;
+		}
+		return -1;
+	}
+
+	private static boolean equal(float[] a, float[] b) {
+		return Math.abs(a[0] - b[0]) <= EPSILON && Math.abs(a[1] - b[1]) <= EPSILON;
+	}
+
+	private static float[] toArray(Vector3 v) {
+		return new float[] {v.getX(), v.getY(), v.getZ()};
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = renderMaterial.hashCode();
+		hash = hash * 31 + direction;
+		hash = hash * 31 + Float.floatToIntBits(tileU);
+		hash = hash * 31 + Float.floatToIntBits(tileV);
+		hash = hash * 31 + Float.floatToIntBits(tileWidth);
+		hash = hash * 31 + Float.floatToIntBits(tileHeight);
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		} else if (!(o instanceof GreedyFace)) {
+			return false;
+		}
+		GreedyFace other = (GreedyFace) o;
+		return renderMaterial.equals(other.renderMaterial) && direction == other.direction
+				&& swapped == other.swapped && flipped == other.flipped
+				&& Float.compare(offsetX, other.offsetX) == 0 && Float.compare(offsetY, other.offsetY) == 0 && Float.compare(offsetZ, other.offsetZ) == 0
+				&& Float.compare(normalX, other.normalX) == 0 && Float.compare(normalY, other.normalY) == 0 && Float.compare(normalZ, other.normalZ) == 0
+				&& Float.compare(tileU, other.tileU) == 0 && Float.compare(tileV, other.tileV) == 0
+				&& Float.compare(tileWidth, other.tileWidth) == 0 && Float.compare(tileHeight, other.tileHeight) == 0;
+	}
+}
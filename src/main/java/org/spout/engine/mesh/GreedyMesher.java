@@ -0,0 +1,205 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+/**
+ * Merges coplanar block faces with the same key into larger quads.<br>
+ * <br>
+ * The mesher walks the volume one slice at a time for each of the six face
+ * directions, builds a mask of the visible face keys in that slice and then
+ * grows every unvisited key into the widest and tallest rectangle it can
+ * cover. Each rectangle is handed to a {@link QuadSink} as an origin and a
+ * size, so callers decide how the quad is written out.<br>
+ * <br>
+ * Instances keep their scratch mask between calls and are not thread safe.
+ */
+public final class GreedyMesher {
+	/**
+	 * Direction indexes, an axis (0 = x, 1 = y, 2 = z) times two plus one for
+	 * the positive side
+	 */
+	public static final int NEG_X = 0, POS_X = 1, NEG_Y = 2, POS_Y = 3, NEG_Z = 4, POS_Z = 5;
+	/**
+	 * The key reported for positions without a visible face
+	 */
+	public static final int NO_FACE = 0;
+
+	private final int size;
+	private final int[] mask;
+	private final int[] pos = new int[3];
+	private final int[] origin = new int[3];
+
+	public GreedyMesher(int size) {
+		this.size = size;
+		this.mask = new int[size * size];
+	}
+
+	/**
+	 * Meshes a cube of {@code size} blocks.<br>
+	 * <br>
+	 * For a direction with axis d, quads span the axes u = (d + 1) % 3 and
+	 * v = (d + 2) % 3. The origin passed to the sink is the corner with the
+	 * lowest coordinates, already moved onto the face plane.
+	 *
+	 * @param source the visible faces
+	 * @param sink receives the merged quads
+	 * @return the number of quads emitted
+	 */
+	public int mesh(FaceSource source, QuadSink sink) {
+		int quads = 0;
+		for (int direction = 0; direction < 6; direction++) {
+			final int d = direction >> 1;
+			final int u = (d + 1) % 3;
+			final int v = (d + 2) % 3;
+			final int plane = direction & 1;
+			for (int slice = 0; slice < size; slice++) {
+				pos[d] = slice;
+				boolean any = false;
+				for (int j = 0; j < size; j++) {
+					pos[v] = j;
+					for (int i = 0; i < size; i++) {
+						pos[u] = i;
+						int key = source.getFace(pos[0], pos[1], pos[2], direction);
+						mask[j * size + i] = key;
+						any |= key != NO_FACE;
+					}
+				}
+				if (!any) {
+					continue;
+				}
+				for (int j = 0; j < size; j++) {
+					for (int i = 0; i < size;) {
+						final int key = mask[j * size + i];
+						if (key == NO_FACE) {
+							i++;
+							continue;
+						}
+						int width = 1;
+						while (i + width < size && mask[j * size + i + width] == key) {
+							width++;
+						}
+						int height = 1;
+						grow:
+						while (j + height < size) {
+							final int row = (j + height) * size + i;
+							for (int k = 0; k < width; k++) {
+								if (mask[row + k] != key) {
+									break grow;
+								}
+							}
+							height++;
+						}
+						for (int h = 0; h < height; h++) {
+							final int row = (j + h) * size + i;
+							for (int k = 0; k < width; k++) {
+								mask[row + k] = NO_FACE;
+							}
+						}
+						origin[d] = slice + plane;
+						origin[u] = i;
+						origin[v] = j;
+						sink.quad(key, direction, origin[0], origin[1], origin[2], width, height);
+						quads++;
+						i += width;
+					}
+				}
+			}
+		}
+		return quads;
+	}
+
+	/**
+	 * Writes a quad as two triangles of non indexed vertices, wound counter
+	 * clockwise when seen from the side the face points to.<br>
+	 * <br>
+	 * Positions get four components (w = 1), normals four (w = 0) and
+	 * texture coordinates two, in block units so that textures repeat across
+	 * the quad.
+	 *
+	 * @return the number of vertices written (always 6)
+	 */
+	public static int writeQuad(int direction, float x, float y, float z, int width, int height, float[] positions, int positionOffset, float[] normals, int normalOffset, float[] texCoords, int texCoordOffset) {
+		final int d = direction >> 1;
+		final int u = (d + 1) % 3;
+		final int v = (d + 2) % 3;
+		final boolean positive = (direction & 1) == 1;
+		// Corners 0 to 3 go counter clockwise around u x v = +d
+		final int[] order = positive ? POSITIVE_ORDER : NEGATIVE_ORDER;
+		for (int n = 0; n < 6; n++) {
+			final int corner = order[n];
+			final int cu = corner == 1 || corner == 2 ? width : 0;
+			final int cv = corner >= 2 ? height : 0;
+			final int p = positionOffset + n * 4;
+			positions[p] = x;
+			positions[p + 1] = y;
+			positions[p + 2] = z;
+			positions[p + u] += cu;
+			positions[p + v] += cv;
+			positions[p + 3] = 1f;
+
+			final int no = normalOffset + n * 4;
+			normals[no] = 0f;
+			normals[no + 1] = 0f;
+			normals[no + 2] = 0f;
+			normals[no + d] = positive ? 1f : -1f;
+			normals[no + 3] = 0f;
+
+			final int t = texCoordOffset + n * 2;
+			texCoords[t] = cu;
+			texCoords[t + 1] = cv;
+		}
+		return 6;
+	}
+
+	private static final int[] POSITIVE_ORDER = {0, 1, 2, 0, 2, 3};
+	private static final int[] NEGATIVE_ORDER = {0, 2, 1, 0, 3, 2};
+
+	/**
+	 * Reports the visible faces of a volume
+	 */
+	public interface FaceSource {
+		/**
+		 * Gets the merge key of a face.<br>
+		 * <br>
+		 * Faces only merge with faces that have the same key.
+		 *
+		 * @param x the local x coordinate
+		 * @param y the local y coordinate
+		 * @param z the local z coordinate
+		 * @param direction the face direction
+		 * @return the key, or {@link GreedyMesher#NO_FACE} if nothing is rendered
+		 */
+		public int getFace(int x, int y, int z, int direction);
+	}
+
+	/**
+	 * Receives merged quads
+	 */
+	public interface QuadSink {
+		public void quad(int key, int direction, int x, int y, int z, int width, int height);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.api.protocol.Protocol;
+import org.spout.api.protocol.proxy.ConnectionInfoMessage;
+import org.spout.api.protocol.proxy.ProxyStartMessage;
+import org.spout.api.protocol.proxy.RedirectMessage;
+import org.spout.api.protocol.proxy.TransformableMessage;
+
+/**
+ * An upstream handler that splits the incoming stream of a proxy channel into frames.<br>
+ * <br>
+ * While the owning session is in raw forwarding mode, frames are written to the opposite channel
+ * as undecoded buffer slices. Only frames for proxy control messages are passed on to the decoder.
+ * Otherwise, every frame is passed on to the decoder, one frame per event.
+ */
+public class RawFrameForwarder extends SimpleChannelUpstreamHandler {
+	public static final String NAME = "rawforwarder";
+	/**
+	 * Message types which the proxy must decode, even in raw forwarding mode
+	 */
+	private static final Class<?>[] CONTROL_TYPES = new Class<?>[] {ConnectionInfoMessage.class, ProxyStartMessage.class, RedirectMessage.class, TransformableMessage.class};
+	private final SpoutProxySession session;
+	private final boolean upstream;
+	/**
+	 * Bytes of an incomplete frame left over from the previous read
+	 */
+	private ChannelBuffer partial = null;
+
+	/**
+	 * Creates a new forwarder
+	 *
+	 * @param session the proxy session
+	 * @param upstream true if this forwarder is bound to the channel to the server
+	 */
+	public RawFrameForwarder(SpoutProxySession session, boolean upstream) {
+		this.session = session;
+		this.upstream = upstream;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (!(e.getMessage() instanceof ChannelBuffer)) {
+			ctx.sendUpstream(e);
+			return;
+		}
+		ChannelBuffer buf = (ChannelBuffer) e.getMessage();
+		if (partial != null) {
+			partial.writeBytes(buf);
+			buf = partial;
+			partial = null;
+		}
+
+		Protocol protocol = session.getProtocol();
+		if (!(protocol instanceof RawFrameProtocol)) {
+			Channels.fireMessageReceived(ctx, buf, e.getRemoteAddress());
+			return;
+		}
+		RawFrameProtocol framing = (RawFrameProtocol) protocol;
+
+		int runStart = buf.readerIndex();
+		try {
+			int length;
+			while ((length = framing.getFrameLength(buf)) >= 0 && buf.readableBytes() >= length) {
+				if (session.isRawForwarding() && !isControlFrame(protocol, framing.getFrameOpcode(buf))) {
+					buf.skipBytes(length);
+					continue;
+				}
+				forwardRun(buf, runStart);
+				Channels.fireMessageReceived(ctx, buf.readSlice(length), e.getRemoteAddress());
+				runStart = buf.readerIndex();
+			}
+		} catch (CorruptedFrameException ex) {
+			// Forward the frames before the bad header, then drop the connection, since the stream can't be reframed
+			forwardRun(buf, runStart);
+			ctx.getChannel().close();
+			return;
+		}
+		forwardRun(buf, runStart);
+
+		if (buf.readable()) {
+			// Sized by what has arrived, the buffer grows as the rest of the frame is received
+			partial = ChannelBuffers.dynamicBuffer(buf.readableBytes());
+			partial.writeBytes(buf);
+		}
+	}
+
+	/**
+	 * Forwards the run of raw frames between runStart and the reader index as a single write
+	 */
+	private void forwardRun(ChannelBuffer buf, int runStart) {
+		int runLength = buf.readerIndex() - runStart;
+		if (runLength > 0) {
+			session.forwardRaw(upstream, buf.slice(runStart, runLength));
+		}
+	}
+
+	private static boolean isControlFrame(Protocol protocol, int opcode) {
+		MessageCodec<?> codec = protocol.getCodecLookupService().find(opcode);
+		if (codec == null) {
+			return false;
+		}
+		Class<?> type = codec.getType();
+		for (Class<?> control : CONTROL_TYPES) {
+			if (control.isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
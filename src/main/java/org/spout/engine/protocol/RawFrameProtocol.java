@@ -0,0 +1,59 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+
+/**
+ * A protocol whose frame headers can be inspected without decoding the message body.<br>
+ * <br>
+ * Proxies use this to forward frames as raw bytes once a session is in passthrough mode.
+ */
+public interface RawFrameProtocol {
+	/**
+	 * Gets the total length of the frame starting at the buffer's reader index, including the header.<br>
+	 * <br>
+	 * The reader index of the buffer is not modified.
+	 *
+	 * @param buf the buffer
+	 * @return the frame length, at least the header length, or -1 if the buffer does not yet hold a complete header
+	 * @throws CorruptedFrameException if the header declares a length shorter than the header or longer than the protocol allows
+	 */
+	public int getFrameLength(ChannelBuffer buf) throws CorruptedFrameException;
+
+	/**
+	 * Gets the opcode of the frame starting at the buffer's reader index.<br>
+	 * <br>
+	 * The reader index of the buffer is not modified. This method must only be called when
+	 * {@link #getFrameLength(ChannelBuffer)} returns a positive value.
+	 *
+	 * @param buf the buffer
+	 * @return the opcode
+	 */
+	public int getFrameOpcode(ChannelBuffer buf);
+}
@@ -30,8 +30,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
 import org.spout.api.Spout;
 import org.spout.api.chat.ChatArguments;
 import org.spout.api.protocol.Protocol;
@@ -41,6 +43,7 @@ import org.spout.api.protocol.proxy.ConnectionInfoMessage;
 import org.spout.api.protocol.proxy.ProxyStartMessage;
 import org.spout.api.protocol.proxy.RedirectMessage;
 import org.spout.api.protocol.proxy.TransformableMessage;
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.SpoutProxy;
 
 /**
@@ -67,9 +70,42 @@ public class SpoutProxySession extends SpoutServerSession<SpoutProxy> {
 	 * Indicates the number of times the proxy has connected to a server for this session
 	 */
 	private final AtomicInteger connects = new AtomicInteger(0);
+	/**
+	 * Indicates if frames are forwarded without decoding while in passthrough mode
+	 */
+	private final boolean rawForwarding = SpoutConfiguration.PROXY_RAW_FORWARDING.getBoolean();
 
 	public SpoutProxySession(SpoutProxy engine, Channel channel, Protocol bootstrapProtocol) {
 		super(engine, channel, bootstrapProtocol);
+		installForwarder(channel, false);
+	}
+
+	/**
+	 * Gets if frames which aren't proxy control messages are currently forwarded without being decoded
+	 *
+	 * @return true if raw forwarding is active
+	 */
+	public boolean isRawForwarding() {
+		return rawForwarding && passthrough.get();
+	}
+
+	/**
+	 * Writes undecoded frames to the channel opposite to the one they were received on
+	 *
+	 * @param upstream true if the frames were received from the server
+	 * @param frames the frames
+	 */
+	public void forwardRaw(boolean upstream, ChannelBuffer frames) {
+		Channel target = upstream ? channel : auxChannel.get();
+		if (target == null) {
+			Spout.getLogger().warning("Attempt made to send data to an unconnected channel");
+			return;
+		}
+		try {
+			target.write(frames);
+		} catch (Exception e) {
+			disconnect(false, new Object[] {"Socket Error!"});
+		}
 	}
 
 	@Override
@@ -89,6 +125,9 @@ public class SpoutProxySession extends SpoutServerSession<SpoutProxy> {
 					return;
 				}
 				auxChannel.write(message);
+			} else if (isRawForwarding()) {
+				// Raw frames are written directly, so messages must skip the send threads to stay in order
+				channel.write(message);
 			} else {
 				super.send(upstream, force, message);
 			}
@@ -144,6 +183,7 @@ public class SpoutProxySession extends SpoutServerSession<SpoutProxy> {
 			throw new IllegalStateException("Aux channel may not be set without closing the previously bound channel");
 		} else {
 			connects.incrementAndGet();
+			installForwarder(c, true);
 		}
 		System.out.println("Binding: " + c + " " + connects.get());
 	}
@@ -175,6 +215,16 @@ public class SpoutProxySession extends SpoutServerSession<SpoutProxy> {
 		}
 	}
 
+	private void installForwarder(Channel c, boolean upstream) {
+		if (!rawForwarding) {
+			return;
+		}
+		ChannelPipeline pipeline = c.getPipeline();
+		if (pipeline != null && pipeline.get(RawFrameForwarder.NAME) == null) {
+			pipeline.addFirst(RawFrameForwarder.NAME, new RawFrameForwarder(this, upstream));
+		}
+	}
+
 	private void updateConnectionInfo(boolean auxChannel, boolean upstream, ConnectionInfoMessage info) {
 		AtomicReference<ConnectionInfo> ref = auxChannel ? auxChannelInfo : channelInfo;
 		boolean success = false;
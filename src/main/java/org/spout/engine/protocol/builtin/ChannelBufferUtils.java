@@ -62,6 +62,88 @@ public class ChannelBufferUtils {
 		buffer.writeBytes(stringBytes);
 	}
 
+	/**
+	 * Gets an estimate of the number of bytes {@link #writeString(ChannelBuffer, String)} writes for the given string
+	 *
+	 * @param str the string
+	 * @return the estimated size, exact for ASCII strings
+	 */
+	public static int estimateStringSize(String str) {
+		return 4 + str.length();
+	}
+
+	/**
+	 * Per thread scratch arrays used to convert between primitive arrays and bytes
+	 */
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[4096];
+		}
+	};
+
+	/**
+	 * Gets a scratch array owned by the calling thread that holds at least the given number of bytes.<br>
+	 * <br>
+	 * The contents are undefined and the array must not escape the calling method.
+	 *
+	 * @param minSize the minimum size
+	 * @return the scratch array
+	 */
+	public static byte[] getScratch(int minSize) {
+		byte[] scratch = SCRATCH.get();
+		if (scratch.length < minSize) {
+			scratch = new byte[Math.max(minSize, scratch.length << 1)];
+			SCRATCH.set(scratch);
+		}
+		return scratch;
+	}
+
+	/**
+	 * Writes an array of shorts, big endian, as a single bulk write
+	 *
+	 * @param buffer the buffer
+	 * @param values the shorts to write
+	 */
+	public static void writeShorts(ChannelBuffer buffer, short[] values) {
+		final int length = values.length << 1;
+		buffer.ensureWritableBytes(length);
+		final byte[] array;
+		int index;
+		if (buffer.hasArray()) {
+			array = buffer.array();
+			index = buffer.arrayOffset() + buffer.writerIndex();
+		} else {
+			array = getScratch(length);
+			index = 0;
+		}
+		for (short s : values) {
+			array[index++] = (byte) (s >> 8);
+			array[index++] = (byte) s;
+		}
+		if (buffer.hasArray()) {
+			buffer.writerIndex(buffer.writerIndex() + length);
+		} else {
+			buffer.writeBytes(array, 0, length);
+		}
+	}
+
+	/**
+	 * Reads an array of shorts, big endian, as a single bulk read
+	 *
+	 * @param buffer the buffer
+	 * @param values the array to fill
+	 */
+	public static void readShorts(ChannelBuffer buffer, short[] values) {
+		final int length = values.length << 1;
+		final byte[] array = getScratch(length);
+		buffer.readBytes(array, 0, length);
+		int index = 0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (short) ((array[index++] << 8) | (array[index++] & 0xFF));
+		}
+	}
+
 	public static final int UUID_SIZE = 16;
 
 	public static UUID readUUID(ChannelBuffer buffer) {
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol.builtin;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+import org.spout.api.generator.biome.BiomeManager;
+import org.spout.api.geo.LoadOption;
+import org.spout.engine.protocol.builtin.codec.ChunkDataCodec;
+import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+import org.spout.engine.world.SpoutClientWorld;
+import org.spout.engine.world.SpoutChunk;
+import org.spout.engine.world.SpoutRegion;
+
+/**
+ * Decodes chunk data received by the client on a pool of worker threads.<br>
+ * <br>
+ * Each message is inflated and turned into chunk storage by a worker, and the finished chunk is
+ * handed to its region, which adds it at the start of its next tick. Messages for the same chunk
+ * coordinates always go to the same worker, so they are applied in the order they were received.
+ */
+public class ChunkDecodePool {
+	private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private static final ExecutorService[] pool;
+
+	static {
+		pool = new ExecutorService[POOL_SIZE];
+		for (int i = 0; i < pool.length; i++) {
+			pool[i] = Executors.newSingleThreadExecutor(new NamedThreadFactory("ChunkDecodePool - " + i, true));
+		}
+	}
+
+	private ChunkDecodePool() {
+	}
+
+	/**
+	 * Queues a chunk data message to be decoded and added to the world
+	 *
+	 * @param world the world the chunk belongs to
+	 * @param message the message
+	 */
+	public static void decode(final SpoutClientWorld world, final ChunkDataMessage message) {
+		getWorker(message.getX(), message.getY(), message.getZ()).execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					handle(world, message);
+				} catch (Exception e) {
+					Spout.getLogger().log(Level.SEVERE, "Unable to decode chunk (" + message.getX() + "," + message.getY() + "," + message.getZ() + ")", e);
+				}
+			}
+		});
+	}
+
+	private static void handle(SpoutClientWorld world, ChunkDataMessage message) throws IOException {
+		final int x = message.getX();
+		final int y = message.getY();
+		final int z = message.getZ();
+		SpoutRegion region = world.getRegionFromBlock(x, y, z, LoadOption.LOAD_GEN);
+		if (message.isUnload()) {
+			region.queueDecodedUnload(x, y, z);
+			return;
+		}
+		message = ChunkDataCodec.decompress(message);
+		BiomeManager manager = createBiomeManager(message);
+		SpoutChunk chunk = region.createChunk(x, y, z, message.getBlockIds(), message.getBlockData(), message.getBlockLight(), message.getSkyLight(), manager);
+		region.queueDecodedChunk(x, y, z, chunk);
+	}
+
+	private static BiomeManager createBiomeManager(ChunkDataMessage message) {
+		if (message.getBiomeManagerClass() == null) {
+			return null;
+		}
+		Class<? extends BiomeManager> managerClass;
+		try {
+			Class<?> testClass = Class.forName(message.getBiomeManagerClass());
+			if (!BiomeManager.class.isAssignableFrom(testClass)) {
+				throw new IllegalArgumentException("Biome manager class " + testClass + " is not a BiomeManager");
+			}
+			managerClass = testClass.asSubclass(BiomeManager.class);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown biome manager class: " + message.getBiomeManagerClass());
+		}
+		BiomeManager manager;
+		try {
+			manager = managerClass.getConstructor(int.class, int.class, int.class).newInstance(message.getX(), message.getY(), message.getZ());
+		} catch (InstantiationException e) {
+			throw new RuntimeException(e);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+		if (message.getBiomeData() != null) {
+			manager.deserialize(message.getBiomeData());
+		}
+		return manager;
+	}
+
+	private static ExecutorService getWorker(int x, int y, int z) {
+		int h = x * 31 * 31 + y * 31 + z;
+		// Taken from HashMap
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return pool[(h & Integer.MAX_VALUE) % pool.length];
+	}
+}
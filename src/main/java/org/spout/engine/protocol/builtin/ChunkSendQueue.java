@@ -0,0 +1,183 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol.builtin;
+
+import java.util.Arrays;
+
+import org.spout.api.geo.LoadOption;
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.math.Vector3;
+import org.spout.api.util.map.TInt21TripleObjectHashMap;
+
+/**
+ * Holds the chunks waiting to be sent to a single player.<br>
+ * <br>
+ * Chunks are released nearest first, with chunks in front of the player preferred over chunks behind
+ * it, up to a byte budget per tick. Each chunk is charged the number of bytes its sender reports, so the
+ * budget follows the real compressed size. Chunks which are freed before being released are dropped.<br>
+ * <br>
+ * Chunks may be added from any region thread, so the queue is synchronized. The sender is called
+ * without holding the lock.
+ */
+public class ChunkSendQueue {
+	private final TInt21TripleObjectHashMap<Chunk> pending = new TInt21TripleObjectHashMap<Chunk>();
+
+	/**
+	 * Queues a chunk to be sent, replacing any chunk already queued for the same coordinates
+	 *
+	 * @param c the chunk
+	 */
+	public synchronized void add(Chunk c) {
+		pending.put(c.getX(), c.getY(), c.getZ(), c);
+	}
+
+	/**
+	 * Removes the chunk queued for the given chunk coordinates
+	 *
+	 * @return true if a chunk was waiting to be sent
+	 */
+	public synchronized boolean cancel(int x, int y, int z) {
+		return pending.remove(x, y, z) != null;
+	}
+
+	/**
+	 * Gets if a chunk is waiting to be sent for the given chunk coordinates
+	 */
+	public synchronized boolean isPending(int x, int y, int z) {
+		return pending.get(x, y, z) != null;
+	}
+
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	public synchronized void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * Sends the chunks for this tick, in send order.<br>
+	 * <br>
+	 * At least one chunk is sent if any are pending, even if it exceeds the budget.
+	 *
+	 * @param position the position of the player
+	 * @param forward the direction the player is facing, or null if unknown
+	 * @param byteBudget the number of bytes which may be sent
+	 * @param sender sends each released chunk
+	 * @return the number of chunks sent
+	 */
+	public int send(Point position, Vector3 forward, int byteBudget, Sender sender) {
+		Entry[] entries = sort(position, forward);
+		World world = position.getWorld();
+		int sent = 0;
+		for (int i = 0; i < entries.length && (byteBudget > 0 || sent == 0); i++) {
+			Chunk c = take(entries[i].chunk, world);
+			if (c != null) {
+				byteBudget -= sender.send(c);
+				sent++;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Gets the pending chunks, sorted in send order
+	 */
+	private synchronized Entry[] sort(Point position, Vector3 forward) {
+		float px = position.getX();
+		float py = position.getY();
+		float pz = position.getZ();
+		Entry[] entries = new Entry[pending.size()];
+		int count = 0;
+		for (Chunk c : pending.values()) {
+			float dx = (c.getX() << Chunk.BLOCKS.BITS) + Chunk.BLOCKS.HALF_SIZE - px;
+			float dy = (c.getY() << Chunk.BLOCKS.BITS) + Chunk.BLOCKS.HALF_SIZE - py;
+			float dz = (c.getZ() << Chunk.BLOCKS.BITS) + Chunk.BLOCKS.HALF_SIZE - pz;
+			float distanceSquared = dx * dx + dy * dy + dz * dz;
+			float score = distanceSquared;
+			if (forward != null && distanceSquared > 0) {
+				// Scale from 1 (straight ahead) to 2 (directly behind)
+				float cos = (dx * forward.getX() + dy * forward.getY() + dz * forward.getZ()) / (float) Math.sqrt(distanceSquared);
+				score *= 1.5f - 0.5f * cos;
+			}
+			entries[count++] = new Entry(c, score);
+		}
+		Arrays.sort(entries, 0, count);
+		return entries;
+	}
+
+	/**
+	 * Removes a chunk from the queue to send it
+	 *
+	 * @param queued the chunk as it was queued when sorting
+	 * @param world the world of the player
+	 * @return the chunk to send, or null if it was cancelled or there is nothing left to send
+	 */
+	private synchronized Chunk take(Chunk queued, World world) {
+		Chunk c = pending.remove(queued.getX(), queued.getY(), queued.getZ());
+		if (c == null) {
+			// Cancelled since the chunks were sorted
+			return null;
+		}
+		if (!c.isLoaded()) {
+			// The chunk was reloaded after being queued, send the current one
+			// If it was unloaded with nothing to replace it, nothing is left to send
+			c = world.getChunk(c.getX(), c.getY(), c.getZ(), LoadOption.NO_LOAD);
+		}
+		return c;
+	}
+
+	/**
+	 * Sends the chunks released by the queue
+	 */
+	public interface Sender {
+		/**
+		 * Sends a chunk
+		 *
+		 * @param c the chunk
+		 * @return the number of bytes sent
+		 */
+		public int send(Chunk c);
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private final Chunk chunk;
+		private final float score;
+
+		public Entry(Chunk chunk, float score) {
+			this.chunk = chunk;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			return Float.compare(score, o.score);
+		}
+	}
+}
@@ -26,10 +26,13 @@
  */
 package org.spout.engine.protocol.builtin;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
 
+import org.spout.api.Spout;
 import org.spout.api.entity.Entity;
 import org.spout.api.geo.World;
 import org.spout.api.geo.cuboid.Chunk;
@@ -42,27 +45,68 @@ import org.spout.api.protocol.EntityProtocol;
 import org.spout.api.protocol.Message;
 import org.spout.api.protocol.NetworkSynchronizer;
 import org.spout.api.protocol.Session;
+import org.spout.engine.SpoutConfiguration;
+import org.spout.engine.protocol.builtin.codec.ChunkDataCodec;
 import org.spout.engine.protocol.builtin.message.BlockUpdateMessage;
 import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
 import org.spout.engine.protocol.builtin.message.EntityTransformMessage;
 import org.spout.engine.protocol.builtin.message.WorldChangeMessage;
 
 public class SpoutNetworkSynchronizer extends NetworkSynchronizer {
+	private final ChunkSendQueue chunkSendQueue = new ChunkSendQueue();
+	private final int chunkBytesPerTick = SpoutConfiguration.CHUNK_SEND_BYTES_PER_TICK.getInt();
+	/**
+	 * Compresses chunks before sending them, so they are charged their real size
+	 */
+	private final ChunkSendQueue.Sender chunkSender = new ChunkSendQueue.Sender() {
+		@Override
+		public int send(Chunk c) {
+			ChunkDataMessage message;
+			try {
+				message = ChunkDataCodec.compress(new ChunkDataMessage(c.getSnapshot()));
+			} catch (IOException e) {
+				Spout.getLogger().log(Level.SEVERE, "Unable to compress chunk (" + c.getX() + "," + c.getY() + "," + c.getZ() + ")", e);
+				return 0;
+			}
+			session.send(false, message);
+			return message.getCompressedData().length;
+		}
+	};
+
 	public SpoutNetworkSynchronizer(Session session) {
 		super(session, 3);
 	}
 
 	@Override
 	public Collection<Chunk> sendChunk(Chunk c) {
-		session.send(false, new ChunkDataMessage(c.getSnapshot()));
+		// Sent in priority order by flushChunks()
+		chunkSendQueue.add(c);
 		return null; //TODO Why does this return null?
 	}
 
 	@Override
 	protected void freeChunk(Point p) {
+		if (chunkSendQueue.cancel(p.getBlockX(), p.getBlockY(), p.getBlockZ())) {
+			// The client never received the chunk
+			return;
+		}
 		session.send(false, new ChunkDataMessage(p.getBlockX(), p.getBlockY(), p.getBlockZ()));
 	}
 
+	@Override
+	public void preSnapshot() {
+		super.preSnapshot();
+		flushChunks();
+	}
+
+	private void flushChunks() {
+		if (player == null || chunkSendQueue.size() == 0) {
+			return;
+		}
+		Transform transform = player.getScene().getTransform();
+		chunkSendQueue.send(transform.getPosition(), transform.forwardVector(), chunkBytesPerTick, chunkSender);
+	}
+
 	@Override
 	protected void sendPosition(Point p, Quaternion rot) {
 		session.send(false, new EntityTransformMessage(player.getId(), new Transform(p, rot, Vector3.ONE), getRepositionManager()));
@@ -70,11 +114,16 @@ public class SpoutNetworkSynchronizer extends NetworkSynchronizer {
 
 	@Override
 	protected void worldChanged(World world) {
+		chunkSendQueue.clear();
 		session.send(false, new WorldChangeMessage(world, world.getData()));
 	}
 
 	@Override
 	public void updateBlock(Chunk chunk, int x, int y, int z, BlockMaterial material, short data) {
+		if (chunkSendQueue.isPending(chunk.getX(), chunk.getY(), chunk.getZ())) {
+			// The chunk will be sent with the update included
+			return;
+		}
 		session.send(false, new BlockUpdateMessage(chunk.getBlock(x, y, z)));
 	}
 
@@ -30,6 +30,7 @@ import java.net.InetSocketAddress;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
 import org.spout.api.Spout;
 import org.spout.api.chat.ChatArguments;
 import org.spout.api.command.Command;
@@ -42,6 +43,7 @@ import org.spout.api.protocol.Protocol;
 import org.spout.api.protocol.Session;
 import org.spout.api.util.StringMap;
 import org.spout.api.util.StringMapEvent;
+import org.spout.engine.protocol.RawFrameProtocol;
 import org.spout.engine.protocol.builtin.message.CommandMessage;
 import org.spout.engine.protocol.builtin.message.LoginMessage;
 import org.spout.engine.protocol.builtin.message.StringMapMessage;
@@ -49,12 +51,17 @@ import org.spout.engine.protocol.builtin.message.StringMapMessage;
 /**
  * The protocol used in SpoutClient
  */
-public class SpoutProtocol extends Protocol {
+public class SpoutProtocol extends Protocol implements RawFrameProtocol {
 	public static final int ENTITY_PROTOCOL_ID = NetworkComponent.getProtocolId(SpoutProtocol.class.getName());
 	public static final SpoutProtocol INSTANCE = new SpoutProtocol();
 	public static final DefaultedKey<Integer> PLAYER_ENTITY_ID = new DefaultedKeyImpl<Integer>("playerEntityId", -1);
 	public static final int PROTOCOL_VERSION = 0;
 	public static final int DEFAULT_PORT = 13756;
+	private static final int HEADER_LENGTH = 6;
+	/**
+	 * The largest frame, including its header, accepted from a peer
+	 */
+	public static final int MAX_FRAME_LENGTH = 1 << 24;
 
 	public SpoutProtocol() {
 		super("Spout", DEFAULT_PORT, new SpoutCodecLookupService(), new SpoutHandlerLookupService());
@@ -75,12 +82,29 @@ public class SpoutProtocol extends Protocol {
 
 	@Override
 	public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
-		ChannelBuffer buf = ChannelBuffers.buffer(6);
+		ChannelBuffer buf = ChannelBuffers.buffer(HEADER_LENGTH);
 		buf.writeShort(codec.getOpcode());
 		buf.writeInt(data.writerIndex());
 		return buf;
 	}
 
+	@Override
+	public int getFrameLength(ChannelBuffer buf) throws CorruptedFrameException {
+		if (buf.readableBytes() < HEADER_LENGTH) {
+			return -1;
+		}
+		int length = buf.getInt(buf.readerIndex() + 2);
+		if (length < 0 || length > MAX_FRAME_LENGTH - HEADER_LENGTH) {
+			throw new CorruptedFrameException("Invalid frame length: " + length);
+		}
+		return HEADER_LENGTH + length;
+	}
+
+	@Override
+	public int getFrameOpcode(ChannelBuffer buf) {
+		return buf.getUnsignedShort(buf.readerIndex());
+	}
+
 	@Override
 	public Message getKickMessage(ChatArguments message) {
 		Command cmd = Spout.getEngine().getRootCommand().getChild("disconnect");
@@ -27,6 +27,7 @@
 package org.spout.engine.protocol.builtin.codec;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -42,6 +43,32 @@ import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
  *
  */
 public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
+	private static final int UNCOMPRESSED_SIZE = Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.HALF_VOLUME + Chunk.BLOCKS.HALF_VOLUME;
+	/**
+	 * Deflaters and inflaters are expensive to create and end, so each thread keeps one
+	 */
+	private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater();
+		}
+	};
+	private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	/**
+	 * Per thread output array for the deflater, the uncompressed data uses the shared scratch array
+	 */
+	private static final ThreadLocal<byte[]> COMPRESSED = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[UNCOMPRESSED_SIZE + Chunk.BLOCKS.AREA];
+		}
+	};
+
 	public ChunkDataCodec() {
 		super(ChunkDataMessage.class, 0x08);
 	}
@@ -56,56 +83,24 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 			buffer.writeInt(message.getY());
 			buffer.writeInt(message.getZ());
 		} else {
-			int size = 18;
-			int dataSize = Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.HALF_VOLUME + Chunk.BLOCKS.HALF_VOLUME;
-			if (message.getBiomeData() != null) {
-				dataSize += Chunk.BLOCKS.AREA;
-			}
-			byte[] uncompressedData = new byte[dataSize];
-			byte[] compressedData = new byte[dataSize];
-
-			int index = 0;
-			for (short s : message.getBlockIds()) {
-				uncompressedData[index++] = (byte) s;
-				uncompressedData[index++] = (byte) (s >> 8);
-			}
-			for (short s : message.getBlockData()) {
-				uncompressedData[index++] = (byte) s;
-				uncompressedData[index++] = (byte) (s >> 8);
-			}
-			System.arraycopy(message.getBlockLight(), 0, uncompressedData, index, message.getBlockLight().length);
-			index += message.getBlockLight().length;
-			System.arraycopy(message.getSkyLight(), 0, uncompressedData, index, message.getSkyLight().length);
-			index += message.getSkyLight().length;
-			if (message.getBiomeData() != null) {
-				System.arraycopy(message.getBiomeData(), 0, uncompressedData, index, message.getBiomeData().length);
-				index += message.getBiomeData().length;
-			}
-
-			Deflater deflater = new Deflater();
-			deflater.setInput(uncompressedData);
-			deflater.finish();
-			int compressedSize = deflater.deflate(compressedData);
-			try {
-				if (compressedSize == 0) {
-					throw new IOException("Not all data compressed!");
-				}
-			} finally {
-				size += compressedSize;
-				deflater.end();
+			// Messages which are already compressed, such as relayed ones, are written as they are
+			final ChunkDataMessage compressed = compress(message);
+			byte[] compressedData = compressed.getCompressedData();
+			int size = 18 + compressedData.length;
+			if (compressed.getBiomeManagerClass() != null) {
+				size += ChannelBufferUtils.estimateStringSize(compressed.getBiomeManagerClass());
 			}
-
 			buffer = ChannelBuffers.dynamicBuffer(size);
 			buffer.writeByte(0); // not unload
-			buffer.writeInt(message.getX());
-			buffer.writeInt(message.getY());
-			buffer.writeInt(message.getZ());
-			buffer.writeByte(message.getBiomeData() != null ? 1 : 0); // hasBiomes
-			if (message.getBiomeManagerClass() != null) {
-				ChannelBufferUtils.writeString(buffer, message.getBiomeManagerClass());
+			buffer.writeInt(compressed.getX());
+			buffer.writeInt(compressed.getY());
+			buffer.writeInt(compressed.getZ());
+			buffer.writeByte(compressed.hasBiomes() ? 1 : 0); // hasBiomes
+			if (compressed.getBiomeManagerClass() != null) {
+				ChannelBufferUtils.writeString(buffer, compressed.getBiomeManagerClass());
 			}
-			buffer.writeInt(compressedSize);
-			buffer.writeBytes(compressedData, 0, compressedSize);
+			buffer.writeInt(compressedData.length);
+			buffer.writeBytes(compressedData);
 		}
 		return buffer;
 	}
@@ -119,47 +114,124 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 		if (unload) {
 			return new ChunkDataMessage(x, y, z);
 		} else {
-			int uncompressedSize = Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.HALF_VOLUME + Chunk.BLOCKS.HALF_VOLUME;
 			final boolean hasBiomes = buffer.readByte() == 1;
-			if (hasBiomes) {
-				uncompressedSize += Chunk.BLOCKS.AREA;
-			}
-			final String biomeManagerClass = hasBiomes ? null : ChannelBufferUtils.readString(buffer);
-
-			final byte[] uncompressedData = new byte[uncompressedSize];
+			final String biomeManagerClass = hasBiomes ? ChannelBufferUtils.readString(buffer) : null;
 			final byte[] compressedData = new byte[buffer.readInt()];
 			buffer.readBytes(compressedData);
-			Inflater inflater = new Inflater();
-			inflater.setInput(compressedData);
-			try {
-				inflater.inflate(uncompressedData);
-			} catch (DataFormatException e) {
-				throw new IOException("Error while reading chunk (" + x + "," + y + "," + z + ")!", e);
-			}
-			inflater.end();
+			// Inflating is left to the receiver, so it can happen off the network thread
+			return new ChunkDataMessage(x, y, z, compressedData, hasBiomes, biomeManagerClass);
+		}
+	}
 
-			final short[] blockIds = new short[Chunk.BLOCKS.VOLUME];
-			final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
-			final byte[] blockLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
-			final byte[] skyLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
-			final byte[] biomeData = hasBiomes ? new byte[Chunk.BLOCKS.AREA] : null;
+	/**
+	 * Packs and deflates the payload of a chunk data message, so its size on the wire is known before it is sent
+	 *
+	 * @param message the uncompressed message
+	 * @return a message holding the compressed chunk data
+	 * @throws IOException if the data could not be compressed
+	 */
+	public static ChunkDataMessage compress(ChunkDataMessage message) throws IOException {
+		if (message.isUnload() || message.isCompressed()) {
+			return message;
+		}
+		int dataSize = UNCOMPRESSED_SIZE;
+		if (message.getBiomeData() != null) {
+			dataSize += Chunk.BLOCKS.AREA;
+		}
+		byte[] uncompressedData = ChannelBufferUtils.getScratch(dataSize);
 
-			int index = 0;
-			for (int i = 0; i < blockIds.length; ++i) {
-				blockIds[i] = (short) (uncompressedData[index++] | (uncompressedData[index++] << 8));
-			}
-			for (int i = 0; i < blockData.length; ++i) {
-				blockData[i] = (short) (uncompressedData[index++] | (uncompressedData[index++] << 8));
+		int index = 0;
+		for (short s : message.getBlockIds()) {
+			uncompressedData[index++] = (byte) s;
+			uncompressedData[index++] = (byte) (s >> 8);
+		}
+		for (short s : message.getBlockData()) {
+			uncompressedData[index++] = (byte) s;
+			uncompressedData[index++] = (byte) (s >> 8);
+		}
+		System.arraycopy(message.getBlockLight(), 0, uncompressedData, index, message.getBlockLight().length);
+		index += message.getBlockLight().length;
+		System.arraycopy(message.getSkyLight(), 0, uncompressedData, index, message.getSkyLight().length);
+		index += message.getSkyLight().length;
+		if (message.getBiomeData() != null) {
+			System.arraycopy(message.getBiomeData(), 0, uncompressedData, index, message.getBiomeData().length);
+			index += message.getBiomeData().length;
+		}
+
+		Deflater deflater = DEFLATER.get();
+		byte[] compressedData = COMPRESSED.get();
+		int compressedSize = 0;
+		deflater.reset();
+		deflater.setInput(uncompressedData, 0, index);
+		deflater.finish();
+		while (!deflater.finished()) {
+			if (compressedSize == compressedData.length) {
+				byte[] newData = new byte[compressedData.length << 1];
+				System.arraycopy(compressedData, 0, newData, 0, compressedSize);
+				compressedData = newData;
+				COMPRESSED.set(compressedData);
 			}
-			System.arraycopy(uncompressedData, index, blockLight, 0, blockLight.length);
-			index += blockLight.length;
-			System.arraycopy(uncompressedData, index, skyLight, 0, skyLight.length);
-			index += skyLight.length;
-			if (hasBiomes) {
-				System.arraycopy(uncompressedData, index, biomeData, 0, biomeData.length);
+			compressedSize += deflater.deflate(compressedData, compressedSize, compressedData.length - compressedSize);
+		}
+		if (compressedSize == 0) {
+			throw new IOException("Not all data compressed!");
+		}
+		return new ChunkDataMessage(message.getX(), message.getY(), message.getZ(), Arrays.copyOf(compressedData, compressedSize), message.hasBiomes(), message.getBiomeManagerClass());
+	}
+
+	/**
+	 * Inflates and unpacks the payload of a compressed chunk data message
+	 *
+	 * @param message the compressed message
+	 * @return a message holding the uncompressed chunk data
+	 * @throws IOException if the payload is corrupt
+	 */
+	public static ChunkDataMessage decompress(ChunkDataMessage message) throws IOException {
+		if (!message.isCompressed()) {
+			return message;
+		}
+		final int x = message.getX();
+		final int y = message.getY();
+		final int z = message.getZ();
+		final boolean hasBiomes = message.hasBiomes();
+		int uncompressedSize = UNCOMPRESSED_SIZE;
+		if (hasBiomes) {
+			uncompressedSize += Chunk.BLOCKS.AREA;
+		}
+
+		final byte[] uncompressedData = ChannelBufferUtils.getScratch(uncompressedSize);
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(message.getCompressedData());
+		try {
+			if (inflater.inflate(uncompressedData, 0, uncompressedSize) != uncompressedSize) {
+				throw new IOException("Chunk data (" + x + "," + y + "," + z + ") is truncated!");
 			}
+		} catch (DataFormatException e) {
+			throw new IOException("Error while reading chunk (" + x + "," + y + "," + z + ")!", e);
+		}
 
-			return new ChunkDataMessage(x, y, z, blockIds, blockData, blockLight, skyLight, biomeData, biomeManagerClass);
+		final short[] blockIds = new short[Chunk.BLOCKS.VOLUME];
+		final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
+		final byte[] blockLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
+		final byte[] skyLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
+		final byte[] biomeData = hasBiomes ? new byte[Chunk.BLOCKS.AREA] : null;
+
+		int index = 0;
+		for (int i = 0; i < blockIds.length; ++i) {
+			blockIds[i] = (short) ((uncompressedData[index++] & 0xFF) | (uncompressedData[index++] << 8));
+		}
+		for (int i = 0; i < blockData.length; ++i) {
+			blockData[i] = (short) ((uncompressedData[index++] & 0xFF) | (uncompressedData[index++] << 8));
 		}
+		System.arraycopy(uncompressedData, index, blockLight, 0, blockLight.length);
+		index += blockLight.length;
+		System.arraycopy(uncompressedData, index, skyLight, 0, skyLight.length);
+		index += skyLight.length;
+		if (hasBiomes) {
+			System.arraycopy(uncompressedData, index, biomeData, 0, biomeData.length);
+		}
+
+		return new ChunkDataMessage(x, y, z, blockIds, blockData, blockLight, skyLight, biomeData, message.getBiomeManagerClass());
 	}
 }
@@ -29,6 +29,7 @@ package org.spout.engine.protocol.builtin.codec;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.spout.api.protocol.MessageCodec;
+import org.spout.engine.protocol.builtin.ChannelBufferUtils;
 import org.spout.engine.protocol.builtin.message.CuboidBlockUpdateMessage;
 
 /**
@@ -49,12 +50,8 @@ public class CuboidBlockUpdateCodec extends MessageCodec<CuboidBlockUpdateMessag
 		buffer.writeInt(message.getMaxY());
 		buffer.writeInt(message.getMaxZ());
 
-		for (short s : message.getBlockTypes()) {
-			buffer.writeShort(s);
-		}
-		for (short s : message.getBlockData()) {
-			buffer.writeShort(s);
-		}
+		ChannelBufferUtils.writeShorts(buffer, message.getBlockTypes());
+		ChannelBufferUtils.writeShorts(buffer, message.getBlockData());
 		buffer.writeBytes(message.getBlockLight());
 		buffer.writeBytes(message.getSkyLight());
 		return buffer;
@@ -80,13 +77,8 @@ public class CuboidBlockUpdateCodec extends MessageCodec<CuboidBlockUpdateMessag
 		}
 		byte[] blockLight = new byte[lightArraySize];
 		byte[] skyLight = new byte[lightArraySize];
-		for (int i = 0; i < blockTypes.length; ++i) {
-			blockTypes[i] = buffer.readShort();
-		}
-
-		for (int i = 0; i < blockData.length; ++i) {
-			blockData[i] = buffer.readShort();
-		}
+		ChannelBufferUtils.readShorts(buffer, blockTypes);
+		ChannelBufferUtils.readShorts(buffer, blockData);
 
 		buffer.readBytes(blockLight);
 		buffer.readBytes(skyLight);
@@ -39,7 +39,7 @@ public class LoginCodec extends MessageCodec<LoginMessage> {
 
 	@Override
 	public ChannelBuffer encode(LoginMessage message) {
-		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ChannelBufferUtils.estimateStringSize(message.getPlayerName()) + 4);
 		ChannelBufferUtils.writeString(buffer, message.getPlayerName());
 		buffer.writeInt(message.getProtocolVersion());
 		return buffer;
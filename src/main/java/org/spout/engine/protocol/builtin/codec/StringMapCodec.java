@@ -44,7 +44,11 @@ public class StringMapCodec extends MessageCodec<StringMapMessage> {
 
 	@Override
 	public ChannelBuffer encode(StringMapMessage message) {
-		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		int size = 9;
+		for (Pair<Integer, String> el : message.getElements()) {
+			size += 4 + ChannelBufferUtils.estimateStringSize(el.getValue());
+		}
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(size);
 		buffer.writeInt(message.getMap());
 		buffer.writeByte(message.getAction().ordinal());
 		buffer.writeInt(message.getElements().size());
@@ -41,7 +41,7 @@ public class WorldChangeCodec extends MessageCodec<WorldChangeMessage> {
 
 	@Override
 	public ChannelBuffer encode(WorldChangeMessage message) {
-		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ChannelBufferUtils.estimateStringSize(message.getWorldName()) + ChannelBufferUtils.UUID_SIZE + 4 + message.getCompressedData().length);
 		ChannelBufferUtils.writeString(buffer, message.getWorldName());
 		ChannelBufferUtils.writeUUID(buffer, message.getWorldUUID());
 		buffer.writeInt(message.getCompressedData().length);
@@ -26,16 +26,15 @@
  */
 package org.spout.engine.protocol.builtin.handler;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.logging.Level;
 
-import org.spout.api.Client;
 import org.spout.api.Spout;
-import org.spout.api.generator.biome.BiomeManager;
-import org.spout.api.geo.ClientWorld;
 import org.spout.api.protocol.MessageHandler;
 import org.spout.api.protocol.Session;
+import org.spout.engine.SpoutClient;
+import org.spout.engine.protocol.builtin.ChunkDecodePool;
 import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
+import org.spout.engine.world.SpoutClientWorld;
 
 public class ChunkDataMessageHandler extends MessageHandler<ChunkDataMessage> {
 	@Override
@@ -44,33 +43,10 @@ public class ChunkDataMessageHandler extends MessageHandler<ChunkDataMessage> {
 			return;
 		}
 
-		ClientWorld world = (ClientWorld) ((Client) session.getEngine()).getDefaultWorld();
-		Class<? extends BiomeManager> managerClass;
-		try {
-			Class<?> testClass = Class.forName(message.getBiomeManagerClass());
-			if (!BiomeManager.class.isAssignableFrom(testClass)) {
-				throw new IllegalArgumentException("Biome manager class "+ testClass + " is not a BiomeManager");
-			}
-			managerClass = testClass.asSubclass(BiomeManager.class);
-		} catch (ClassNotFoundException e) {
-			throw new IllegalArgumentException("Unknown biome manager class: " + message.getBiomeManagerClass());
-		}
+		SpoutClientWorld world = ((SpoutClient) session.getEngine()).getDefaultWorld();
 		if (Spout.debugMode()) {
 			Spout.getLogger().log(Level.INFO, "Recieved Chunk Data: {0}", message.toString());
 		}
-		BiomeManager manager;
-		try {
-			manager = managerClass.getConstructor(int.class, int.class, int.class).newInstance(message.getX(), message.getY(), message.getZ());
-		} catch (InstantiationException e) {
-			throw new RuntimeException(e);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		} catch (InvocationTargetException e) {
-			throw new RuntimeException(e);
-		} catch (NoSuchMethodException e) {
-			throw new RuntimeException(e);
-		}
-		manager.deserialize(message.getBiomeData());
-		world.addChunk(message.getX(), message.getY(), message.getZ(), message.getBlockIds(), message.getBlockData(), message.getBlockLight(), message.getSkyLight(), manager);
+		ChunkDecodePool.decode(world, message);
 	}
 }
@@ -40,6 +40,8 @@ public class ChunkDataMessage extends SpoutMessage {
 	private final byte[] blockLight, skyLight;
 	private final byte[] biomeData;
 	private final String biomeManagerClass;
+	private final byte[] compressedData;
+	private final boolean hasBiomes;
 
 	public ChunkDataMessage(int x, int y, int z) {
 		this.unload = true;
@@ -52,6 +54,8 @@ public class ChunkDataMessage extends SpoutMessage {
 		this.skyLight = ArrayUtils.EMPTY_BYTE_ARRAY;
 		this.biomeData = null;
 		this.biomeManagerClass = null;
+		this.compressedData = null;
+		this.hasBiomes = false;
 	}
 
 	public ChunkDataMessage(ChunkSnapshot snapshot) {
@@ -65,6 +69,8 @@ public class ChunkDataMessage extends SpoutMessage {
 		this.skyLight = snapshot.getSkyLight();
 		this.biomeData = snapshot.getBiomeManager() != null ? snapshot.getBiomeManager().serialize() : null;
 		this.biomeManagerClass = snapshot.getBiomeManager() != null ? snapshot.getBiomeManager().getClass().getCanonicalName() : null;
+		this.compressedData = null;
+		this.hasBiomes = biomeData != null;
 	}
 
 	public ChunkDataMessage(int x, int y, int z, short[] blockIds, short[] blockData, byte[] blockLight, byte[] skyLight, byte[] biomeData, String biomeManagerClass) {
@@ -78,6 +84,28 @@ public class ChunkDataMessage extends SpoutMessage {
 		this.skyLight = skyLight;
 		this.biomeData = biomeData;
 		this.biomeManagerClass = biomeManagerClass;
+		this.compressedData = null;
+		this.hasBiomes = biomeData != null;
+	}
+
+	/**
+	 * Creates a chunk data message which still holds its payload in compressed form.<br>
+	 * <br>
+	 * The block arrays of this message are empty until it is decompressed with {@link org.spout.engine.protocol.builtin.codec.ChunkDataCodec#decompress(ChunkDataMessage)}.
+	 */
+	public ChunkDataMessage(int x, int y, int z, byte[] compressedData, boolean hasBiomes, String biomeManagerClass) {
+		this.unload = false;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.blockIds = ArrayUtils.EMPTY_SHORT_ARRAY;
+		this.blockData = ArrayUtils.EMPTY_SHORT_ARRAY;
+		this.blockLight = ArrayUtils.EMPTY_BYTE_ARRAY;
+		this.skyLight = ArrayUtils.EMPTY_BYTE_ARRAY;
+		this.biomeData = null;
+		this.biomeManagerClass = biomeManagerClass;
+		this.compressedData = compressedData;
+		this.hasBiomes = hasBiomes;
 	}
 
 	public boolean isUnload() {
@@ -120,6 +148,18 @@ public class ChunkDataMessage extends SpoutMessage {
 		return biomeManagerClass;
 	}
 
+	public boolean hasBiomes() {
+		return hasBiomes;
+	}
+
+	public boolean isCompressed() {
+		return compressedData != null;
+	}
+
+	public byte[] getCompressedData() {
+		return compressedData;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this, SpoutToStringStyle.INSTANCE)
@@ -133,6 +173,7 @@ public class ChunkDataMessage extends SpoutMessage {
 				.append("skyLight", skyLight, false)
 				.append("biomeData", biomeData, false)
 				.append("biomeManagerClass", biomeManagerClass)
+				.append("compressedData", compressedData, false)
 				.toString();
 	}
 
@@ -149,6 +190,7 @@ public class ChunkDataMessage extends SpoutMessage {
 				.append(skyLight)
 				.append(biomeData)
 				.append(biomeManagerClass)
+				.append(compressedData)
 				.toHashCode();
 	}
 
@@ -167,6 +209,7 @@ public class ChunkDataMessage extends SpoutMessage {
 					.append(skyLight, other.skyLight)
 					.append(biomeData, other.biomeData)
 					.append(biomeManagerClass, other.biomeManagerClass)
+					.append(compressedData, other.compressedData)
 					.isEquals();
 		} else {
 			return false;
@@ -226,6 +226,21 @@ public abstract class BatchVertexRenderer implements Renderer {
 	}
 
 	public void setBufferContainers(BufferContainer []bufferContainers) {
+		setBufferContainers(bufferContainers, null);
+	}
+
+	/**
+	 * Concatenates the containers into one buffer per layout.<br>
+	 * <br>
+	 * When capacities are given, each container gets a range of that many
+	 * vertices. The unused end of the range is left zeroed, which draws as
+	 * degenerate triangles, so it can later be rewritten in place with
+	 * {@link #updateBufferContainer(BufferContainer, int, int)}.
+	 *
+	 * @param bufferContainers the containers, null entries are skipped
+	 * @param capacities the number of vertices reserved for each container, or null to pack them
+	 */
+	public void setBufferContainers(BufferContainer []bufferContainers, int []capacities) {
 		Map<Integer,Buffer> buffers = new HashMap<Integer, Buffer>();
 
 		int first = 0;
@@ -235,31 +250,39 @@ public abstract class BatchVertexRenderer implements Renderer {
 		
 		if(first == bufferContainers.length)
 			throw new IllegalStateException("BufferContainers array can't be fully empty");
+
+		//Count vertices
+		flushingNumVertices = 0;
+		for(int i = 0; i < bufferContainers.length; i++){
+			if(capacities != null)
+				flushingNumVertices += capacities[i];
+			else if(bufferContainers[i] != null)
+				flushingNumVertices += bufferContainers[i].element;
+		}
 		
 		//For each layout
 		for(Entry<Integer, Object> entry : bufferContainers[first].getBuffers().entrySet()){
 
 			int layout = entry.getKey();
-			int count = 0;
 
 			if(entry.getValue() instanceof TFloatArrayList){
 
-				//First pass, count element
-				for(BufferContainer bufferContainer : bufferContainers){
-					if(bufferContainer == null) continue;
-					Object buffer = bufferContainer.getBuffers().get(layout);
-					count += ((TFloatArrayList)buffer).size();
-				}
+				int components = ((TFloatArrayList) entry.getValue()).size() / bufferContainers[first].element;
 
 				//Allocate with result (to avoid constant reallocation during copy)
-				FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(count);
+				FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(flushingNumVertices * components);
 				floatBuffer.clear();
 
-				//Second pass, add element
-				for(BufferContainer bufferContainer : bufferContainers){
-					if(bufferContainer == null) continue;
-					Object buffer = bufferContainer.getBuffers().get(layout);
-					floatBuffer.put(((TFloatArrayList)buffer).toArray());
+				for(int i = 0; i < bufferContainers.length; i++){
+					BufferContainer bufferContainer = bufferContainers[i];
+					int start = floatBuffer.position();
+					if(bufferContainer != null){
+						Object buffer = bufferContainer.getBuffers().get(layout);
+						floatBuffer.put(((TFloatArrayList)buffer).toArray());
+					}
+					//The buffer is zeroed, so the spare capacity only has to be skipped
+					if(capacities != null)
+						floatBuffer.position(start + capacities[i] * components);
 				}
 
 				floatBuffer.flip();
@@ -270,15 +293,69 @@ public abstract class BatchVertexRenderer implements Renderer {
 				throw new IllegalStateException("Buffer different of TFloatArrayList not yet supported");
 			}
 		}
-
-		//Count vertices
-		flushingNumVertices = 0;	
-		for(BufferContainer bufferContainer : bufferContainers)
-			if(bufferContainer != null)
-				flushingNumVertices += bufferContainer.element;
 		
 		initFlush(buffers);
 	}
+
+	/**
+	 * Rewrites the range of vertices of one container in the uploaded buffer, without a full upload.<br>
+	 * <br>
+	 * The range must have been reserved by {@link #setBufferContainers(BufferContainer[], int[])}.
+	 * The end of the range that the container does not fill is zeroed.
+	 *
+	 * @param bufferContainer the new content, or null to clear the range
+	 * @param offset the first vertex of the range
+	 * @param capacity the number of vertices in the range
+	 * @return false if the update could not be done in place and a full upload is needed
+	 */
+	public boolean updateBufferContainer(BufferContainer bufferContainer, int offset, int capacity) {
+		if(currentBuffer == null || flushingBuffer != null)
+			return false;
+		if(bufferContainer != null && bufferContainer.element > capacity)
+			return false;
+		if(offset + capacity > currentNumVertices)
+			return false;
+
+		int []layouts = currentBuffer.getLayout();
+		int []elements = currentBuffer.getElements();
+		int stride = 0;
+		for(int i = 0; i < elements.length; i++)
+			stride += elements[i];
+
+		float [][]sources = new float[layouts.length][];
+		if(bufferContainer != null){
+			for(int i = 0; i < layouts.length; i++){
+				Object buffer = bufferContainer.getBuffers().get(layouts[i]);
+				if(!(buffer instanceof TFloatArrayList) || ((TFloatArrayList) buffer).size() != bufferContainer.element * elements[i])
+					return false;
+				sources[i] = ((TFloatArrayList) buffer).toArray();
+			}
+		}
+
+		int vertices = bufferContainer == null ? 0 : bufferContainer.element;
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(capacity * stride);
+		buffer.clear();
+		for(int vertex = 0; vertex < vertices; vertex++){
+			for(int i = 0; i < layouts.length; i++){
+				buffer.put(sources[i], vertex * elements[i], elements[i]);
+			}
+		}
+		buffer.position(0);
+		buffer.limit(capacity * stride);
+
+		return doUpdateRange(offset * stride, buffer);
+	}
+
+	/**
+	 * Writes interleaved data into the current buffer
+	 *
+	 * @param floatOffset the offset, in floats
+	 * @param buffer the data
+	 * @return false if the renderer can't update buffers in place
+	 */
+	protected boolean doUpdateRange(int floatOffset, FloatBuffer buffer) {
+		return false;
+	}
 	
 	public void setGLBufferContainer(GLBufferContainer container) {
 		Map<Integer,Buffer> buffers = new HashMap<Integer, Buffer>();
@@ -0,0 +1,195 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.renderer;
+
+/**
+ * Computes which faces of a chunk can see each other through its non
+ * opaque blocks.<br>
+ * <br>
+ * Faces are indexed by axis (0 = x, 1 = y, 2 = z) times two, plus one for
+ * the positive side. The result is a mask with one bit per pair of distinct faces,
+ * set when an air pocket (or any non opaque blocks) touches both faces.
+ * The {@link OcclusionCuller} walks these masks to find the chunks that can
+ * be seen from the camera.<br>
+ * <br>
+ * Instances keep their scratch arrays between calls and are not thread safe.
+ */
+public final class ChunkConnectivity {
+	/**
+	 * Mask with every pair of faces connected
+	 */
+	public static final int ALL = (1 << 15) - 1;
+	private static final int[][] PAIRS = new int[6][6];
+
+	static {
+		int bit = 0;
+		for (int a = 0; a < 6; a++) {
+			PAIRS[a][a] = -1;
+			for (int b = a + 1; b < 6; b++) {
+				PAIRS[a][b] = bit;
+				PAIRS[b][a] = bit;
+				bit++;
+			}
+		}
+	}
+
+	private final int size;
+	private final boolean[] visited;
+	private final int[] queue;
+
+	public ChunkConnectivity(int size) {
+		this.size = size;
+		this.visited = new boolean[size * size * size];
+		this.queue = new int[size * size * size];
+	}
+
+	/**
+	 * Checks if two faces are connected in a mask
+	 *
+	 * @param mask the connectivity mask
+	 * @param a the first face
+	 * @param b the second face
+	 * @return true if the faces are connected, always true for a face with itself
+	 */
+	public static boolean isConnected(int mask, int a, int b) {
+		return a == b || (mask & (1 << PAIRS[a][b])) != 0;
+	}
+
+	/**
+	 * Computes the connectivity of a cube of {@code size} blocks
+	 *
+	 * @param source the opaque blocks
+	 * @return the connectivity mask
+	 */
+	public int compute(OpacitySource source) {
+		final int volume = size * size * size;
+		for (int i = 0; i < volume; i++) {
+			visited[i] = false;
+		}
+		final int max = size - 1;
+		int mask = 0;
+		// Pockets that touch no face don't matter, so only flood from the faces
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				for (int z = 0; z < size; z++) {
+					if (x != 0 && x != max && y != 0 && y != max && z != 0 && z != max) {
+						z = max - 1;
+						continue;
+					}
+					int index = (x * size + y) * size + z;
+					if (visited[index] || source.isOpaque(x, y, z)) {
+						continue;
+					}
+					int faces = flood(source, index);
+					for (int a = 0; a < 6; a++) {
+						if ((faces & (1 << a)) == 0) {
+							continue;
+						}
+						for (int b = a + 1; b < 6; b++) {
+							if ((faces & (1 << b)) != 0) {
+								mask |= 1 << PAIRS[a][b];
+							}
+						}
+					}
+					if (mask == ALL) {
+						return ALL;
+					}
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Fills the pocket holding the block and returns the faces it touches
+	 */
+	private int flood(OpacitySource source, int start) {
+		final int max = size - 1;
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+		visited[start] = true;
+		int faces = 0;
+		while (head < tail) {
+			int index = queue[head++];
+			int z = index % size;
+			int y = (index / size) % size;
+			int x = index / (size * size);
+			if (x == 0) {
+				faces |= 1 << 0;
+			} else {
+				tail = visit(source, index - size * size, x - 1, y, z, tail);
+			}
+			if (x == max) {
+				faces |= 1 << 1;
+			} else {
+				tail = visit(source, index + size * size, x + 1, y, z, tail);
+			}
+			if (y == 0) {
+				faces |= 1 << 2;
+			} else {
+				tail = visit(source, index - size, x, y - 1, z, tail);
+			}
+			if (y == max) {
+				faces |= 1 << 3;
+			} else {
+				tail = visit(source, index + size, x, y + 1, z, tail);
+			}
+			if (z == 0) {
+				faces |= 1 << 4;
+			} else {
+				tail = visit(source, index - 1, x, y, z - 1, tail);
+			}
+			if (z == max) {
+				faces |= 1 << 5;
+			} else {
+				tail = visit(source, index + 1, x, y, z + 1, tail);
+			}
+		}
+		return faces;
+	}
+
+	private int visit(OpacitySource source, int index, int x, int y, int z, int tail) {
+		if (!visited[index] && !source.isOpaque(x, y, z)) {
+			visited[index] = true;
+			queue[tail++] = index;
+		}
+		return tail;
+	}
+
+	/**
+	 * Reports the blocks that hide what is behind them
+	 */
+	public interface OpacitySource {
+		/**
+		 * @param x the local x coordinate
+		 * @param y the local y coordinate
+		 * @param z the local z coordinate
+		 * @return true if the block can't be seen through
+		 */
+		public boolean isOpaque(int x, int y, int z);
+	}
+}
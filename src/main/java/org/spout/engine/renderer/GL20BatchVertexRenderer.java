@@ -84,6 +84,12 @@ public class GL20BatchVertexRenderer extends BatchVertexRenderer {
 		flushingBuffer.setData(elements, layouts, buffer);
 	}
 	
+	@Override
+	protected boolean doUpdateRange(int floatOffset, FloatBuffer buffer) {
+		currentBuffer.setSubData(floatOffset, buffer);
+		return true;
+	}
+
 	@Override
 	protected boolean doFlush(boolean force) {
 		return flushingBuffer.flush(force);
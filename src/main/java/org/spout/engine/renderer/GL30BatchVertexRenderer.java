@@ -95,6 +95,12 @@ public class GL30BatchVertexRenderer extends BatchVertexRenderer {
 		flushingBuffer.setData(elements, layouts, buffer);
 	}
 
+	@Override
+	protected boolean doUpdateRange(int floatOffset, FloatBuffer buffer) {
+		currentBuffer.setSubData(floatOffset, buffer);
+		return true;
+	}
+
 	@Override
 	protected boolean doFlush(boolean force) {
 		if(flushingBuffer.flush(force)){
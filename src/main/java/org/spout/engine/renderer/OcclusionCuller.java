@@ -0,0 +1,194 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.renderer;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Finds the chunks that can be seen from the camera by walking from the
+ * camera chunk through the faces that each chunk connects.<br>
+ * <br>
+ * A chunk entered through one face can only be left through the faces that
+ * its {@link ChunkConnectivity} mask links to it, and the walk never turns
+ * back along a direction it already moved in. Chunks without a known mask
+ * are treated as open. The result is recomputed only when the camera
+ * changes chunk or a mask changes.
+ */
+public class OcclusionCuller {
+	private static final int NO_ENTRY = -1;
+	/**
+	 * Largest radius that fits the offsets packed in the walk queue
+	 */
+	public static final int MAX_RADIUS = 63;
+	private static final int[][] OFFSETS = {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+
+	private final TLongIntHashMap connectivity = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, NO_ENTRY);
+	/**
+	 * Entry faces already walked for each reached chunk, as a bit mask
+	 */
+	private final TLongIntHashMap reached = new TLongIntHashMap(1024, 0.5f, Long.MIN_VALUE, 0);
+
+	private long[] queueKeys = new long[1024];
+	private int[] queueStates = new int[1024];
+
+	private boolean dirty = true;
+	private int lastX, lastY, lastZ, lastRadius;
+
+	public static long key(int x, int y, int z) {
+		return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+
+	public void setConnectivity(int x, int y, int z, int mask) {
+		if (connectivity.put(key(x, y, z), mask) != mask) {
+			dirty = true;
+		}
+	}
+
+	public void remove(int x, int y, int z) {
+		if (connectivity.remove(key(x, y, z)) != NO_ENTRY) {
+			dirty = true;
+		}
+	}
+
+	public void clear() {
+		connectivity.clear();
+		reached.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Walks the chunks again if the camera moved to another chunk or the connectivity changed
+	 *
+	 * @param x the camera chunk x
+	 * @param y the camera chunk y
+	 * @param z the camera chunk z
+	 * @param radius the farthest distance to walk, in chunks along each axis
+	 * @return true if the visible set was recomputed
+	 */
+	public boolean update(int x, int y, int z, int radius) {
+		if (!dirty && x == lastX && y == lastY && z == lastZ && radius == lastRadius) {
+			return false;
+		}
+		dirty = false;
+		lastX = x;
+		lastY = y;
+		lastZ = z;
+		lastRadius = radius;
+		walk(x, y, z, Math.min(radius, MAX_RADIUS));
+		return true;
+	}
+
+	/**
+	 * Checks if a chunk was reached by the last walk
+	 */
+	public boolean isVisible(int x, int y, int z) {
+		return reached.containsKey(key(x, y, z));
+	}
+
+	/**
+	 * Checks if any chunk of a box was reached by the last walk
+	 */
+	public boolean isAnyVisible(int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+		for (int dx = 0; dx < sizeX; dx++) {
+			for (int dy = 0; dy < sizeY; dy++) {
+				for (int dz = 0; dz < sizeZ; dz++) {
+					if (isVisible(x + dx, y + dy, z + dz)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Breadth first walk. A queue state packs the entry face (bits 0-2, 6 for
+	 * the camera chunk), the directions moved so far (bits 3-8) and the chunk
+	 * offset from the camera plus 64 (seven bits each, from bit 9).
+	 */
+	private void walk(int cx, int cy, int cz, int radius) {
+		reached.clear();
+		int head = 0, tail = 0;
+		queueKeys[tail] = key(cx, cy, cz);
+		queueStates[tail++] = 6 | (64 << 9) | (64 << 16) | (64 << 23);
+		reached.put(key(cx, cy, cz), 1 << 6);
+		while (head < tail) {
+			final long key = queueKeys[head];
+			final int state = queueStates[head++];
+			final int entry = state & 7;
+			final int moved = (state >> 3) & 0x3F;
+			final int ox = ((state >> 9) & 0x7F) - 64;
+			final int oy = ((state >> 16) & 0x7F) - 64;
+			final int oz = ((state >> 23) & 0x7F) - 64;
+			int mask = connectivity.get(key);
+			if (mask == NO_ENTRY) {
+				mask = ChunkConnectivity.ALL;
+			}
+			for (int face = 0; face < 6; face++) {
+				// Never walk back against a direction already taken
+				if ((moved & (1 << (face ^ 1))) != 0) {
+					continue;
+				}
+				if (entry != 6 && !ChunkConnectivity.isConnected(mask, entry, face)) {
+					continue;
+				}
+				int nx = ox + OFFSETS[face][0];
+				int ny = oy + OFFSETS[face][1];
+				int nz = oz + OFFSETS[face][2];
+				if (Math.abs(nx) > radius || Math.abs(ny) > radius || Math.abs(nz) > radius) {
+					continue;
+				}
+				// Entered through the face opposite to the one we left by
+				int nextEntry = face ^ 1;
+				long next = key(cx + nx, cy + ny, cz + nz);
+				int entries = reached.get(next);
+				if ((entries & (1 << nextEntry)) != 0) {
+					continue;
+				}
+				reached.put(next, entries | (1 << nextEntry));
+				if (tail == queueKeys.length) {
+					if (head > 0) {
+						System.arraycopy(queueKeys, head, queueKeys, 0, tail - head);
+						System.arraycopy(queueStates, head, queueStates, 0, tail - head);
+						tail -= head;
+						head = 0;
+					}
+					if (tail == queueKeys.length) {
+						long[] keys = new long[queueKeys.length * 2];
+						int[] states = new int[queueStates.length * 2];
+						System.arraycopy(queueKeys, 0, keys, 0, tail);
+						System.arraycopy(queueStates, 0, states, 0, tail);
+						queueKeys = keys;
+						queueStates = states;
+					}
+				}
+				queueKeys[tail] = next;
+				queueStates[tail++] = nextEntry | ((moved | (1 << face)) << 3) | ((nx + 64) << 9) | ((ny + 64) << 16) | ((nz + 64) << 23);
+			}
+		}
+	}
+}
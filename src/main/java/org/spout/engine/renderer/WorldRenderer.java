@@ -26,7 +26,10 @@
  */
 package org.spout.engine.renderer;
 
+import gnu.trove.map.hash.TLongByteHashMap;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,7 +37,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -43,17 +45,28 @@ import org.lwjgl.Sys;
 import org.spout.api.Client;
 import org.spout.api.Spout;
 import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Cuboid;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.geo.discrete.Point;
 import org.spout.api.math.Vector3;
 import org.spout.api.render.BufferContainer;
 import org.spout.api.render.RenderMaterial;
 import org.spout.api.render.effect.SnapshotRender;
 import org.spout.api.util.map.TInt21TripleObjectHashMap;
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.batcher.ChunkMeshBatchAggregator;
 import org.spout.engine.mesh.ChunkMesh;
 import org.spout.engine.world.SpoutWorld;
 
 public class WorldRenderer {
+	/**
+	 * Time given to mesh uploads each frame, in milliseconds
+	 */
 	public static final long TIME_LIMIT = 2;
+	/**
+	 * Batches outside the frustum are treated as this many times farther away when picking the next upload
+	 */
+	private static final float OFF_SCREEN_PENALTY = 4f;
 
 	private TreeMap<RenderMaterial,List<ChunkMeshBatchAggregator>> chunkRenderers = new TreeMap<RenderMaterial,List<ChunkMeshBatchAggregator>>();
 
@@ -69,18 +82,16 @@ public class WorldRenderer {
 	public int addedBatch,updatedBatch;
 
 	public void render() {
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
 		
-		update(start + TIME_LIMIT);
+		update(start + TIME_LIMIT * 1000000L);
 		
 		renderChunks();
-
-		//System.out.println("WorldRenderer take : " + (System.currentTimeMillis() - start) + " ms");;
 	}
 
 	private final ConcurrentLinkedQueue<ChunkMesh> renderChunkMeshBatchQueue = new ConcurrentLinkedQueue<ChunkMesh>();
 
-	private final Queue<ChunkMeshBatchAggregator> toUpdate = new LinkedList<ChunkMeshBatchAggregator>();
+	private final Set<ChunkMeshBatchAggregator> toUpdate = new HashSet<ChunkMeshBatchAggregator>();
 	
 	private class BatchGeneratorTask{
 
@@ -92,6 +103,26 @@ public class WorldRenderer {
 		private Entry<RenderMaterial, BufferContainer> data;
 		private RenderMaterial material;
 
+		/**
+		 * Measured cost of preparing an upload, per vertex, and of one upload step, in nanoseconds
+		 */
+		private double prepareCost = 200;
+		private double stepCost = 50000;
+		/**
+		 * The batch whose upload is in progress
+		 */
+		private ChunkMeshBatchAggregator current = null;
+		/**
+		 * The pending batches in upload order, sorted once per frame
+		 */
+		private Candidate[] candidates = new Candidate[0];
+		private int nextCandidate = 0;
+
+		/**
+		 * Adds meshes to their batches and uploads batches until the estimated cost of the next
+		 * upload step would pass the limit
+		 * @param limit the {@link System#nanoTime()} to stop at
+		 */
 		public void run(final long limit) {
 			addedBatch = 0;
 			updatedBatch = 0;
@@ -104,7 +135,7 @@ public class WorldRenderer {
 
 					handle( data.getValue(), limit);
 
-					if( System.currentTimeMillis() > limit)
+					if( System.nanoTime() > limit)
 						return;
 
 					material = null;
@@ -117,20 +148,23 @@ public class WorldRenderer {
 			//Step 2 : Add ChunkMesh to ChunkMeshBatch
 			while( (chunkMesh = renderChunkMeshBatchQueue.poll()) != null){
 				world = chunkMesh.getWorld();
-
+				
 				if(world != currentWorld) //Some meshs can be keeped in the queue when you change of world
 					continue;
 
 				if(chunkMesh.isUnloaded()){
+					occlusionCuller.remove(chunkMesh.getChunkX(), chunkMesh.getChunkY(), chunkMesh.getChunkZ());
 					cleanBatchAggregator(world,chunkMesh);
 					chunkMesh = null;
 
-					if( System.currentTimeMillis() > limit)
+					if( System.nanoTime() > limit)
 						return;
 
 					continue;
 				}
 
+				occlusionCuller.setConnectivity(chunkMesh.getChunkX(), chunkMesh.getChunkY(), chunkMesh.getChunkZ(), chunkMesh.getConnectivity());
+
 				it = chunkMesh.getMaterialsFaces().entrySet().iterator();
 				while(it.hasNext()){
 					data = it.next();
@@ -138,7 +172,7 @@ public class WorldRenderer {
 
 					handle( data.getValue(), limit);
 
-					if( System.currentTimeMillis() > limit)
+					if( System.nanoTime() > limit)
 						return;
 
 					material = null;
@@ -148,23 +182,86 @@ public class WorldRenderer {
 				chunkMesh = null;
 			}
 			
+			//Step 3 : Upload batches, most important first, one step at a time
+			boolean worked = false;
+			if(!toUpdate.isEmpty())
+				sortCandidates();
 			while(!toUpdate.isEmpty()){
+				if(current == null || current.isClosed() || !current.isQueued())
+					current = pickNextBatch();
+				if(current == null)
+					return;
+
+				ChunkMeshBatchAggregator batch = current;
+				int vertices = batch.getPendingVertices();
+				long now = System.nanoTime();
+				double estimate = vertices > 0 ? vertices * prepareCost + stepCost : stepCost;
 
-				ChunkMeshBatchAggregator batch = toUpdate.peek();
+				//Always make some progress, but don't start work that won't fit
+				if(worked && now + estimate > limit)
+					return;
+
+				boolean done = batch.update();
+				long spent = System.nanoTime() - now;
+				worked = true;
 
-				if(batch.update()){
-					toUpdate.poll();
+				if(vertices > 0)
+					prepareCost = prepareCost * 0.9 + (Math.max(0, spent - stepCost) / vertices) * 0.1;
+				else
+					stepCost = stepCost * 0.9 + spent * 0.1;
+
+				if(done){
+					toUpdate.remove(batch);
 					batch.setQueued(false);
+					current = null;
 				}
 
 				updatedBatch++;
 				//System.out.println("Update batch take " + (System.currentTimeMillis() - batch.getTime()) + " (" + toUpdate.size() + " in queue)");
 
-				if( System.currentTimeMillis() > limit)
+				if( System.nanoTime() > limit)
 					return;
 			}
 		}
 
+		/**
+		 * Orders the pending batches by how much they matter on screen: nearest first, with batches
+		 * outside the frustum pushed back. The camera only moves between frames, so each batch is
+		 * scored once per frame rather than at every pick.
+		 */
+		private void sortCandidates() {
+			Client client = (Client)Spout.getEngine();
+			Point camera = client.getActivePlayer().getScene().getPosition();
+			if(candidates.length < toUpdate.size())
+				candidates = new Candidate[toUpdate.size()];
+			int count = 0;
+			for(ChunkMeshBatchAggregator batch : toUpdate){
+				float dx = batch.getBase().getX() + batch.getSize().getX() / 2 - camera.getX();
+				float dy = batch.getBase().getY() + batch.getSize().getY() / 2 - camera.getY();
+				float dz = batch.getBase().getZ() + batch.getSize().getZ() / 2 - camera.getZ();
+				float score = dx * dx + dy * dy + dz * dz;
+				if(!client.getActiveCamera().getFrustum().intersects(batch))
+					score *= OFF_SCREEN_PENALTY * OFF_SCREEN_PENALTY;
+				candidates[count++] = new Candidate(batch, score);
+			}
+			Arrays.fill(candidates, count, candidates.length, null);
+			Arrays.sort(candidates, 0, count);
+			nextCandidate = 0;
+		}
+
+		/**
+		 * Takes the next batch in upload order which is still pending
+		 * @return the batch, or null if none is left this frame
+		 */
+		private ChunkMeshBatchAggregator pickNextBatch() {
+			while(nextCandidate < candidates.length && candidates[nextCandidate] != null){
+				ChunkMeshBatchAggregator batch = candidates[nextCandidate++].batch;
+				if(batch.isQueued() && !batch.isClosed())
+					return batch;
+			}
+			return null;
+		}
+
 		private void handle(BufferContainer batchVertex, long limit){
 			ChunkMeshBatchAggregator chunkMeshBatch = getBatchAggregator(chunkMesh, material);
 
@@ -186,6 +283,21 @@ public class WorldRenderer {
 
 	}
 
+	private static class Candidate implements Comparable<Candidate> {
+		private final ChunkMeshBatchAggregator batch;
+		private final float score;
+
+		public Candidate(ChunkMeshBatchAggregator batch, float score) {
+			this.batch = batch;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			return Float.compare(score, o.score);
+		}
+	}
+
 	public void update(long limit){
 		SpoutWorld world = (SpoutWorld) ((Client)Spout.getEngine()).getActivePlayer().getWorld();
 
@@ -194,6 +306,7 @@ public class WorldRenderer {
 				currentWorld.disableRenderQueue();
 			if(world != null)
 				world.enableRenderQueue();
+			occlusionCuller.clear();
 			currentWorld = world;
 		}
 
@@ -306,6 +419,15 @@ public class WorldRenderer {
 		return map.get(material);
 	}
 
+	private static final byte CELL_VISIBLE = 1;
+	private static final byte CELL_CULLED = 2;
+	private static final Vector3 CELL_SIZE = new Vector3(Region.BLOCKS.SIZE, Region.BLOCKS.SIZE, Region.BLOCKS.SIZE);
+	/**
+	 * Frustum test results of the region sized cells for the current frame
+	 */
+	private final TLongByteHashMap frustumCells = new TLongByteHashMap();
+	private final OcclusionCuller occlusionCuller = new OcclusionCuller();
+
 	int occludedChunks = 0;
 	int culledChunks = 0;
 	int renderedChunks = 0;
@@ -317,44 +439,24 @@ public class WorldRenderer {
 		renderedChunks = 0;
 		chunksToRender = 0;
 
-		/*TODO (maybe): We could optimise iteration and testing frustum on ChunkMeshBatch.
-		 * If we sort ChunkMeshBatch by x, y and z, and test only cubo's vertice changing
-		 * Example : while we test batch with same x coord, we don't need to test 
-		 */
+		Client client = (Client)Spout.getEngine();
+		Point camera = client.getActivePlayer().getScene().getPosition();
+		occlusionCuller.update(camera.getChunkX(), camera.getChunkY(), camera.getChunkZ(), SpoutConfiguration.VIEW_DISTANCE.getInt() + 1);
+		frustumCells.clear();
 
 		for(Entry<RenderMaterial, List<ChunkMeshBatchAggregator>> entry : chunkRenderers.entrySet()){
 			RenderMaterial material = entry.getKey();
 
 			SnapshotRender snapshotRender = new SnapshotRender(material);
 			material.preRender(snapshotRender);
-			Client client = (Client)Spout.getEngine();
 			material.getShader().setUniform("View", client.getActiveCamera().getView());
 			material.getShader().setUniform("Projection", client.getActiveCamera().getProjection());
 			material.getShader().setUniform("Model", ChunkMeshBatchAggregator.model);
 			chunksToRender += entry.getValue().size();
 			
-			Iterator<ChunkMeshBatchAggregator> it = entry.getValue().iterator();
 			ChunkMeshBatchAggregator firstBatch = null;
 			
-			while(it.hasNext()){
-				firstBatch = it.next();
-				
-				if(!firstBatch.isReady())
-					continue;
-				
-				firstBatch.preRender();
-				
-				if (client.getActiveCamera().getFrustum().intersects(firstBatch)) {
-					firstBatch.render(material);
-					renderedChunks ++;
-				} else {
-					culledChunks++;
-				}
-			}
-			
-			while(it.hasNext()){
-				ChunkMeshBatchAggregator renderer = it.next();
-
+			for(ChunkMeshBatchAggregator renderer : entry.getValue()){
 				if(!renderer.isReady())
 					continue;
 				
@@ -362,10 +464,22 @@ public class WorldRenderer {
 				// at the world baby
 				// But here's my frustrum
 				// so cull me maybe?
-				//System.out.println( renderer.getX() + "/" + renderer.getY() + "/" + renderer.getZ() + " : " + renderer.getBase() +  " : " + renderer.getSize());
+				if (!isCellInFrustum(client, renderer)) {
+					culledChunks++;
+					continue;
+				}
+
+				if (!occlusionCuller.isAnyVisible(renderer.getBase().getChunkX(), renderer.getBase().getChunkY(), renderer.getBase().getChunkZ(),
+						ChunkMeshBatchAggregator.SIZE_X, ChunkMeshBatchAggregator.SIZE_Y, ChunkMeshBatchAggregator.SIZE_Z)) {
+					occludedChunks++;
+					continue;
+				}
 
-				
 				if (client.getActiveCamera().getFrustum().intersects(renderer)) {
+					if(firstBatch == null){
+						firstBatch = renderer;
+						firstBatch.preRender();
+					}
 					renderer.render(material);
 					renderedChunks ++;
 				} else {
@@ -373,7 +487,7 @@ public class WorldRenderer {
 				}
 			}
 			
-			if(firstBatch != null && firstBatch.isReady()){
+			if(firstBatch != null){
 				firstBatch.postRender();
 			}
 
@@ -381,6 +495,23 @@ public class WorldRenderer {
 		}
 	}
 
+	/**
+	 * Tests the region sized cell holding the batch against the frustum, once per cell and frame
+	 */
+	private boolean isCellInFrustum(Client client, ChunkMeshBatchAggregator batch) {
+		int cx = batch.getBase().getChunkX() >> Region.CHUNKS.BITS;
+		int cy = batch.getBase().getChunkY() >> Region.CHUNKS.BITS;
+		int cz = batch.getBase().getChunkZ() >> Region.CHUNKS.BITS;
+		long key = OcclusionCuller.key(cx, cy, cz);
+		byte state = frustumCells.get(key);
+		if (state == 0) {
+			Cuboid cell = new Cuboid(new Point(batch.getWorld(), cx << Region.BLOCKS.BITS, cy << Region.BLOCKS.BITS, cz << Region.BLOCKS.BITS), CELL_SIZE);
+			state = client.getActiveCamera().getFrustum().intersects(cell) ? CELL_VISIBLE : CELL_CULLED;
+			frustumCells.put(key, state);
+		}
+		return state == CELL_VISIBLE;
+	}
+
 	public int getOccludedChunks() {
 		return occludedChunks;
 	}
@@ -152,6 +152,24 @@ public class SpoutFloatBuffer {
 
 	}
 
+	/**
+	 * Overwrites part of the uploaded data
+	 * @param floatOffset where to start, in floats
+	 * @param data the data to write
+	 */
+	public void setSubData(int floatOffset, FloatBuffer data){
+		if(vboId == -1) throw new IllegalStateException("Cannot update a vertex buffer without data!");
+		if(floatOffset + data.remaining() > allocated) throw new IllegalArgumentException("Range exceeds the allocated buffer");
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+		SpoutRenderer.checkGLError();
+
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, floatOffset * FLOAT_SIZE, data);
+		SpoutRenderer.checkGLError();
+
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		SpoutRenderer.checkGLError();
+	}
+
 	public void bind(){
 		bind(false);
 	}
@@ -49,6 +49,7 @@ import org.spout.api.render.effect.SnapshotEntity;
 import org.spout.api.render.effect.SnapshotMesh;
 import org.spout.api.render.effect.SnapshotRender;
 import org.spout.engine.SpoutRenderer;
+import org.spout.engine.renderer.shader.BasicShader;
 import org.spout.engine.renderer.shader.SpoutShader;
 
 public class ClientRenderMaterial extends RenderMaterial {
@@ -58,6 +59,10 @@ public class ClientRenderMaterial extends RenderMaterial {
 
 	boolean depthTesting;
 	int layer;
+	/**
+	 * Whether the shader wraps texture coordinates within the atlas tile given by the {@code Texture1} attribute
+	 */
+	boolean tileWrap;
 	private List<RenderEffect> renderEffects = new ArrayList<RenderEffect>();
 	private List<EntityEffect> entityEffects = new ArrayList<EntityEffect>();
 	private List<BufferEffect> bufferEffects = new ArrayList<BufferEffect>();
@@ -71,10 +76,15 @@ public class ClientRenderMaterial extends RenderMaterial {
 	}
 
 	public ClientRenderMaterial(Shader s, Map<String, Object> params, boolean depth, int layer){
+		this(s, params, depth, layer, false);
+	}
+
+	public ClientRenderMaterial(Shader s, Map<String, Object> params, boolean depth, int layer, boolean tileWrap){
 		this.shader = (SpoutShader)s;
 		this.materialParameters = params;
 		this.depthTesting = depth;
 		this.layer = layer;
+		this.tileWrap = tileWrap;
 	}
 
 	@Override
@@ -176,6 +186,17 @@ public class ClientRenderMaterial extends RenderMaterial {
 		return layer;
 	}
 
+	/**
+	 * Checks if the material can render greedy meshed quads.<br>
+	 * <br>
+	 * Tile wrapping needs a shader, so it is never used in GL11 mode.
+	 *
+	 * @return true if the shader wraps texture coordinates within a tile
+	 */
+	public boolean isTileWrapped() {
+		return tileWrap && !(shader instanceof BasicShader);
+	}
+
 	@Override
 	public void addRenderEffect(RenderEffect renderEffect) {
 		renderEffects.add(renderEffect);
@@ -26,9 +26,18 @@
  */
 package org.spout.engine.resources.loader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
 
 import org.spout.api.Spout;
 import org.spout.api.math.Vector2;
@@ -36,11 +45,13 @@ import org.spout.api.math.Vector3;
 import org.spout.api.model.mesh.MeshFace;
 import org.spout.api.model.mesh.Vertex;
 import org.spout.api.resource.BasicResourceLoader;
+import org.spout.engine.filesystem.SharedFileSystem;
 import org.spout.engine.mesh.BaseMesh;
+import org.spout.engine.mesh.BinaryMesh;
 
 public class MeshLoader extends BasicResourceLoader<BaseMesh> {
 
-	private static BaseMesh loadObj(InputStream stream) {
+	static BaseMesh loadObj(InputStream stream) {
 		Scanner scan = new Scanner(stream);
 
 		boolean normal = false, color = false, texture0 = false;
@@ -128,9 +139,84 @@ public class MeshLoader extends BasicResourceLoader<BaseMesh> {
 		return "mesh://Spout/fallbacks/fallback.obj";
 	}
 
+	/**
+	 * Loads a binary mesh directly. An OBJ mesh is compiled to the binary form once and read from
+	 * the cache, keyed by a checksum of the OBJ text, from then on.
+	 */
 	@Override
 	public BaseMesh getResource(InputStream stream) {
-		return MeshLoader.loadObj(stream);
+		byte[] data;
+		try {
+			data = readFully(stream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read mesh", e);
+		}
+		if (BinaryMesh.isBinaryMesh(data, data.length)) {
+			return BinaryMesh.read(data, data.length);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		File cache = new File(new File(SharedFileSystem.getCacheDirectory(), "meshes"), Long.toHexString(crc.getValue()) + "-" + data.length + ".smesh");
+		if (cache.isFile()) {
+			try {
+				byte[] compiled = readFully(new FileInputStream(cache));
+				return BinaryMesh.read(compiled, compiled.length);
+			} catch (IOException e) {
+				Spout.getLogger().log(Level.WARNING, "Unable to read compiled mesh " + cache + ", compiling again", e);
+			} catch (IllegalArgumentException e) {
+				Spout.getLogger().log(Level.WARNING, "Invalid compiled mesh " + cache + ", compiling again", e);
+			}
+		}
+
+		BaseMesh mesh = MeshLoader.loadObj(new ByteArrayInputStream(data));
+		writeCompiled(mesh, cache);
+		return mesh;
+	}
+
+	/**
+	 * Writes a compiled mesh to the cache. Each writer uses its own temporary file, so loaders compiling the
+	 * same mesh at once never write into each other's file.
+	 */
+	static void writeCompiled(BaseMesh mesh, File cache) {
+		cache.getParentFile().mkdirs();
+		File temp = null;
+		OutputStream out = null;
+		try {
+			temp = File.createTempFile(cache.getName(), ".tmp", cache.getParentFile());
+			out = new FileOutputStream(temp);
+			BinaryMesh.write(mesh, out);
+			out.close();
+			out = null;
+			// Another loader may have got there first, its copy is just as good
+			temp.renameTo(cache);
+		} catch (IOException e) {
+			Spout.getLogger().log(Level.WARNING, "Unable to write compiled mesh " + cache, e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ignore) {
+				}
+			}
+			if (temp != null && temp.exists()) {
+				temp.delete();
+			}
+		}
+	}
+
+	private static byte[] readFully(InputStream stream) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, stream.available()));
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
 	}
 
 	@Override
@@ -140,7 +226,7 @@ public class MeshLoader extends BasicResourceLoader<BaseMesh> {
 
 	@Override
 	public String[] getExtensions() {
-		return new String[] { "obj" };
+		return new String[] { "obj", "smesh" };
 	}
 
 }
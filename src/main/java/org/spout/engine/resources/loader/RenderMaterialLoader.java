@@ -79,6 +79,7 @@ public class RenderMaterialLoader extends BasicResourceLoader<ClientRenderMateri
 		final Shader shader = (Shader) shaderObject;
 		int layer = 0;
 		boolean depthTesting = true;
+		boolean tileWrap = false;
 		if(resourceProperties.containsKey("RenderState"))
 		{
 			final Map<? extends String, ?> renderState = checkerMapStringObject.check(resourceProperties.get("RenderState"));
@@ -86,6 +87,8 @@ public class RenderMaterialLoader extends BasicResourceLoader<ClientRenderMateri
 			if(s instanceof Boolean) depthTesting = (Boolean)s;
 			Object s2 = renderState.get("Layer");
 			if(s2 != null && s2 instanceof Integer) layer = (Integer)s2;
+			Object s3 = renderState.get("TileWrap");
+			if(s3 instanceof Boolean) tileWrap = (Boolean)s3;
 		}
 
 		// Better make a new HashMap, who knows whether we can even write to it...
@@ -207,7 +210,7 @@ public class RenderMaterialLoader extends BasicResourceLoader<ClientRenderMateri
 
 		//TODO: Parse matricies 
 
-		ClientRenderMaterial material = new ClientRenderMaterial(shader, paramsNew, depthTesting, layer);
+		ClientRenderMaterial material = new ClientRenderMaterial(shader, paramsNew, depthTesting, layer, tileWrap);
 		Object re = resourceProperties.get("RenderEffects");
 		if(re != null && re instanceof String[]) {
 			String[] renderEffects = (String[])re;
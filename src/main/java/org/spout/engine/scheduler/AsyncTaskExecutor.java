@@ -0,0 +1,283 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.spout.api.Spout;
+import org.spout.api.util.Named;
+
+/**
+ * A bounded executor for short lived async tasks.<br>
+ * <br>
+ * Each owner has its own queue, and the worker threads take one task at a time from each owner in
+ * turn, so a plugin which submits many tasks can not starve the others. An owner may not occupy more
+ * than half of the threads at once, and may not have more than a fixed number of tasks waiting;
+ * further submissions are rejected until its queue drains.
+ */
+public class AsyncTaskExecutor {
+	private static final Object NO_OWNER = new Object();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final Map<Object, OwnerQueue> owners = new HashMap<Object, OwnerQueue>();
+	/**
+	 * Owners which have waiting tasks and may start another one
+	 */
+	private final ArrayDeque<OwnerQueue> ready = new ArrayDeque<OwnerQueue>();
+	private final ThreadFactory threadFactory;
+	private final int maxThreads;
+	private final int maxActivePerOwner;
+	private final int maxQueuedPerOwner;
+	private int threads = 0;
+	/**
+	 * Threads which are running a task
+	 */
+	private int running = 0;
+	/**
+	 * Tasks which could start now, within each owner's active limit
+	 */
+	private int runnable = 0;
+	private boolean shutdown = false;
+
+	/**
+	 * Creates an executor. Threads are started as they are needed.
+	 * @param threadFactory the factory for the worker threads
+	 * @param maxThreads the maximum number of worker threads
+	 * @param maxQueuedPerOwner the maximum number of waiting tasks per owner
+	 */
+	public AsyncTaskExecutor(ThreadFactory threadFactory, int maxThreads, int maxQueuedPerOwner) {
+		this.threadFactory = threadFactory;
+		this.maxThreads = Math.max(1, maxThreads);
+		this.maxActivePerOwner = Math.max(1, this.maxThreads / 2);
+		this.maxQueuedPerOwner = Math.max(1, maxQueuedPerOwner);
+	}
+
+	/**
+	 * Submits a task.<br>
+	 * <br>
+	 * Cancelling the returned future removes the task from its owner's queue if it has not started, and
+	 * interrupts the thread running it otherwise.
+	 * @param owner the owner of the task
+	 * @param task the task
+	 * @return the future for the task, or null if the owner's queue is full or the executor is shut down
+	 */
+	public Future<?> submit(Object owner, Runnable task) {
+		Object key = owner == null ? NO_OWNER : owner;
+		lock.lock();
+		try {
+			if (shutdown) {
+				return null;
+			}
+			OwnerQueue queue = owners.get(key);
+			if (queue == null) {
+				queue = new OwnerQueue(key);
+				owners.put(key, queue);
+			}
+			if (queue.tasks.size() >= maxQueuedPerOwner) {
+				if (!queue.warned) {
+					queue.warned = true;
+					String name = owner instanceof Named ? ((Named) owner).getName() : String.valueOf(owner);
+					Spout.getLogger().warning("Async task queue for " + name + " is full, rejecting tasks until it drains");
+				}
+				return null;
+			}
+			QueuedTask future = new QueuedTask(queue, task);
+			runnable -= getRunnable(queue);
+			queue.tasks.add(future);
+			runnable += getRunnable(queue);
+			markReady(queue);
+			// Threads which are not running a task will each take one, start more if they are not enough
+			if (threads - running < runnable && threads < maxThreads) {
+				threads++;
+				threadFactory.newThread(new WorkerLoop()).start();
+			}
+			return future;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting tasks. Tasks already queued are still run.
+	 */
+	public void shutdown() {
+		lock.lock();
+		try {
+			shutdown = true;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of tasks waiting to run
+	 * @return the number of tasks
+	 */
+	public int getQueued() {
+		lock.lock();
+		try {
+			int queued = 0;
+			for (OwnerQueue queue : owners.values()) {
+				queued += queue.tasks.size();
+			}
+			return queued;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of an owner's tasks which could start now
+	 */
+	private int getRunnable(OwnerQueue queue) {
+		return Math.max(0, Math.min(queue.tasks.size(), maxActivePerOwner - queue.active));
+	}
+
+	private void markReady(OwnerQueue queue) {
+		if (!queue.ready && !queue.tasks.isEmpty() && queue.active < maxActivePerOwner) {
+			queue.ready = true;
+			ready.add(queue);
+			available.signal();
+		}
+	}
+
+	private class WorkerLoop implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				OwnerQueue queue;
+				FutureTask<Void> task;
+				lock.lock();
+				try {
+					while (ready.isEmpty()) {
+						if (shutdown) {
+							threads--;
+							return;
+						}
+						available.awaitUninterruptibly();
+					}
+					queue = ready.poll();
+					queue.ready = false;
+					runnable -= getRunnable(queue);
+					task = queue.tasks.poll();
+					queue.active++;
+					runnable += getRunnable(queue);
+					running++;
+					if (queue.tasks.size() < maxQueuedPerOwner) {
+						queue.warned = false;
+					}
+					markReady(queue);
+				} finally {
+					lock.unlock();
+				}
+				try {
+					task.run();
+				} finally {
+					// Clear any interrupt from a cancel so it does not leak into the next task
+					Thread.interrupted();
+					lock.lock();
+					try {
+						running--;
+						runnable -= getRunnable(queue);
+						queue.active--;
+						runnable += getRunnable(queue);
+						if (queue.active == 0 && queue.tasks.isEmpty()) {
+							owners.remove(queue.owner);
+						} else {
+							markReady(queue);
+						}
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A queued task, which leaves its owner's queue when cancelled
+	 */
+	private class QueuedTask extends FutureTask<Void> {
+		private final OwnerQueue queue;
+
+		private QueuedTask(OwnerQueue queue, Runnable task) {
+			super(task, null);
+			this.queue = queue;
+		}
+
+		@Override
+		protected void done() {
+			if (!isCancelled()) {
+				return;
+			}
+			lock.lock();
+			try {
+				runnable -= getRunnable(queue);
+				if (!queue.tasks.remove(this)) {
+					// Already taken by a worker
+					runnable += getRunnable(queue);
+					return;
+				}
+				runnable += getRunnable(queue);
+				if (queue.tasks.size() < maxQueuedPerOwner) {
+					queue.warned = false;
+				}
+				if (queue.tasks.isEmpty()) {
+					if (queue.ready) {
+						queue.ready = false;
+						ready.remove(queue);
+					}
+					if (queue.active == 0) {
+						owners.remove(queue.owner);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static class OwnerQueue {
+		private final Object owner;
+		private final ArrayDeque<FutureTask<Void>> tasks = new ArrayDeque<FutureTask<Void>>();
+		private int active = 0;
+		private boolean ready = false;
+		private boolean warned = false;
+
+		private OwnerQueue(Object owner) {
+			this.owner = owner;
+		}
+	}
+}
@@ -27,13 +27,9 @@
 package org.spout.engine.scheduler;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -44,6 +40,8 @@ import org.spout.api.scheduler.Task;
 import org.spout.api.scheduler.TaskManager;
 import org.spout.api.scheduler.TaskPriority;
 import org.spout.api.scheduler.Worker;
+import org.spout.api.util.Named;
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.util.thread.AsyncManager;
 import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
 
@@ -53,7 +51,12 @@ public class SpoutTaskManager implements TaskManager {
 
 	private final ConcurrentHashMap<Integer, SpoutTask> activeTasks = new ConcurrentHashMap<Integer, SpoutTask>();
 
-	private final TaskPriorityQueue taskQueue;
+	private final TaskTimerWheel taskQueue;
+
+	/**
+	 * Scratch list for the tasks due in a heartbeat, only used by the heartbeat thread
+	 */
+	private final List<SpoutTask> dueTasks = new ArrayList<SpoutTask>();
 
 	private final boolean mainThread;
 
@@ -61,11 +64,12 @@ public class SpoutTaskManager implements TaskManager {
 
 	private final AtomicLong upTime;
 
-	private final Object scheduleLock = new Object();
-
 	private final Scheduler scheduler;
 
-	private final ExecutorService pool = Executors.newFixedThreadPool(20, new NamedThreadFactory("Scheduler Thread Pool Thread"));
+	/**
+	 * The pool for short lived async tasks, created on first use since only the main task manager runs async tasks
+	 */
+	private AsyncTaskExecutor pool = null;
 
 	public SpoutTaskManager(Scheduler scheduler, Thread mainThread) {
 		this(scheduler, mainThread, null, 0L);
@@ -76,7 +80,16 @@ public class SpoutTaskManager implements TaskManager {
 	}
 
 	public SpoutTaskManager(Scheduler scheduler, Thread mainThread, AsyncManager manager, long age) {
-		this.taskQueue = new TaskPriorityQueue(manager, SpoutScheduler.PULSE_EVERY / 4);
+		this(scheduler, mainThread, age, null);
+	}
+
+	/**
+	 * Creates a task manager which runs its short lived async tasks on the given pool
+	 * @param pool the pool, or null to create it from the configuration on first use
+	 */
+	SpoutTaskManager(Scheduler scheduler, Thread mainThread, long age, AsyncTaskExecutor pool) {
+		this.pool = pool;
+		this.taskQueue = new TaskTimerWheel(SpoutScheduler.PULSE_EVERY / 4, age);
 		this.mainThread = mainThread != null;
 		this.alive = new AtomicBoolean(true);
 		this.upTime = new AtomicLong(age);
@@ -136,47 +149,34 @@ public class SpoutTaskManager implements TaskManager {
 
 	public void heartbeat(long delta) {
 		long upTime = this.upTime.addAndGet(delta);
-		
-		Queue<SpoutTask> q;
-		
-		while ((q = taskQueue.poll(upTime)) != null) {
-			boolean checkRequired = !taskQueue.isFullyBelowThreshold(q, upTime);
-			Iterator<SpoutTask> itr = q.iterator();
-			while (itr.hasNext()) {
-				SpoutTask currentTask = itr.next();
-				if (checkRequired && currentTask.getPriority() > upTime) {
-					continue;
-				}
-				
-				itr.remove();
-				currentTask.setUnqueued();
-
-				if (!currentTask.isAlive()) {
-					continue;
-				} else if (currentTask.isSync()) {
-					currentTask.pulse();
-					repeatSchedule(currentTask);
-				} else {
-					Spout.getLogger().info("Async repeating task submitted");
-				}
-			}
-			if (taskQueue.complete(q, upTime)) {
-				break;
+
+		List<SpoutTask> due = dueTasks;
+		taskQueue.poll(upTime, due);
+		for (int i = 0; i < due.size(); i++) {
+			SpoutTask currentTask = due.get(i);
+			currentTask.setUnqueued();
+
+			if (!currentTask.isAlive()) {
+				continue;
+			} else if (currentTask.isSync()) {
+				currentTask.pulse();
+				repeatSchedule(currentTask);
+			} else {
+				Spout.getLogger().info("Async repeating task submitted");
 			}
 		}
+		due.clear();
 	}
 
 	public void cancelTask(SpoutTask task) {
 		if (task == null) {
 			throw new IllegalArgumentException("Task cannot be null!");
 		}
-		synchronized (scheduleLock) {
-			task.stop();
-			if (taskQueue.remove(task)) {
-				removeTask(task);
-			}
-		}
-		if (!task.isSync()) {
+		task.stop();
+		if (task.isSync()) {
+			// The timer wheel drops dead tasks when their slot comes up
+			removeTask(task);
+		} else {
 			SpoutWorker worker = activeWorkers.get(task);
 			if (worker != null) {
 				worker.interrupt();
@@ -184,33 +184,53 @@ public class SpoutTaskManager implements TaskManager {
 		}
 	}
 
+	/**
+	 * Schedules a task.<br>
+	 * <br>
+	 * If the async pool rejects the task because its owner has too many tasks waiting, the task is
+	 * stopped and returned anyway, so callers can check {@link Task#isAlive()} to see if it will run.
+	 * @param task the task
+	 * @return the task
+	 */
 	public Task schedule(SpoutTask task) {
-		synchronized (scheduleLock) {
-			if (!addTask(task)) {
-				return task;
-			}
-			if (!task.isSync()) {
-				SpoutWorker worker = new SpoutWorker(task, this);
-				addWorker(worker, task);
-				worker.start(pool);
-			} else {
-				taskQueue.add(task);
-			}
+		if (!addTask(task)) {
 			return task;
 		}
+		if (!task.isSync()) {
+			SpoutWorker worker = new SpoutWorker(task, this);
+			addWorker(worker, task);
+			if (!worker.start(getPool())) {
+				// Rejected by the pool, the owner has too many tasks waiting
+				task.stop();
+				removeWorker(worker, task);
+				removeTask(task);
+				Object owner = task.getOwner();
+				String name = owner instanceof Named ? ((Named) owner).getName() : String.valueOf(owner);
+				Spout.getLogger().warning("Async task " + task.getTaskId() + " for " + name + " was rejected, the task is stopped and will not run");
+			}
+		} else if (!taskQueue.add(task)) {
+			// Cancelled while being scheduled
+			removeTask(task);
+		}
+		return task;
 	}
 
 	protected Task repeatSchedule(SpoutTask task) {
-		synchronized (scheduleLock) {
-			if (task.isAlive()) {
-				schedule(task);
-			} else {
-				removeTask(task);
-			}
+		if (task.isAlive()) {
+			schedule(task);
+		} else {
+			removeTask(task);
 		}
 		return task;
 	}
 
+	private synchronized AsyncTaskExecutor getPool() {
+		if (pool == null) {
+			pool = new AsyncTaskExecutor(new NamedThreadFactory("Scheduler Thread Pool Thread"), SpoutConfiguration.ASYNC_TASK_THREADS.getInt(), SpoutConfiguration.ASYNC_TASK_QUEUE.getInt());
+		}
+		return pool;
+	}
+
 	public void addWorker(SpoutWorker worker, SpoutTask task) {
 		activeWorkers.put(task, worker);
 	}
@@ -289,10 +309,11 @@ public class SpoutTaskManager implements TaskManager {
 
 	@Override
 	public List<Task> getPendingTasks() {
-		List<SpoutTask> tasks = taskQueue.getTasks();
-		List<Task> list = new ArrayList<Task>(tasks.size());
-		for (SpoutTask t : tasks) {
-			list.add(t);
+		List<Task> list = new ArrayList<Task>();
+		for (SpoutTask t : activeTasks.values()) {
+			if (t.isSync() && t.isAlive()) {
+				list.add(t);
+			}
 		}
 		return list;
 	}
@@ -306,7 +327,11 @@ public class SpoutTaskManager implements TaskManager {
 			throw new IllegalStateException("Only the task manager for the main thread should be shutdown, since the other task managers do not support async tasks");
 		}
 		alive.set(false);
-		pool.shutdown();
+		synchronized (this) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
 		cancelAllTasks();
 		return true;
 	}
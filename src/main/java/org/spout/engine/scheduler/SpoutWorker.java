@@ -26,7 +26,6 @@
  */
 package org.spout.engine.scheduler;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -69,15 +68,25 @@ public class SpoutWorker implements Worker, Runnable {
 		this.taskManager = taskManager;
 	}
 	
-	public void start(ExecutorService pool) {
+	/**
+	 * Starts the worker, on its own thread if the task is long lived and on the pool otherwise
+	 * @param pool the pool for short lived tasks
+	 * @return false if the pool rejected the task
+	 */
+	public boolean start(AsyncTaskExecutor pool) {
 		if (thread != null) {
 			thread.start();
 		} else {
-			Future<?> future = pool.submit(r);
+			Future<?> future = pool.submit(owner, r);
+			if (future == null) {
+				futureRef.set(CANCELLED);
+				return false;
+			}
 			if (!this.futureRef.compareAndSet(NOT_SUBMITED, future)) {
 				future.cancel(true);
 			}
 		}
+		return true;
 	}
 	
 	@Override
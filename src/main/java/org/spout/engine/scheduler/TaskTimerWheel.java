@@ -0,0 +1,204 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hierarchical timing wheel holding the sync tasks of a {@link SpoutTaskManager}.<br>
+ * <br>
+ * Tasks may be added from any thread; they are handed to the wheel through a lock free queue.
+ * The wheel itself is only touched by the thread calling {@link #poll(long, List)}. Cancelled
+ * tasks are not removed eagerly, they are dropped when their slot comes up.<br>
+ * <br>
+ * A task is due when its next call time is less than or equal to the current up time, the same
+ * rule as the priority queue this replaces.
+ */
+public class TaskTimerWheel {
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private final long resolution;
+	private final ConcurrentLinkedQueue<SpoutTask> incoming = new ConcurrentLinkedQueue<SpoutTask>();
+	private final List<List<SpoutTask>> wheel = new ArrayList<List<SpoutTask>>(LEVELS * SLOTS);
+	/**
+	 * Tasks beyond the range of the top level
+	 */
+	private final List<SpoutTask> overflow = new ArrayList<SpoutTask>();
+	/**
+	 * Tasks whose tick has been processed, but which are not due yet
+	 */
+	private final List<SpoutTask> waiting = new ArrayList<SpoutTask>();
+	private List<SpoutTask> spare = new ArrayList<SpoutTask>();
+	/**
+	 * The next tick to be processed
+	 */
+	private long currentTick;
+
+	/**
+	 * Creates a timing wheel
+	 * @param resolution the length of a tick of the lowest level, in ms
+	 * @param upTime the up time of the task manager
+	 */
+	public TaskTimerWheel(long resolution, long upTime) {
+		this.resolution = resolution;
+		this.currentTick = upTime / resolution;
+		for (int i = 0; i < LEVELS * SLOTS; i++) {
+			wheel.add(new ArrayList<SpoutTask>());
+		}
+	}
+
+	/**
+	 * Queues a task for its next call time. This method may be called from any thread.
+	 * @param task the task
+	 * @return false if the task was dead
+	 */
+	public boolean add(SpoutTask task) {
+		if (!task.setQueued()) {
+			return false;
+		}
+		incoming.add(task);
+		return true;
+	}
+
+	/**
+	 * Advances the wheel to the given time and collects the tasks which are due.<br>
+	 * <br>
+	 * The collected tasks are still marked as queued.
+	 * @param upTime the current time
+	 * @param due the list to add the due tasks to
+	 */
+	public void poll(long upTime, List<SpoutTask> due) {
+		SpoutTask task;
+		while ((task = incoming.poll()) != null) {
+			insert(task);
+		}
+		for (int i = 0; i < waiting.size(); i++) {
+			task = waiting.get(i);
+			if (!task.isAlive() || task.getNextCallTime() <= upTime) {
+				due.add(task);
+				waiting.set(i, waiting.get(waiting.size() - 1));
+				waiting.remove(waiting.size() - 1);
+				i--;
+			}
+		}
+		long nowTick = upTime / resolution;
+		while (currentTick <= nowTick) {
+			cascade(currentTick);
+			List<SpoutTask> slot = swap(0, (int) (currentTick & SLOT_MASK));
+			for (int i = 0; i < slot.size(); i++) {
+				task = slot.get(i);
+				// Only tasks in the last tick can be early
+				if (!task.isAlive() || task.getNextCallTime() <= upTime) {
+					due.add(task);
+				} else {
+					waiting.add(task);
+				}
+			}
+			slot.clear();
+			spare = slot;
+			currentTick++;
+		}
+	}
+
+	/**
+	 * Gets the number of tasks on the wheel, including cancelled tasks which have not been dropped yet
+	 * @return the number of tasks
+	 */
+	public int size() {
+		int size = incoming.size() + overflow.size() + waiting.size();
+		for (List<SpoutTask> slot : wheel) {
+			size += slot.size();
+		}
+		return size;
+	}
+
+	private void insert(SpoutTask task) {
+		long tick = task.getNextCallTime() / resolution;
+		if (tick < currentTick) {
+			waiting.add(task);
+			return;
+		}
+		long delta = tick - currentTick;
+		for (int level = 0; level < LEVELS; level++) {
+			if (delta < 1L << (SLOT_BITS * (level + 1))) {
+				wheel.get(level * SLOTS + (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK)).add(task);
+				return;
+			}
+		}
+		overflow.add(task);
+	}
+
+	/**
+	 * Moves the tasks of the higher level slots which start at this tick down the wheel
+	 */
+	private void cascade(long tick) {
+		if ((tick & SLOT_MASK) != 0) {
+			return;
+		}
+		int level = 1;
+		while (level < LEVELS - 1 && ((tick >> (SLOT_BITS * level)) & SLOT_MASK) == 0) {
+			level++;
+		}
+		if (level == LEVELS - 1 && ((tick >> (SLOT_BITS * level)) & SLOT_MASK) == 0) {
+			reinsert(overflow);
+		}
+		// Highest level first, so tasks can fall through several levels
+		for (; level > 0; level--) {
+			List<SpoutTask> slot = swap(level, (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK));
+			reinsert(slot);
+			spare = slot;
+		}
+	}
+
+	private void reinsert(List<SpoutTask> tasks) {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		List<SpoutTask> copy = tasks == overflow ? new ArrayList<SpoutTask>(overflow) : tasks;
+		if (copy != tasks) {
+			overflow.clear();
+		}
+		for (int i = 0; i < copy.size(); i++) {
+			SpoutTask task = copy.get(i);
+			if (task.isAlive()) {
+				insert(task);
+			}
+		}
+		copy.clear();
+	}
+
+	private List<SpoutTask> swap(int level, int slot) {
+		int index = level * SLOTS + slot;
+		List<SpoutTask> tasks = wheel.get(index);
+		wheel.set(index, spare);
+		return tasks;
+	}
+}
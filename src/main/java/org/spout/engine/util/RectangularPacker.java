@@ -26,35 +26,97 @@
  */
 package org.spout.engine.util;
 
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.logging.Level;
 
+import org.spout.api.Spout;
 import org.spout.api.render.Texture;
 import org.spout.engine.resources.ClientTexture;
 
 /**
- * A bin packing algorithm useful for merging multiple textures into one.
+ * A bin packing algorithm useful for merging multiple textures into atlas pages.
  * 
  * <p>
- * This algorithm is based on a Javascript algorithm found <a
- * href="http://codeincomplete.com/posts/2011/5/7/bin_packing/">on this
- * page</a>.
+ * Textures are placed with a bottom-left skyline: each page keeps the
+ * height of its top edge as a list of segments, and a texture goes where
+ * its top ends lowest. Textures can be added to an existing packer, and a
+ * new page is opened when one doesn't fit in any page of the maximum size.
+ * Only the pages that received textures are rebuilt by
+ * {@link #getTexture(int)}.
+ * </p>
+ * 
+ * <p>
+ * The placements of a set of textures can be cached to a file keyed by a
+ * hash of their sizes and pixels, so that packing the same set again only
+ * has to copy the pixels.
  * </p>
  */
 public class RectangularPacker {
-	private final Texture[] textures;
-	private Node root;
-	private Map<Texture, Node> fits;
-	private Texture texture;
+	public static final int DEFAULT_MAX_SIZE = 2048;
+	private static final int CACHE_MAGIC = 0x53504B52;
 
-	private RectangularPacker(List<Texture> textures) {
-		Collections.sort(textures, new Comparator<Texture>() {
+	private final int maxSize;
+	private final List<Page> pages = new ArrayList<Page>();
+	private final Map<Texture, Node> fits = new IdentityHashMap<Texture, Node>();
+
+	public RectangularPacker(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Page size must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds a texture to the atlas, in the first page with room for it
+	 * 
+	 * @param texture
+	 * @return where the texture was placed
+	 */
+	public Node add(Texture texture) {
+		Node fit = fits.get(texture);
+		if (fit != null) {
+			return fit;
+		}
+		int w = texture.getWidth();
+		int h = texture.getHeight();
+		if (w > maxSize || h > maxSize) {
+			throw new IllegalArgumentException("Texture of " + w + "x" + h + " does not fit a page of " + maxSize);
+		}
+		for (Page page : pages) {
+			fit = page.insert(w, h);
+			if (fit != null) {
+				break;
+			}
+		}
+		if (fit == null) {
+			Page page = new Page(pages.size());
+			pages.add(page);
+			fit = page.insert(w, h);
+		}
+		place(texture, fit);
+		return fit;
+	}
+
+	/**
+	 * Adds textures to the atlas, tallest first for a tighter packing
+	 * 
+	 * @param textures
+	 */
+	public void addAll(List<Texture> textures) {
+		List<Texture> sorted = new ArrayList<Texture>(textures);
+		Collections.sort(sorted, new Comparator<Texture>() {
 
 			@Override
 			public int compare(Texture a, Texture b) {
@@ -66,173 +128,354 @@ public class RectangularPacker {
 				return b.getWidth() - a.getWidth();
 			}
 		});
-		this.textures = textures.toArray(new Texture[textures.size()]);
-		
-		fit();
-		BufferedImage image = generateImage(true);
-		this.texture = new ClientTexture(image);
+		for (Texture texture : sorted) {
+			add(texture);
+		}
 	}
 
-	private final void fit() {
-		int len = textures.length;
-
-		// Get initial size
-		int w = len > 0 ? textures[0].getWidth() : 0;
-		int h = len > 0 ? textures[0].getHeight() : 0;
-
-		root = new Node(0, 0, w, h);
-
-		fits = new HashMap<Texture, Node>();
-
-		for (int n = 0; n < len; n++) {
-			Texture texture = textures[n];
-			Node fit;
-
-			// Find where we can place the guy
-			Node available = root.find(texture.getWidth(), texture.getHeight());
-			if (available != null) {
-				fit = available.split(texture.getWidth(), texture.getHeight());
-			} else {
-				// No room, we have to grow the root node
-				fit = grow(texture.getWidth(), texture.getHeight());
-			}
-			fits.put(texture, fit);
-		}
+	private void place(Texture texture, Node fit) {
+		fits.put(texture, fit);
+		pages.get(fit.page).draw(texture, fit);
 	}
 
 	public Map<Texture, Node> getFits() {
-		return fits; // Don't bother cloning the hashmap; this is a single-use
-						// class since we can't do multiple returns
+		return Collections.unmodifiableMap(fits);
+	}
+
+	public int getPageCount() {
+		return pages.size();
 	}
 
 	/**
-	 * Generates the packed image.
+	 * Gets the texture of the first page.
 	 * 
-	 * @return The packed image.
+	 * @return
 	 */
-	private BufferedImage generateImage(boolean powerOfTwo) {
-		BufferedImage image;
-		if (powerOfTwo) {
-			int width = 1 << (32 - Integer.numberOfLeadingZeros(root.getWidth() - 1));
-			int height = 1 << (32 - Integer.numberOfLeadingZeros(root.getHeight() - 1));
-			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		} else {
-			image = new BufferedImage(root.getWidth(), root.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		}
-
-		Graphics2D canvas = image.createGraphics();
-		for (Entry<Texture, Node> entry : fits.entrySet()) {
-			Texture texture = entry.getKey();
-			image.setRGB(0, 0, texture.getWidth(), texture.getHeight(), texture.getImage(), 0, texture.getWidth());			
-			canvas.drawImage(image, entry.getValue().getX(), entry.getValue().getY(), null);
-		}
-
-		return image;
+	public Texture getTexture() {
+		return getTexture(0);
 	}
-	
+
 	/**
-	 * Gets the resulting texture from the packer.
+	 * Gets the texture of a page, rebuilding it only if textures were added
+	 * to the page since the last call. Pages are a power of two in size.
 	 * 
+	 * @param page
 	 * @return
 	 */
-	public Texture getTexture() {
-		return texture;
+	public Texture getTexture(int page) {
+		return pages.get(page).getTexture();
 	}
 
 	/**
-	 * Grows the root node to allow space for another image.
+	 * Packs the given textures into one Texture.
 	 * 
-	 * @param w
-	 * @param h
+	 * @param textures
 	 * @return
 	 */
-	private Node grow(int w, int h) {
-		// Ensure the image can actually fit
-		boolean canGrowRight = h <= root.h;
-		boolean canGrowDown = w <= root.w;
-
-		// Keep it square
-		boolean shouldGrowRight = canGrowRight && (root.w >= (root.h + h));
-		boolean shouldGrowDown = canGrowDown && (root.h >= (root.w + w));
+	public static RectangularPacker packTextures(List<Texture> textures) {
+		RectangularPacker packer = new RectangularPacker(DEFAULT_MAX_SIZE);
+		packer.addAll(textures);
+		return packer;
+	}
 
-		if (shouldGrowRight) {
-			return growRight(w, h);
+	/**
+	 * Packs the given textures, reusing the placements stored in the cache
+	 * file when it was written for the same textures and page size, and
+	 * writing the file otherwise.
+	 * 
+	 * @param textures
+	 * @param maxSize the largest page size
+	 * @param cache the cache file
+	 * @return
+	 */
+	public static RectangularPacker packTextures(List<Texture> textures, int maxSize, File cache) {
+		RectangularPacker packer = new RectangularPacker(maxSize);
+		long key = hash(textures, maxSize);
+		if (cache.exists() && packer.readCache(textures, key, cache)) {
+			return packer;
 		}
+		packer.addAll(textures);
+		packer.writeCache(textures, key, cache);
+		return packer;
+	}
 
-		if (shouldGrowDown) {
-			return growDown(w, h);
+	private static long hash(List<Texture> textures, int maxSize) {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ maxSize) * 0x100000001b3L;
+		hash = (hash ^ textures.size()) * 0x100000001b3L;
+		for (Texture texture : textures) {
+			hash = (hash ^ texture.getWidth()) * 0x100000001b3L;
+			hash = (hash ^ texture.getHeight()) * 0x100000001b3L;
+			hash = (hash ^ Arrays.hashCode(texture.getImage())) * 0x100000001b3L;
 		}
+		return hash;
+	}
 
-		if (canGrowRight) {
-			return growRight(w, h);
+	private boolean readCache(List<Texture> textures, long key, File cache) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(cache));
+			if (in.readInt() != CACHE_MAGIC || in.readLong() != key || in.readInt() != textures.size()) {
+				return false;
+			}
+			Node[] nodes = new Node[textures.size()];
+			for (int i = 0; i < nodes.length; i++) {
+				Texture texture = textures.get(i);
+				nodes[i] = new Node(in.readInt(), in.readInt(), in.readInt(), texture.getWidth(), texture.getHeight());
+			}
+			if (!isValid(nodes)) {
+				Spout.getLogger().warning("Texture packing cache " + cache + " has invalid placements, repacking");
+				return false;
+			}
+			for (int i = 0; i < nodes.length; i++) {
+				Node node = nodes[i];
+				while (pages.size() <= node.page) {
+					pages.add(new Page(pages.size()));
+				}
+				pages.get(node.page).occupy(node);
+				place(textures.get(i), node);
+			}
+			return true;
+		} catch (IOException e) {
+			Spout.getLogger().log(Level.WARNING, "Unable to read texture packing cache " + cache, e);
+			pages.clear();
+			fits.clear();
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ignore) {
+				}
+			}
 		}
+	}
 
-		if (canGrowDown) {
-			return growDown(w, h);
+	/**
+	 * Checks that cached placements are inside a page, that there are no
+	 * more pages than textures, and that no two placements overlap
+	 */
+	private boolean isValid(Node[] nodes) {
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[i];
+			if (node.page < 0 || node.page >= nodes.length || node.x < 0 || node.y < 0 || node.x > maxSize - node.w || node.y > maxSize - node.h) {
+				return false;
+			}
+			for (int j = 0; j < i; j++) {
+				Node other = nodes[j];
+				if (node.page == other.page && node.x < other.x + other.w && other.x < node.x + node.w && node.y < other.y + other.h && other.y < node.y + node.h) {
+					return false;
+				}
+			}
 		}
+		return true;
+	}
 
-		return null;
+	private void writeCache(List<Texture> textures, long key, File cache) {
+		DataOutputStream out = null;
+		try {
+			File parent = cache.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			out = new DataOutputStream(new FileOutputStream(cache));
+			out.writeInt(CACHE_MAGIC);
+			out.writeLong(key);
+			out.writeInt(textures.size());
+			for (Texture texture : textures) {
+				Node node = fits.get(texture);
+				out.writeInt(node.page);
+				out.writeInt(node.x);
+				out.writeInt(node.y);
+			}
+		} catch (IOException e) {
+			Spout.getLogger().log(Level.WARNING, "Unable to write texture packing cache " + cache, e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
 	}
 
-	private Node growRight(int w, int h) {
-		Node oldRoot = root;
-		root = new Node(0, 0, oldRoot.w + w, oldRoot.h);
-		root.used = true;
-		root.down = oldRoot;
-		root.right = new Node(oldRoot.w, 0, w, oldRoot.h);
+	/**
+	 * An atlas page: its skyline, its pixels and the texture built from them.
+	 */
+	private class Page {
+		private final int index;
+		/**
+		 * Skyline segments, as x, top and width, left to right and covering the page width
+		 */
+		private final List<int[]> skyline = new ArrayList<int[]>();
+		private int[] pixels = new int[0];
+		private int width = 0;
+		private int height = 0;
+		private Texture texture = null;
+		private boolean dirty = true;
+
+		public Page(int index) {
+			this.index = index;
+			skyline.add(new int[] {0, 0, maxSize});
+		}
 
-		Node available = root.find(w, h);
-		if (available != null) {
-			return available.split(w, h);
+		public Node insert(int w, int h) {
+			int best = -1, bestX = 0, bestY = 0, bestTop = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE;
+			for (int i = 0; i < skyline.size(); i++) {
+				int x = skyline.get(i)[0];
+				int y = fitAt(i, w);
+				if (y < 0 || y + h > maxSize) {
+					continue;
+				}
+				int segmentWidth = skyline.get(i)[2];
+				if (y + h < bestTop || (y + h == bestTop && segmentWidth < bestWidth)) {
+					best = i;
+					bestX = x;
+					bestY = y;
+					bestTop = y + h;
+					bestWidth = segmentWidth;
+				}
+			}
+			if (best < 0) {
+				return null;
+			}
+			Node node = new Node(index, bestX, bestY, w, h);
+			raise(best, node);
+			return node;
 		}
 
-		return null; // this happens when we don't sort.
-	}
+		/**
+		 * Gets the lowest y a rectangle starting at segment i can sit at, or -1 if it runs off the page
+		 */
+		private int fitAt(int i, int w) {
+			int x = skyline.get(i)[0];
+			if (x + w > maxSize) {
+				return -1;
+			}
+			int y = 0;
+			int remaining = w;
+			for (int j = i; remaining > 0; j++) {
+				int[] segment = skyline.get(j);
+				y = Math.max(y, segment[1]);
+				remaining -= segment[2];
+			}
+			return y;
+		}
+
+		/**
+		 * Marks a cached placement as used, raising the skyline over it
+		 */
+		public void occupy(Node node) {
+			int first = 0;
+			while (first + 1 < skyline.size() && skyline.get(first + 1)[0] <= node.x) {
+				first++;
+			}
+			// Split the segment so one starts exactly at the node
+			int[] segment = skyline.get(first);
+			if (segment[0] < node.x) {
+				int[] tail = {node.x, segment[1], segment[0] + segment[2] - node.x};
+				segment[2] = node.x - segment[0];
+				skyline.add(++first, tail);
+			}
+			int top = node.y + node.h;
+			int end = node.x + node.w;
+			for (int j = first; j < skyline.size() && skyline.get(j)[0] < end; j++) {
+				top = Math.max(top, skyline.get(j)[1]);
+			}
+			raise(first, new Node(index, node.x, top - node.h, node.w, node.h));
+		}
 
-	private Node growDown(int w, int h) {
-		Node oldRoot = root;
-		root = new Node(0, 0, w, oldRoot.h);
-		root.used = true;
-		root.down = oldRoot;
-		root.right = new Node(oldRoot.h, w, oldRoot.w, h);
+		/**
+		 * Puts the node on the skyline from segment i, trimming the segments it covers
+		 */
+		private void raise(int i, Node node) {
+			int end = node.x + node.w;
+			skyline.add(i, new int[] {node.x, node.y + node.h, node.w});
+			int j = i + 1;
+			while (j < skyline.size()) {
+				int[] segment = skyline.get(j);
+				if (segment[0] >= end) {
+					break;
+				}
+				int segmentEnd = segment[0] + segment[2];
+				if (segmentEnd <= end) {
+					skyline.remove(j);
+				} else {
+					segment[2] = segmentEnd - end;
+					segment[0] = end;
+					break;
+				}
+			}
+			// Merge neighbours of the same height
+			for (j = Math.max(0, i - 1); j + 1 < skyline.size() && j <= i + 1;) {
+				int[] a = skyline.get(j);
+				int[] b = skyline.get(j + 1);
+				if (a[1] == b[1]) {
+					a[2] += b[2];
+					skyline.remove(j + 1);
+				} else {
+					j++;
+				}
+			}
+		}
 
-		Node available = root.find(w, h);
-		if (available != null) {
-			return available.split(w, h);
+		public void draw(Texture source, Node node) {
+			int neededWidth = powerOfTwo(node.x + node.w);
+			int neededHeight = powerOfTwo(node.y + node.h);
+			if (neededWidth > width || neededHeight > height) {
+				int newWidth = Math.max(width, neededWidth);
+				int newHeight = Math.max(height, neededHeight);
+				int[] resized = new int[newWidth * newHeight];
+				for (int row = 0; row < height; row++) {
+					System.arraycopy(pixels, row * width, resized, row * newWidth, width);
+				}
+				pixels = resized;
+				width = newWidth;
+				height = newHeight;
+			}
+			int[] image = source.getImage();
+			for (int row = 0; row < node.h; row++) {
+				System.arraycopy(image, row * node.w, pixels, (node.y + row) * width + node.x, node.w);
+			}
+			dirty = true;
 		}
 
-		return null; // this happens when we don't sort.
+		public Texture getTexture() {
+			if (dirty) {
+				texture = new ClientTexture(pixels.clone(), width, height);
+				dirty = false;
+			}
+			return texture;
+		}
 	}
-	
-	/**
-	 * Packs the given textures into one Texture.
-	 * 
-	 * @param textures
-	 * @return
-	 */
-	public static RectangularPacker packTextures(List<Texture> textures) {
-		return new RectangularPacker(textures);
+
+	private static int powerOfTwo(int size) {
+		return size <= 1 ? 1 : 1 << (32 - Integer.numberOfLeadingZeros(size - 1));
 	}
 
 	/**
-	 * Helper object representing a node within the tree of packed rectangles.
+	 * Where a texture was placed in the atlas.
 	 */
 	public static class Node {
-		private boolean used = false;
-		private int x;
-		private int y;
-		private int w;
-		private int h;
-		private Node down = null;
-		private Node right = null;
-
-		public Node(int x, int y, int w, int h) {
+		private final int page;
+		private final int x;
+		private final int y;
+		private final int w;
+		private final int h;
+
+		public Node(int page, int x, int y, int w, int h) {
+			this.page = page;
 			this.x = x;
 			this.y = y;
 			this.w = w;
 			this.h = h;
 		}
 
+		public int getPage() {
+			return page;
+		}
+
 		public int getX() {
 			return x;
 		}
@@ -248,45 +491,5 @@ public class RectangularPacker {
 		public int getHeight() {
 			return h;
 		}
-
-		/**
-		 * Finds either this node or a child node that can fit an image with the
-		 * given width and height.
-		 * 
-		 * @param w
-		 * @param h
-		 * @return The next available node within this node, or null if a node
-		 *         could not be found.
-		 */
-		public Node find(int w, int h) {
-			if (used) {
-				Node found = right.find(w, h);
-				if (found == null) {
-					return down.find(w, h);
-				} else {
-					return found;
-				}
-			}
-
-			if ((w <= this.w) && (h <= this.h)) {
-				return this;
-			}
-
-			return null;
-		}
-
-		/**
-		 * Adds two children to the node.
-		 * 
-		 * @param w
-		 * @param h
-		 * @return
-		 */
-		public Node split(int w, int h) {
-			used = true;
-			down = new Node(x, y + h, this.w, this.h - h);
-			right = new Node(x + w, y, this.w - w, this.h);
-			return this;
-		}
 	}
 }
@@ -28,21 +28,190 @@ package org.spout.engine.util.thread.snapshotable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
+import org.spout.api.Spout;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+
+/**
+ * Copies the snapshots of a group of {@link Snapshotable}s.<br>
+ * <br>
+ * Snapshotables which implement {@link DirtySnapshotable} are skipped when they have not changed. When
+ * more than {@link #SHARD_SIZE} snapshotables need copying, they are split into shards which are copied
+ * in parallel.
+ */
 public class SnapshotManager {
-	private List<Snapshotable> managed = new ArrayList<Snapshotable>();
+	/**
+	 * The number of snapshotables to copy in a shard; fewer are copied on the calling thread
+	 */
+	public static final int SHARD_SIZE = 64;
+	/**
+	 * Copies which take longer than this are logged, once per snapshotable
+	 */
+	private static final long SLOW_COPY = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final int SHARD_THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Shards run on their own pool, since the copy stage itself already runs on the scheduler's pool
+	 */
+	private static final ExecutorService pool = Executors.newFixedThreadPool(SHARD_THREADS, new NamedThreadFactory("SnapshotManager - shard copy", true));
+	private final List<Entry> managed = new ArrayList<Entry>();
+	/**
+	 * The entries to copy this time, guarded by the managed lock
+	 */
+	private final List<Entry> toCopy = new ArrayList<Entry>();
+	private volatile long lastCopyTime = 0;
+	private volatile int lastShards = 0;
+	private volatile Snapshotable slowest = null;
+	private volatile long slowestTime = 0;
+	private final int maxShards;
 
-	public synchronized void add(Snapshotable s) {
+	public SnapshotManager() {
+		this(SHARD_THREADS);
+	}
+
+	/**
+	 * Creates a manager which splits its copies into at most the given number of shards
+	 * @param maxShards the maximum number of shards
+	 */
+	SnapshotManager(int maxShards) {
+		this.maxShards = Math.max(1, maxShards);
+	}
+
+	public void add(Snapshotable s) {
 		synchronized (managed) {
-			managed.add(s);
+			managed.add(new Entry(s));
 		}
 	}
 
 	public void copyAllSnapshots() {
 		synchronized (managed) {
+			long start = System.nanoTime();
 			for (int i = 0; i < managed.size(); i++) {
-				managed.get(i).copySnapshot();
+				Entry e = managed.get(i);
+				if (!e.dirtyTracking || ((DirtySnapshotable) e.snapshotable).isDirty()) {
+					toCopy.add(e);
+				}
+			}
+			int size = toCopy.size();
+			if (size <= SHARD_SIZE) {
+				copyRange(0, size);
+				lastShards = size == 0 ? 0 : 1;
+			} else {
+				lastShards = copyParallel(size);
+			}
+			toCopy.clear();
+			lastCopyTime = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Gets the time the last call to {@link #copyAllSnapshots()} took
+	 * @return the time in nanoseconds
+	 */
+	public long getLastCopyTime() {
+		return lastCopyTime;
+	}
+
+	/**
+	 * Gets the number of shards the last call to {@link #copyAllSnapshots()} was split into
+	 * @return the number of shards, 0 if nothing was copied
+	 */
+	public int getLastShards() {
+		return lastShards;
+	}
+
+	/**
+	 * Gets the snapshotable with the longest single copy so far
+	 * @return the snapshotable, or null if nothing has been copied
+	 */
+	public Snapshotable getSlowest() {
+		return slowest;
+	}
+
+	/**
+	 * Gets the time of the longest single copy so far
+	 * @return the time in nanoseconds
+	 */
+	public long getSlowestTime() {
+		return slowestTime;
+	}
+
+	private int copyParallel(int size) {
+		int shards = Math.min(maxShards, (size + SHARD_SIZE - 1) / SHARD_SIZE);
+		int per = (size + shards - 1) / shards;
+		List<Future<?>> futures = new ArrayList<Future<?>>(shards - 1);
+		// The first shard is copied on this thread
+		for (int s = 1; s < shards; s++) {
+			final int from = s * per;
+			final int to = Math.min(size, from + per);
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					copyRange(from, to);
+				}
+			}));
+		}
+		copyRange(0, Math.min(size, per));
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (InterruptedException e) {
+				// The shards still read the list of entries to copy, so they are waited for anyway
+				interrupted = true;
+				i--;
+			} catch (ExecutionException e) {
+				Spout.getLogger().log(Level.SEVERE, "Exception while copying snapshots", e.getCause());
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return shards;
+	}
+
+	private void copyRange(int from, int to) {
+		long worst = 0;
+		Entry worstEntry = null;
+		for (int i = from; i < to; i++) {
+			Entry e = toCopy.get(i);
+			long start = System.nanoTime();
+			e.snapshotable.copySnapshot();
+			long time = System.nanoTime() - start;
+			if (time > worst) {
+				worst = time;
+				worstEntry = e;
+			}
+			if (time > SLOW_COPY && !e.reported) {
+				e.reported = true;
+				Spout.getLogger().info("Snapshot copy of " + e.snapshotable.getClass().getSimpleName() + " took " + TimeUnit.NANOSECONDS.toMillis(time) + "ms");
 			}
 		}
+		if (worstEntry != null) {
+			recordSlowest(worstEntry.snapshotable, worst);
+		}
+	}
+
+	private synchronized void recordSlowest(Snapshotable s, long time) {
+		if (time > slowestTime) {
+			slowestTime = time;
+			slowest = s;
+		}
+	}
+
+	private static class Entry {
+		private final Snapshotable snapshotable;
+		private final boolean dirtyTracking;
+		private boolean reported = false;
+
+		private Entry(Snapshotable snapshotable) {
+			this.snapshotable = snapshotable;
+			this.dirtyTracking = snapshotable instanceof DirtySnapshotable;
+		}
 	}
 }
@@ -39,7 +39,7 @@ import org.spout.api.util.thread.annotation.SnapshotRead;
 /**
  * A snapshotable object for ArrayLists
  */
-public class SnapshotableArrayList<T> implements Snapshotable {
+public class SnapshotableArrayList<T> implements DirtySnapshotable {
 	private final ConcurrentLinkedQueue<T> dirty = new ConcurrentLinkedQueue<T>();
 	private final List<T> snapshot;
 	private final List<T> live;
@@ -141,6 +141,11 @@ public class SnapshotableArrayList<T> implements Snapshotable {
 		return Collections.unmodifiableList(new ArrayList<T>(dirty));
 	}
 
+	@Override
+	public boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+
 	/**
 	 * Copies the next values to the snapshot
 	 */
@@ -43,7 +43,7 @@ import org.spout.api.util.thread.annotation.SnapshotRead;
 /**
  * A snapshotable class for HashMaps
  */
-public class SnapshotableHashMap<K, V> implements Snapshotable {
+public class SnapshotableHashMap<K, V> implements DirtySnapshotable {
 	private final Map<K, V> snapshot = new LinkedHashMap<K, V>();
 	private final Map<K, V> unmodifySnapshot = Collections.unmodifiableMap(snapshot);
 	private final ConcurrentMap<K, V> live = new ConcurrentHashMap<K, V>();
@@ -163,6 +163,11 @@ public class SnapshotableHashMap<K, V> implements Snapshotable {
 		return Collections.unmodifiableList(new ArrayList<V>(dirtyValues));
 	}
 
+	@Override
+	public boolean isDirty() {
+		return !dirtyKeys.isEmpty();
+	}
+
 	/**
 	 * Copies the next values to the snapshot
 	 */
@@ -42,7 +42,7 @@ import org.spout.api.util.thread.annotation.SnapshotRead;
 /**
  * A snapshotable class for HashSets
  */
-public class SnapshotableHashSet<T> implements Snapshotable {
+public class SnapshotableHashSet<T> implements DirtySnapshotable {
 	private final Set<T> snapshot = new HashSet<T>();
 	private final Set<T> unmodifySnapshot = Collections.unmodifiableSet(snapshot);
 	private final Set<T> live = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
@@ -129,6 +129,11 @@ public class SnapshotableHashSet<T> implements Snapshotable {
 		return live.isEmpty();
 	}
 
+	@Override
+	public boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+
 	/**
 	 * Copies the next values to the snapshot
 	 */
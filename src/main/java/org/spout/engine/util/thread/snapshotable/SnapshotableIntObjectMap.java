@@ -0,0 +1,574 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.spout.api.util.thread.annotation.DelayedWrite;
+import org.spout.api.util.thread.annotation.LiveRead;
+import org.spout.api.util.thread.annotation.SnapshotRead;
+
+/**
+ * A snapshotable map from primitive int keys to objects.
+ * <p/>
+ * The live map is an open addressing table which can be read without locking. Writes are
+ * serialized and mark the slot they change in a dirty bitset, so copying the snapshot only
+ * visits the slots which changed.
+ * <p/>
+ * The snapshot is stored as a dense array of values plus an int index, so iteration and
+ * lookups do not allocate.
+ * <p/>
+ * Removals from the Map occur at the next snapshot update.
+ * <p/>
+ * {@link #FREE} ({@link Integer#MIN_VALUE}) marks unused slots, so it can not be used as a key:
+ * putting it throws an IllegalArgumentException, and it is never mapped.
+ */
+public class SnapshotableIntObjectMap<V> implements DirtySnapshotable {
+	/**
+	 * The key which marks an unused slot; it can not be used as a key
+	 */
+	public static final int FREE = Integer.MIN_VALUE;
+	private static final int MIN_CAPACITY = 16;
+	private final Object lock = new Object();
+	private volatile LiveTable<V> live = new LiveTable<V>(MIN_CAPACITY);
+	private long[] dirty = new long[Math.max(1, MIN_CAPACITY >> 6)];
+	private boolean anyDirty = false;
+	private int[] snapshotKeys = new int[MIN_CAPACITY];
+	private Object[] snapshotValues = new Object[MIN_CAPACITY];
+	private int snapshotSize = 0;
+	private int[] indexKeys = newKeys(MIN_CAPACITY * 2);
+	private int[] indexPositions = new int[MIN_CAPACITY * 2];
+	private final Collection<V> snapshotView = new SnapshotValues();
+	private final Collection<V> liveView = new LiveValues();
+
+	public SnapshotableIntObjectMap(SnapshotManager manager) {
+		manager.add(this);
+	}
+
+	/**
+	 * Adds a key/value pair to the map
+	 * @param key the key
+	 * @param value the value
+	 * @return the previous value
+	 */
+	@DelayedWrite
+	@LiveRead
+	public V put(int key, V value) {
+		checkArgs(key, value);
+		synchronized (lock) {
+			LiveTable<V> t = live;
+			int slot = t.find(key);
+			if (slot < 0) {
+				insert(key, value);
+				return null;
+			}
+			V old = t.values.getAndSet(slot, value);
+			if (old == null) {
+				t.size++;
+			}
+			markDirty(slot);
+			return old;
+		}
+	}
+
+	/**
+	 * Adds a key/value pair to the map, if the key is not already mapped
+	 * @param key the key
+	 * @param value the value
+	 * @return the current value, or null on success
+	 */
+	@DelayedWrite
+	@LiveRead
+	public V putIfAbsent(int key, V value) {
+		checkArgs(key, value);
+		synchronized (lock) {
+			LiveTable<V> t = live;
+			int slot = t.find(key);
+			if (slot < 0) {
+				insert(key, value);
+				return null;
+			}
+			V old = t.values.get(slot);
+			if (old == null) {
+				t.values.set(slot, value);
+				t.size++;
+				markDirty(slot);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key the key
+	 * @return the previous value
+	 */
+	@DelayedWrite
+	@LiveRead
+	public V remove(int key) {
+		if (key == FREE) {
+			return null;
+		}
+		synchronized (lock) {
+			LiveTable<V> t = live;
+			int slot = t.find(key);
+			if (slot < 0) {
+				return null;
+			}
+			V old = t.values.getAndSet(slot, null);
+			if (old != null) {
+				t.size--;
+				markDirty(slot);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Removes a key from the map, if it is mapped to the given value
+	 * @param key the key
+	 * @param value the value
+	 * @return true if the value was removed
+	 */
+	@DelayedWrite
+	@LiveRead
+	public boolean remove(int key, V value) {
+		if (key == FREE) {
+			return false;
+		}
+		synchronized (lock) {
+			LiveTable<V> t = live;
+			int slot = t.find(key);
+			if (slot < 0 || value == null || !t.values.compareAndSet(slot, value, null)) {
+				return false;
+			}
+			t.size--;
+			markDirty(slot);
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the snapshot value for a key
+	 * @param key the key
+	 * @return the value, or null if the key was not mapped at the last snapshot
+	 */
+	@SnapshotRead
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (key == FREE) {
+			return null;
+		}
+		int i = indexFind(key);
+		return i < 0 ? null : (V) snapshotValues[indexPositions[i]];
+	}
+
+	/**
+	 * Gets the live value for a key
+	 * @param key the key
+	 * @return the value, or null if the key is not mapped
+	 */
+	@LiveRead
+	public V getLive(int key) {
+		if (key == FREE) {
+			return null;
+		}
+		LiveTable<V> t = live;
+		int slot = t.find(key);
+		return slot < 0 ? null : t.values.get(slot);
+	}
+
+	/**
+	 * Gets a value from a key, checks the live map and then the snapshot map
+	 * @param key the key
+	 * @return the live value, or the snapshot value if no live value is present
+	 */
+	@LiveRead
+	@SnapshotRead
+	public V getValue(int key) {
+		V value = getLive(key);
+		return value != null ? value : get(key);
+	}
+
+	/**
+	 * Gets the values in the snapshot
+	 * @return an unmodifiable view of the snapshot values
+	 */
+	@SnapshotRead
+	public Collection<V> get() {
+		return snapshotView;
+	}
+
+	/**
+	 * Gets the live values.<br>
+	 * <br>
+	 * Iteration is weakly consistent, like the views of a ConcurrentHashMap.
+	 * @return an unmodifiable view of the live values
+	 */
+	@LiveRead
+	public Collection<V> getLive() {
+		return liveView;
+	}
+
+	@Override
+	public boolean isDirty() {
+		synchronized (lock) {
+			return anyDirty;
+		}
+	}
+
+	/**
+	 * Copies the changed entries to the snapshot
+	 */
+	@Override
+	public void copySnapshot() {
+		synchronized (lock) {
+			if (!anyDirty) {
+				return;
+			}
+			LiveTable<V> t = live;
+			long[] d = dirty;
+			for (int w = 0; w < d.length; w++) {
+				long bits = d[w];
+				while (bits != 0) {
+					int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					int key = t.keys.get(slot);
+					V value = t.values.get(slot);
+					if (value == null) {
+						snapshotRemove(key);
+					} else {
+						snapshotPut(key, value);
+					}
+				}
+				d[w] = 0;
+			}
+			anyDirty = false;
+		}
+	}
+
+	private static void checkArgs(int key, Object value) {
+		if (key == FREE) {
+			throw new IllegalArgumentException("Key " + FREE + " is reserved");
+		}
+		if (value == null) {
+			throw new NullPointerException("Value can not be null");
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int[] newKeys(int length) {
+		int[] keys = new int[length];
+		Arrays.fill(keys, FREE);
+		return keys;
+	}
+
+	private void markDirty(int slot) {
+		dirty[slot >> 6] |= 1L << slot;
+		anyDirty = true;
+	}
+
+	private boolean isDirty(int slot) {
+		return (dirty[slot >> 6] & (1L << slot)) != 0;
+	}
+
+	private void insert(int key, V value) {
+		LiveTable<V> t = live;
+		if ((t.used + 1) << 1 > t.length) {
+			t = resize();
+		}
+		int slot = t.claim(key, value);
+		t.used++;
+		t.size++;
+		markDirty(slot);
+	}
+
+	/**
+	 * Rebuilds the live table without removed keys, keeping removals which have not been copied
+	 * to the snapshot yet
+	 */
+	private LiveTable<V> resize() {
+		LiveTable<V> old = live;
+		int kept = 0;
+		for (int i = 0; i < old.length; i++) {
+			if (old.values.get(i) != null || (old.keys.get(i) != FREE && isDirty(i))) {
+				kept++;
+			}
+		}
+		int capacity = MIN_CAPACITY;
+		while (capacity < (kept + 1) << 2) {
+			capacity <<= 1;
+		}
+		LiveTable<V> t = new LiveTable<V>(capacity);
+		long[] d = new long[Math.max(1, capacity >> 6)];
+		for (int i = 0; i < old.length; i++) {
+			int key = old.keys.get(i);
+			if (key == FREE) {
+				continue;
+			}
+			V value = old.values.get(i);
+			boolean wasDirty = isDirty(i);
+			if (value != null || wasDirty) {
+				int slot = t.claim(key, value);
+				t.used++;
+				if (value != null) {
+					t.size++;
+				}
+				if (wasDirty) {
+					d[slot >> 6] |= 1L << slot;
+				}
+			}
+		}
+		dirty = d;
+		live = t;
+		return t;
+	}
+
+	private int indexFind(int key) {
+		int[] keys = indexKeys;
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key) {
+				return i;
+			} else if (k == FREE) {
+				return -1;
+			}
+		}
+	}
+
+	private void snapshotPut(int key, V value) {
+		int i = indexFind(key);
+		if (i >= 0) {
+			snapshotValues[indexPositions[i]] = value;
+			return;
+		}
+		if (snapshotSize == snapshotKeys.length) {
+			snapshotKeys = Arrays.copyOf(snapshotKeys, snapshotSize << 1);
+			snapshotValues = Arrays.copyOf(snapshotValues, snapshotSize << 1);
+		}
+		if ((snapshotSize + 1) << 1 > indexKeys.length) {
+			rehashIndex(indexKeys.length << 1);
+		}
+		int pos = snapshotSize++;
+		snapshotKeys[pos] = key;
+		snapshotValues[pos] = value;
+		indexInsert(key, pos);
+	}
+
+	private void snapshotRemove(int key) {
+		int i = indexFind(key);
+		if (i < 0) {
+			return;
+		}
+		int pos = indexPositions[i];
+		int last = --snapshotSize;
+		if (pos != last) {
+			int lastKey = snapshotKeys[last];
+			snapshotKeys[pos] = lastKey;
+			snapshotValues[pos] = snapshotValues[last];
+			indexPositions[indexFind(lastKey)] = pos;
+		}
+		snapshotValues[last] = null;
+		indexDelete(i);
+	}
+
+	private void indexInsert(int key, int pos) {
+		int mask = indexKeys.length - 1;
+		int i = hash(key) & mask;
+		while (indexKeys[i] != FREE) {
+			i = (i + 1) & mask;
+		}
+		indexKeys[i] = key;
+		indexPositions[i] = pos;
+	}
+
+	/**
+	 * Deletes an index slot, shifting back any later entries of the probe run so that no
+	 * tombstones are needed
+	 */
+	private void indexDelete(int hole) {
+		int mask = indexKeys.length - 1;
+		int j = hole;
+		while (true) {
+			j = (j + 1) & mask;
+			int k = indexKeys[j];
+			if (k == FREE) {
+				break;
+			}
+			int home = hash(k) & mask;
+			boolean stays = hole <= j ? (home > hole && home <= j) : (home > hole || home <= j);
+			if (!stays) {
+				indexKeys[hole] = k;
+				indexPositions[hole] = indexPositions[j];
+				hole = j;
+			}
+		}
+		indexKeys[hole] = FREE;
+	}
+
+	private void rehashIndex(int length) {
+		indexKeys = newKeys(length);
+		indexPositions = new int[length];
+		for (int pos = 0; pos < snapshotSize; pos++) {
+			indexInsert(snapshotKeys[pos], pos);
+		}
+	}
+
+	private static class LiveTable<V> {
+		private final int length;
+		private final AtomicIntegerArray keys;
+		private final AtomicReferenceArray<V> values;
+		/**
+		 * Slots with a key, including removed keys; guarded by the map lock
+		 */
+		private int used = 0;
+		private volatile int size = 0;
+
+		private LiveTable(int length) {
+			this.length = length;
+			this.keys = new AtomicIntegerArray(length);
+			this.values = new AtomicReferenceArray<V>(length);
+			for (int i = 0; i < length; i++) {
+				keys.lazySet(i, FREE);
+			}
+		}
+
+		private int find(int key) {
+			int mask = length - 1;
+			for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+				int k = keys.get(i);
+				if (k == key) {
+					return i;
+				} else if (k == FREE) {
+					return -1;
+				}
+			}
+		}
+
+		private int claim(int key, V value) {
+			int mask = length - 1;
+			int i = hash(key) & mask;
+			while (keys.get(i) != FREE) {
+				i = (i + 1) & mask;
+			}
+			// The value must be visible before the key, since readers probe by key
+			values.set(i, value);
+			keys.set(i, key);
+			return i;
+		}
+	}
+
+	private class SnapshotValues extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<V>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return next < snapshotSize;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public V next() {
+					if (next >= snapshotSize) {
+						throw new NoSuchElementException();
+					}
+					return (V) snapshotValues[next++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Snapshot is read only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return snapshotSize;
+		}
+	}
+
+	private class LiveValues extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			final LiveTable<V> t = live;
+			return new Iterator<V>() {
+				private int slot = -1;
+				private V next = advance();
+
+				private V advance() {
+					while (++slot < t.length) {
+						V value = t.values.get(slot);
+						if (value != null) {
+							return value;
+						}
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public V next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+					V value = next;
+					next = advance();
+					return value;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Use the map to remove live values");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return live.size;
+		}
+	}
+}
@@ -45,7 +45,7 @@ import org.spout.api.util.thread.annotation.SnapshotRead;
 /**
  * A snapshotable class for LinkedHashMaps
  */
-public class SnapshotableLinkedHashMap<K, V> implements Snapshotable {
+public class SnapshotableLinkedHashMap<K, V> implements DirtySnapshotable {
 	private final Map<K, V> snapshot = new LinkedHashMap<K, V>();
 	private final Map<K, V> unmodifySnapshot = Collections.unmodifiableMap(snapshot);
 	private final Collection<V> unmodifyValues = Collections.unmodifiableCollection(snapshot.values());
@@ -188,6 +188,11 @@ public class SnapshotableLinkedHashMap<K, V> implements Snapshotable {
 		return live.isEmpty();
 	}
 
+	@Override
+	public boolean isDirty() {
+		return !dirty.isEmpty() || dirtyListGenerated;
+	}
+
 	/**
 	 * Copies the next values to the snapshot
 	 */
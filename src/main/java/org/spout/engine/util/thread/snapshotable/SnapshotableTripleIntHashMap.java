@@ -45,7 +45,7 @@ import org.spout.engine.util.TripleInt;
  * <p/>
  * Removals from the Map occur at the next snapshot update.
  */
-public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
+public class SnapshotableTripleIntHashMap<V> implements DirtySnapshotable {
 	private final TInt21TripleObjectHashMap<V> live;
 	private final ConcurrentHashMap<TripleInt, Boolean> dirtyMap;
 	private final ConcurrentLinkedQueue<TripleInt> dirtyQueue;
@@ -233,6 +233,11 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 		return values;
 	}
 
+	@Override
+	public boolean isDirty() {
+		return !dirtyQueue.isEmpty();
+	}
+
 	/**
 	 * Copies the next values to the snapshot
 	 */
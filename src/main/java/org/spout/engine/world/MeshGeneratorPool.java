@@ -0,0 +1,205 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+
+import org.spout.engine.SpoutClient;
+import org.spout.engine.SpoutConfiguration;
+import org.spout.engine.mesh.ChunkMesh;
+import org.spout.engine.renderer.WorldRenderer;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+
+/**
+ * Builds chunk meshes for every region of the client on one bounded set of
+ * worker threads.<br>
+ * <br>
+ * Regions coalesce their models per chunk and hand the latest one to
+ * {@link #submit(SpoutRegion, SpoutChunkSnapshotModel)}. Jobs are taken in
+ * order of distance to the camera, in bands of one chunk, with rebuilds of
+ * chunks already on screen ahead of first builds in the same band and
+ * unload models ahead of everything since they are cheap and free memory.<br>
+ * <br>
+ * A job is dropped when it is taken if the region has since queued a newer
+ * model for the chunk or has stopped mesh generation.
+ */
+public final class MeshGeneratorPool {
+	private static final int THREADS;
+	private static final ConcurrentSkipListSet<MeshJob> queue = new ConcurrentSkipListSet<MeshJob>(new JobComparator());
+	private static final Object lock = new Object();
+	private static final AtomicBoolean started = new AtomicBoolean(false);
+
+	static {
+		int threads = SpoutConfiguration.MESH_THREADS.getInt();
+		if (threads <= 0) {
+			// Leave a core to the render thread
+			threads = Runtime.getRuntime().availableProcessors() - 1;
+		}
+		THREADS = Math.max(1, threads);
+	}
+
+	private MeshGeneratorPool() {
+	}
+
+	/**
+	 * Queues a model for meshing
+	 *
+	 * @param region the region that owns the chunk
+	 * @param model the model
+	 * @return the queued job
+	 */
+	public static MeshJob submit(SpoutRegion region, SpoutChunkSnapshotModel model) {
+		if (!started.get() && started.compareAndSet(false, true)) {
+			NamedThreadFactory factory = new NamedThreadFactory("Mesh Generation Thread", true);
+			for (int i = 0; i < THREADS; i++) {
+				factory.newThread(new Worker()).start();
+			}
+		}
+		MeshJob job = new MeshJob(region, model);
+		queue.add(job);
+		synchronized (lock) {
+			lock.notify();
+		}
+		return job;
+	}
+
+	/**
+	 * Removes a job that has not been taken yet
+	 *
+	 * @param job the job
+	 * @return true if the job was still queued
+	 */
+	public static boolean remove(MeshJob job) {
+		return queue.remove(job);
+	}
+
+	/**
+	 * Gets the number of jobs waiting for a worker
+	 *
+	 * @return the backlog
+	 */
+	public static int getBacklog() {
+		return queue.size();
+	}
+
+	private static MeshJob take() throws InterruptedException {
+		MeshJob job = queue.pollFirst();
+		if (job == null) {
+			synchronized (lock) {
+				while ((job = queue.pollFirst()) == null) {
+					lock.wait();
+				}
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * A model waiting to be meshed
+	 */
+	public static final class MeshJob {
+		private final SpoutRegion region;
+		private final SpoutChunkSnapshotModel model;
+		private final int band;
+
+		private MeshJob(SpoutRegion region, SpoutChunkSnapshotModel model) {
+			this.region = region;
+			this.model = model;
+			this.band = model.getDistance() >> 4;
+		}
+
+		public SpoutChunkSnapshotModel getModel() {
+			return model;
+		}
+
+		public SpoutRegion getRegion() {
+			return region;
+		}
+	}
+
+	private static class JobComparator implements Comparator<MeshJob> {
+		@Override
+		public int compare(MeshJob a, MeshJob b) {
+			boolean unloadA = a.model.isUnload();
+			if (unloadA != b.model.isUnload()) {
+				return unloadA ? -1 : 1;
+			}
+			if (a.band != b.band) {
+				return a.band < b.band ? -1 : 1;
+			}
+			boolean firstA = a.model.isFirst();
+			if (firstA != b.model.isFirst()) {
+				return firstA ? 1 : -1;
+			}
+			return a.model.compareTo(b.model);
+		}
+	}
+
+	private static class Worker implements Runnable {
+		private WorldRenderer renderer = null;
+
+		@Override
+		public void run() {
+			//Sleep while the renderer doesn't exist
+			while (renderer == null) {
+				if (((SpoutClient) Spout.getEngine()).getRenderer() != null) {
+					renderer = ((SpoutClient) Spout.getEngine()).getRenderer().getWorldRenderer();
+				}
+				if (renderer == null) {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException ie) {
+						return;
+					}
+				}
+			}
+			while (true) {
+				MeshJob job;
+				try {
+					job = take();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				if (!job.region.takeFromRenderQueue(job)) {
+					continue;
+				}
+				try {
+					ChunkMesh mesh = new ChunkMesh(job.model);
+					mesh.update();
+					renderer.addMeshToBatchQueue(mesh);
+				} catch (Exception e) {
+					Spout.getLogger().log(Level.SEVERE, "Error while meshing chunk " + job.model.getX() + ", " + job.model.getY() + ", " + job.model.getZ(), e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+import org.spout.engine.SpoutConfiguration;
+import org.spout.engine.scheduler.SpoutScheduler;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+
+/**
+ * Runs chunk population for a region within a time budget per tick.<br>
+ * <br>
+ * Chunks are taken from the region's priority queue first and then from its regular queue, and are
+ * populated one at a time.<br>
+ * <br>
+ * If parallel population is enabled in the configuration, chunks which are at least
+ * {@link #PARALLEL_SPACING} chunks apart on at least one axis are populated at the same time on a shared
+ * pool. This is only safe when every populator only touches the chunk being populated and its direct
+ * neighbours, which plugin populators are not required to do, so it is off by default.
+ */
+public class PopulationScheduler {
+	/**
+	 * The minimum distance, in chunks, between two chunks populated at the same time
+	 */
+	public static final int PARALLEL_SPACING = 3;
+	private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private static final ExecutorService pool = Executors.newFixedThreadPool(POOL_SIZE, new NamedThreadFactory("PopulationScheduler", true));
+	private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(SpoutConfiguration.POPULATION_BUDGET.getLong());
+	private static final boolean PARALLEL = SpoutConfiguration.PARALLEL_POPULATION.getBoolean();
+	private final SpoutRegion region;
+	private final SpoutScheduler scheduler;
+	private final AtomicInteger backlog = new AtomicInteger();
+	private final AtomicLong populated = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	public PopulationScheduler(SpoutRegion region, SpoutScheduler scheduler) {
+		this.region = region;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Populates queued chunks until the queues are empty or the budget for this tick is used up
+	 */
+	public void run() {
+		final long start = System.nanoTime();
+		// Leftover tick time may be used, but never more than the configured budget
+		final long budget = Math.min(BUDGET, TimeUnit.MILLISECONDS.toNanos(scheduler.getRemainingTickTime()));
+		final List<SpoutChunk> batch = new ArrayList<SpoutChunk>(POOL_SIZE);
+		final List<SpoutChunk> serial = new ArrayList<SpoutChunk>();
+		while (System.nanoTime() - start < budget && !scheduler.isServerOverloaded()) {
+			SpoutChunk next = poll();
+			if (next == null) {
+				break;
+			}
+			if (!next.isLoaded()) {
+				// Unloaded while queued, it still has to leave the backlog
+				if (next.takePopulationQueuedTime() != 0) {
+					backlog.decrementAndGet();
+				}
+				continue;
+			}
+			if (!PARALLEL) {
+				populate(next);
+			} else if (conflicts(batch, next)) {
+				serial.add(next);
+			} else {
+				batch.add(next);
+			}
+			if (batch.size() == POOL_SIZE) {
+				runBatch(batch);
+				runSerial(serial);
+			}
+		}
+		runBatch(batch);
+		runSerial(serial);
+	}
+
+	/**
+	 * Called when a chunk in this region is first queued for population
+	 */
+	public void onQueued() {
+		backlog.incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of chunks waiting to be populated
+	 * @return the backlog
+	 */
+	public int getBacklog() {
+		return backlog.get();
+	}
+
+	/**
+	 * Gets the number of chunks populated by this scheduler
+	 * @return the number of chunks
+	 */
+	public long getPopulatedCount() {
+		return populated.get();
+	}
+
+	/**
+	 * Gets the average time between a chunk being queued and it being populated
+	 * @return the average latency in milliseconds
+	 */
+	public float getAverageLatency() {
+		long count = populated.get();
+		return count == 0 ? 0 : (totalLatency.get() / (float) count) / 1000000F;
+	}
+
+	/**
+	 * Gets the longest time between a chunk being queued and it being populated
+	 * @return the maximum latency in milliseconds
+	 */
+	public float getMaxLatency() {
+		return maxLatency.get() / 1000000F;
+	}
+
+	private SpoutChunk poll() {
+		SpoutChunk chunk = region.populationPriorityQueue.poll();
+		if (chunk == null) {
+			chunk = region.populationQueue.poll();
+		}
+		return chunk;
+	}
+
+	/**
+	 * Checks if a chunk is closer than {@link #PARALLEL_SPACING} chunks on every axis to a chunk in the batch
+	 */
+	private static boolean conflicts(List<SpoutChunk> batch, SpoutChunk chunk) {
+		for (SpoutChunk other : batch) {
+			if (Math.abs(other.getX() - chunk.getX()) < PARALLEL_SPACING && Math.abs(other.getY() - chunk.getY()) < PARALLEL_SPACING && Math.abs(other.getZ() - chunk.getZ()) < PARALLEL_SPACING) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void runBatch(List<SpoutChunk> batch) {
+		if (batch.size() == 1) {
+			populate(batch.get(0));
+		} else if (!batch.isEmpty()) {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batch.size());
+			for (final SpoutChunk chunk : batch) {
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						populate(chunk);
+						return null;
+					}
+				});
+			}
+			try {
+				List<Future<Void>> futures = pool.invokeAll(tasks);
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						futures.get(i).get();
+					} catch (ExecutionException e) {
+						Spout.getLogger().log(Level.SEVERE, "Exception while populating " + batch.get(i) + " in " + region, e.getCause());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		batch.clear();
+	}
+
+	private void runSerial(List<SpoutChunk> serial) {
+		for (SpoutChunk chunk : serial) {
+			populate(chunk);
+		}
+		serial.clear();
+	}
+
+	private void populate(SpoutChunk chunk) {
+		long queued = chunk.takePopulationQueuedTime();
+		if (queued != 0) {
+			backlog.decrementAndGet();
+		}
+		if (chunk.isLoaded() && chunk.populate() && queued != 0) {
+			long latency = System.nanoTime() - queued;
+			populated.incrementAndGet();
+			totalLatency.addAndGet(latency);
+			long max;
+			while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) {
+			}
+		}
+	}
+}
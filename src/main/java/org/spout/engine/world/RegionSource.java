@@ -90,7 +90,7 @@ public class RegionSource implements Iterable<Region> {
 								throw new IllegalStateException("Failed to de-register the region from the scheduler");
 							}
 							if (Spout.getEngine().getPlatform() == Platform.CLIENT) {
-								r.stopMeshGeneratorThread();
+								r.stopMeshGeneration();
 							}
 							TaskManager tm = Spout.getEngine().getParallelTaskManager();
 							SpoutParallelTaskManager ptm = (SpoutParallelTaskManager)tm;
@@ -160,10 +160,6 @@ public class RegionSource implements Iterable<Region> {
 			return current;
 		}
 		
-		if (Spout.getEngine().getPlatform() == Platform.CLIENT) {
-			region.startMeshGeneratorThread();
-		}
-
 		int threshold = warnThreshold.get();
 		if (regionsLoaded.getAndIncrement() > threshold) {
 			Spout.getLogger().info("Warning: number of spout regions exceeds " + threshold + " when creating (" +
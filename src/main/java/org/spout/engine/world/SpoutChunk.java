@@ -251,6 +251,15 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	private final AtomicBoolean popObserver = new AtomicBoolean(false);
 	private final AtomicInteger autosaveTicks = new AtomicInteger(0);
 	private final ChunkSetQueueElement<SpoutChunk> unloadQueueElement;
+	/**
+	 * Incremented whenever a block in this chunk changes
+	 */
+	private final AtomicInteger blockVersion = new AtomicInteger();
+	private final AtomicInteger lightVersion = new AtomicInteger();
+	/**
+	 * The time at which this chunk was queued for population, or 0 when not queued
+	 */
+	private final AtomicLong populationQueuedTime = new AtomicLong();
 	private final ChunkSetQueueElement<SpoutChunk> populationQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> populationPriorityQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> chunkObserversDirtyQueueElement;
@@ -1265,6 +1274,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	public void setLightDirty(boolean dirty) {
 		lightDirty.set(dirty);
 		if (dirty) { //To send to the renderer
+			lightVersion.incrementAndGet();
 			queueDirty();
 		}
 	}
@@ -1299,14 +1309,32 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	}
 
 	public void unlockStore() {
+		blockVersion.incrementAndGet();
 		blockStore.writeUnlock();
 	}
 
+	/**
+	 * Gets a counter which changes whenever a block in this chunk changes, for caches of block derived data
+	 * @return the block version
+	 */
+	public int getBlockVersion() {
+		return blockVersion.get();
+	}
+
+	/**
+	 * Gets a counter which changes whenever the block or sky light of this chunk changes
+	 * @return the light version
+	 */
+	public int getLightVersion() {
+		return lightVersion.get();
+	}
+
 	public boolean tryLockStore() {
 		return blockStore.tryWriteLock();
 	}
 
 	private void notifyLightChange() {
+		lightVersion.incrementAndGet();
 		if (this.lightingCounter.getAndSet(0) == -1) {
 			this.parentRegion.reportChunkLightDirty(this.getX(), this.getY(), this.getZ());
 		}
@@ -1728,6 +1756,9 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	}
 
 	public void queueForPopulation(boolean priority) {
+		if (populationQueuedTime.compareAndSet(0, System.nanoTime())) {
+			getRegion().getPopulationScheduler().onQueued();
+		}
 		if (!priority) {
 			populationQueueElement.add();
 		} else {
@@ -1735,6 +1766,14 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 		}
 	}
 
+	/**
+	 * Clears the time at which this chunk was queued for population
+	 * @return the queue time in nanoseconds, or 0 if the chunk was not queued
+	 */
+	public long takePopulationQueuedTime() {
+		return populationQueuedTime.getAndSet(0);
+	}
+
 	@Override
 	public void initLighting() {
 		this.isInitializingLighting.set(true);
@@ -2143,6 +2182,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	}
 
 	private void blockChanged(int x, int y, int z, BlockMaterial newMaterial, short newData, BlockMaterial oldMaterial, short oldData, Cause<?> cause) {
+		blockVersion.incrementAndGet();
 		// Add chunk to regions's dirty queue
 		queueDirty();
 
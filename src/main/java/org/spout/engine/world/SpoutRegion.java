@@ -41,7 +41,6 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -109,14 +108,16 @@ import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.entity.EntityManager;
 import org.spout.engine.entity.SpoutEntity;
 import org.spout.engine.entity.SpoutPlayer;
+import org.spout.engine.entity.component.SpoutSceneComponent;
+import org.spout.engine.entity.component.SpoutSceneComponent.GhostHolder;
 import org.spout.engine.filesystem.ChunkDataForRegion;
 import org.spout.engine.filesystem.versioned.ChunkFiles;
-import org.spout.engine.mesh.ChunkMesh;
 import org.spout.engine.renderer.WorldRenderer;
 import org.spout.engine.scheduler.SpoutScheduler;
 import org.spout.engine.scheduler.SpoutTaskManager;
 import org.spout.engine.util.thread.AsyncManager;
 import org.spout.engine.util.thread.snapshotable.SnapshotManager;
+import org.spout.engine.world.collision.CollisionListeners;
 import org.spout.engine.world.collision.RegionShape;
 import org.spout.engine.world.collision.SpoutPhysicsWorld;
 import org.spout.engine.world.dynamic.DynamicBlockUpdate;
@@ -140,6 +141,7 @@ import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
 import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
 import com.bulletphysics.linearmath.DefaultMotionState;
 import com.bulletphysics.linearmath.Transform;
+import com.bulletphysics.util.ObjectArrayList;
 import org.spout.api.math.GenericMath;
 import org.spout.api.math.VectorMath;
 
@@ -153,11 +155,6 @@ public class SpoutRegion extends Region implements AsyncManager {
 	
 	@SuppressWarnings("unchecked")
 	public AtomicReference<SpoutChunk>[][][] chunks = new AtomicReference[CHUNKS.SIZE][CHUNKS.SIZE][CHUNKS.SIZE];
-	/**
-	 * The maximum number of chunks that will be processed for population each
-	 * tick.
-	 */
-	private static final int POPULATE_PER_TICK = 20;
 	/**
 	 * How many ticks to delay sending the entire chunk after lighting calculation has completed
 	 */
@@ -179,6 +176,24 @@ public class SpoutRegion extends Region implements AsyncManager {
 	 */
 	private final BAAWrapper chunkStore;
 	private final Queue<SpoutChunkSnapshotFuture> snapshotQueue = new ConcurrentLinkedQueue<SpoutChunkSnapshotFuture>();
+	/**
+	 * Chunks received from the server which were decoded off the tick thread, waiting to be added
+	 */
+	private final Queue<DecodedChunk> decodedChunkQueue = new ConcurrentLinkedQueue<DecodedChunk>();
+	/**
+	 * Changes to the simulation staged by scene components, applied before each physics step
+	 */
+	private final Queue<Runnable> physicsUpdates = new ConcurrentLinkedQueue<Runnable>();
+	/**
+	 * Scratch vector for reading contact points, only used while stepping physics
+	 */
+	private final Vector3f contactScratch = new Vector3f();
+	private final Vector3f ghostMin = new Vector3f();
+	private final Vector3f ghostMax = new Vector3f();
+	/**
+	 * Supplies the voxel shapes of this region to the simulation
+	 */
+	private final SpoutPhysicsWorld physicsWorld;
 	
 	protected SetQueue<SpoutChunk> unloadQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	public static final byte POPULATE_CHUNK_MARGIN = 1;
@@ -199,8 +214,8 @@ public class SpoutRegion extends Region implements AsyncManager {
 	private final AtomicBoolean generated = new AtomicBoolean(false);
 	private final AtomicBoolean[][] generatedColumns = new AtomicBoolean[CHUNKS.SIZE][CHUNKS.SIZE];
 	private final SpoutTaskManager taskManager;
-	private final List<Thread> meshThread;
 	private final SpoutScheduler scheduler;
+	private final PopulationScheduler populationScheduler;
 	private final LinkedHashMap<SpoutPlayer, TByteTripleHashSet> observers = new LinkedHashMap<SpoutPlayer, TByteTripleHashSet>();
 	protected final SetQueue<SpoutChunk> chunkObserversDirtyQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	protected final SetQueue<SpoutChunk> localPhysicsChunkQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
@@ -211,8 +226,8 @@ public class SpoutRegion extends Region implements AsyncManager {
 	private List<DynamicBlockUpdate> multiRegionUpdates = null;
 	private boolean renderQueueEnabled = false;
 
-	private final TByteTripleObjectHashMap<SpoutChunkSnapshotModel> renderChunkQueued = new TByteTripleObjectHashMap<SpoutChunkSnapshotModel>();
-	private final ConcurrentSkipListSet<SpoutChunkSnapshotModel> renderChunkQueue = new ConcurrentSkipListSet<SpoutChunkSnapshotModel>();
+	private final TByteTripleObjectHashMap<MeshGeneratorPool.MeshJob> renderChunkQueued = new TByteTripleObjectHashMap<MeshGeneratorPool.MeshJob>();
+	private volatile boolean meshGenerationStopped = false;
 
 	private final AtomicReference<SpoutRegion>[][][] neighbours;
 
@@ -234,15 +249,6 @@ public class SpoutRegion extends Region implements AsyncManager {
 		int zz = GenericMath.mod(getZ(), 3);
 		updateSequence = (xx * 9) + (yy * 3) + zz;
 
-		if (Spout.getPlatform() == Platform.CLIENT) {
-			meshThread = new ArrayList<Thread>();
-			for(int i = 0; i < 1; i++ ){//TODO : Make a option to choice the number of thread to make mesh
-				meshThread.add(new MeshGeneratorThread());
-			}
-		} else {
-			meshThread = null;
-		}
-
 		dynamicBlockTree = new DynamicBlockUpdateTree(this);
 
 		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
@@ -276,6 +282,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 		this.chunkStore = world.getRegionFile(getX(), getY(), getZ());
 		taskManager = new SpoutTaskManager(world.getEngine().getScheduler(), null, this, world.getAge());
 		scheduler = (SpoutScheduler) (Spout.getEngine().getScheduler());
+		populationScheduler = new PopulationScheduler(this, scheduler);
 		
 		scheduler.addAsyncManager(this);
 
@@ -288,8 +295,8 @@ public class SpoutRegion extends Region implements AsyncManager {
 		simulation = new DiscreteDynamicsWorld(dispatcher, broadphase, solver, configuration);
 		simulation.setGravity(new Vector3f(0, -9.81F, 0));
 		simulation.getSolverInfo().splitImpulse = true;
-		final SpoutPhysicsWorld physicsInfo = new SpoutPhysicsWorld(this);
-		final VoxelWorldShape simulationShape = new RegionShape(physicsInfo, this);
+		physicsWorld = new SpoutPhysicsWorld(this);
+		final VoxelWorldShape simulationShape = new RegionShape(physicsWorld, this);
 		final Matrix3f rot = new Matrix3f();
 		rot.setIdentity();
 		final DefaultMotionState regionMotionState = new DefaultMotionState(new Transform(new Matrix4f(rot, new Vector3f(0, 0, 0), 1.0f)));
@@ -308,20 +315,21 @@ public class SpoutRegion extends Region implements AsyncManager {
 		return lock;
 	}
 
-	public void startMeshGeneratorThread() {
-		if (meshThread != null) {
-			for(Thread thread : meshThread){
-				thread.start();
-			}
-		}
+	/**
+	 * Queues a change to the simulation, which is applied before the next physics step while the
+	 * physics lock is held
+	 * @param update the change
+	 */
+	public void queuePhysicsUpdate(Runnable update) {
+		physicsUpdates.add(update);
 	}
 
-	public void stopMeshGeneratorThread() {
-		if (meshThread != null) {
-			for(Thread thread : meshThread){
-				thread.interrupt();
-			}
-		}
+	/**
+	 * Stops meshing the chunks of this region. Queued unloads are still sent to the renderer, other
+	 * queued models are dropped.
+	 */
+	public void stopMeshGeneration() {
+		meshGenerationStopped = true;
 	}
 
 	@Override
@@ -420,7 +428,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 			if (generated.get()) {
 				return;
 			}
-			WorldGeneratorThread.submitRegion(this);
+			WorldGeneratorThreadPool.submitRegion(this);
 			int cx = getChunkX();
 			int cy = getChunkY();
 			int cz = getChunkZ();
@@ -482,13 +490,22 @@ public class SpoutRegion extends Region implements AsyncManager {
 		}
 	}
 	
-	protected void copyChunksFromBufferIfNotGenerated(SpoutWorld world, CuboidBlockMaterialBuffer buffer, int cx, int cy, int cz) {
+	/**
+	 * Creates a chunk from part of a generated buffer, without adding it to the region
+	 */
+	protected SpoutChunk createChunkFromBuffer(SpoutWorld world, CuboidBlockMaterialBuffer buffer, int cx, int cy, int cz) {
 		final CuboidBlockMaterialBuffer chunk = new CuboidBlockMaterialBuffer(cx << Chunk.BLOCKS.BITS, cy << Chunk.BLOCKS.BITS, cz << Chunk.BLOCKS.BITS, Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE);
 		chunk.write(buffer);
-		SpoutChunk newChunk = new SpoutChunk(world, this, cx, cy, cz, chunk.getRawId(), chunk.getRawData(), null);
-		cx &= CHUNKS.MASK;
-		cy &= CHUNKS.MASK;
-		cz &= CHUNKS.MASK;
+		return new SpoutChunk(world, this, cx, cy, cz, chunk.getRawId(), chunk.getRawData(), null);
+	}
+
+	/**
+	 * Adds a chunk created by {@link #createChunkFromBuffer}, unless a chunk was already generated or loaded at its position
+	 */
+	protected void setGeneratedChunkIfNotGenerated(SpoutChunk newChunk) {
+		int cx = newChunk.getX() & CHUNKS.MASK;
+		int cy = newChunk.getY() & CHUNKS.MASK;
+		int cz = newChunk.getZ() & CHUNKS.MASK;
 		SpoutChunk currentChunk = setChunkIfNotGenerated(newChunk, cx, cy, cz, null, true);
 		if (currentChunk != newChunk) {
 			//Spout.getLogger().info("Warning: Unable to set generated chunk, new Chunk " + newChunk + " chunk in memory " + currentChunk);
@@ -557,47 +574,34 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}
 
 	private void addToRenderQueue(SpoutChunkSnapshotModel model){
-		SpoutChunkSnapshotModel previous;
 		synchronized (renderChunkQueued) {
-			previous = renderChunkQueued.put((byte) model.getX(), (byte) model.getY(), (byte) model.getZ(), model);
+			MeshGeneratorPool.MeshJob previous = renderChunkQueued.get((byte) model.getX(), (byte) model.getY(), (byte) model.getZ());
 			if(previous != null){
-				boolean removed = renderChunkQueue.remove(previous);
-				model.addDirty(previous, removed);
+				boolean removed = MeshGeneratorPool.remove(previous);
+				model.addDirty(previous.getModel(), removed);
 				if (model.isUnload() && model.isFirst()) {
-					if (renderChunkQueued.remove((byte) model.getX(), (byte) model.getY(), (byte) model.getZ()) != model) {
-						throw new IllegalStateException("Removed model does not match put model");
-					} else {
-						return;
-					}
+					renderChunkQueued.remove((byte) model.getX(), (byte) model.getY(), (byte) model.getZ());
+					return;
 				}
 			}
-		}
-
-		renderChunkQueue.add(model);
-
-		synchronized (renderChunkQueued) {
-			renderChunkQueued.notify();
+			renderChunkQueued.put((byte) model.getX(), (byte) model.getY(), (byte) model.getZ(), MeshGeneratorPool.submit(this, model));
 		}
 	}
 
-	private SpoutChunkSnapshotModel removeFromRenderQueue() throws InterruptedException {
-		SpoutChunkSnapshotModel model = renderChunkQueue.pollFirst();
-		if (model == null) {
-			synchronized (renderChunkQueued) {
-				while (model == null) {
-					model = renderChunkQueue.pollFirst();
-					if (model == null) {
-						renderChunkQueued.wait();
-					}
-				}
-			}
-		}
+	/**
+	 * Called by the mesh workers when they take a job from the pool
+	 * @param job the job
+	 * @return true if the job should be meshed, false if it is stale
+	 */
+	boolean takeFromRenderQueue(MeshGeneratorPool.MeshJob job) {
+		SpoutChunkSnapshotModel model = job.getModel();
 		synchronized (renderChunkQueued) {
-			if (renderChunkQueued.get((byte) model.getX(), (byte) model.getY(), (byte) model.getZ()) == model) {
-				renderChunkQueued.remove((byte) model.getX(), (byte) model.getY(), (byte) model.getZ());
+			if (renderChunkQueued.get((byte) model.getX(), (byte) model.getY(), (byte) model.getZ()) != job) {
+				return false;
 			}
+			renderChunkQueued.remove((byte) model.getX(), (byte) model.getY(), (byte) model.getZ());
 		}
-		return model;
+		return model.isUnload() || !meshGenerationStopped;
 	}
 
 	/**
@@ -645,6 +649,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 			}
 
 			removeDynamicBlockUpdates(currentChunk);
+			physicsWorld.removeChunk(currentChunk);
 
 			if (num == 0) {
 				return true;
@@ -893,24 +898,15 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}
 
 	private void updatePopulation() {
-		for (int i = 0; i < POPULATE_PER_TICK && !scheduler.isServerOverloaded(); i++) {
-			SpoutChunk toPopulate = populationPriorityQueue.poll();
-			if (toPopulate == null) {
-				toPopulate = populationQueue.poll();
-				if (toPopulate == null) {
-					break;
-				}
-			}
-			if (toPopulate.isLoaded()) {
-				if (toPopulate.populate()) {
-					if (scheduler.isServerOverloaded()) {
-						break;
-					}
-					continue;
-				}
-			}
-			i--;
-		}
+		populationScheduler.run();
+	}
+
+	/**
+	 * Gets the scheduler which populates the chunks of this region
+	 * @return the population scheduler
+	 */
+	public PopulationScheduler getPopulationScheduler() {
+		return populationScheduler;
 	}
 
 	private void unloadChunks() {
@@ -938,6 +934,39 @@ public class SpoutRegion extends Region implements AsyncManager {
 
 	private static final Object logLock = new Object();
 
+	private static void notifyCollided(Entity entity, Point self, Point other, Entity collider) {
+		for (Component component : entity.values()) {
+			if (component instanceof EntityComponent) {
+				((EntityComponent) component).onCollided(self, other, collider);
+			}
+		}
+	}
+
+	private static void notifyCollided(Entity entity, Point self, Point other, Block collider) {
+		for (Component component : entity.values()) {
+			if (component instanceof EntityComponent) {
+				((EntityComponent) component).onCollided(self, other, collider);
+			}
+		}
+	}
+
+	/**
+	 * Publishes the state of every entity body after a step, so the scene components can read it without locking,
+	 * and updates the ghosts of bodies near the region borders
+	 */
+	private void publishPhysicsStates() {
+		final ObjectArrayList<CollisionObject> objects = simulation.getCollisionObjectArray();
+		for (int i = 0; i < objects.size(); i++) {
+			//Ghosts hold a GhostHolder, they are published by the region simulating their entity
+			final Object holder = objects.getQuick(i).getUserPointer();
+			if (holder instanceof Entity) {
+				final SpoutSceneComponent scene = (SpoutSceneComponent) ((Entity) holder).getScene();
+				scene.publishPhysicsState();
+				scene.updateGhosts(this, ghostMin, ghostMax);
+			}
+		}
+	}
+
 	/**
 	 * Updates CollisionObjects in this region and adds/removes them from the simulation. 
 	 * Steps simulation forward and finally alerts the API in components.
@@ -946,8 +975,14 @@ public class SpoutRegion extends Region implements AsyncManager {
 	private void updateDynamics(float dt) {
 		try {
 			lock.writeLock().lock();
+			//Apply changes staged since the last step
+			Runnable update;
+			while ((update = physicsUpdates.poll()) != null) {
+				update.run();
+			}
 			//Simulate physics
 			simulation.stepSimulation(dt, 2);
+			publishPhysicsStates();
 			final Dispatcher dispatcher = simulation.getDispatcher();
 			int manifolds = dispatcher.getNumManifolds();
 			for (int i = 0; i < manifolds; i++) {
@@ -959,73 +994,97 @@ public class SpoutRegion extends Region implements AsyncManager {
 				}
 				Object holderA = ((CollisionObject) colliderRawA).getUserPointer();
 				Object holderB = ((CollisionObject) colliderRawB).getUserPointer();
-				int contacts = contact.getNumContacts();
+				//A ghost stands for an entity simulated by a neighbouring region. Contacts with bodies which are
+				//ghosts there too are reported by that region, only contacts with this region's blocks are not.
+				final boolean ghostA = holderA instanceof GhostHolder;
+				final boolean ghostB = holderB instanceof GhostHolder;
+				if (ghostA) {
+					if (ghostB) {
+						continue;
+					}
+					holderA = ((GhostHolder) holderA).getEntity();
+				} else if (ghostB) {
+					holderB = ((GhostHolder) holderB).getEntity();
+				}
+				if (holderA == holderB) {
+					continue;
+				}
+				//Skip pairs where nobody listens, before touching the contact points
+				final boolean notifyA, notifyB;
+				if (holderA instanceof Entity) {
+					if (((Entity) holderA).isRemoved()) {
+						continue;
+					}
+					notifyA = (!ghostA || holderB instanceof Block) && CollisionListeners.hasListener((Entity) holderA);
+				} else if (holderA instanceof Block) {
+					notifyA = CollisionListeners.hasListener(((Block) holderA).getMaterial());
+				} else {
+					continue;
+				}
+				if (holderB instanceof Entity) {
+					if (((Entity) holderB).isRemoved()) {
+						continue;
+					}
+					notifyB = (!ghostB || holderA instanceof Block) && CollisionListeners.hasListener((Entity) holderB);
+				} else if (holderB instanceof Block) {
+					//Block -> Block contacts are not reported
+					if (holderA instanceof Block) {
+						continue;
+					}
+					notifyB = CollisionListeners.hasListener(((Block) holderB).getMaterial());
+				} else {
+					continue;
+				}
+				if (!notifyA && !notifyB) {
+					continue;
+				}
 
-				//Loop through the contact points
+				//Report the deepest contact point of the pair once, rather than every point
+				//Positive distances are no longer in contact, so they are not resolved to the API
+				ManifoldPoint deepest = null;
+				int contacts = contact.getNumContacts();
 				for (int j = 0; j < contacts; j++) {
-					//Grab a contact point
 					final ManifoldPoint bulletPoint = contact.getContactPoint(j);
-					//Contact point is no longer valid as negative values = still within contact so lets not resolve that to the API
-					if (bulletPoint.getDistance() > 0f) {
-						continue;
+					if (bulletPoint.getDistance() <= 0f && (deepest == null || bulletPoint.getDistance() < deepest.getDistance())) {
+						deepest = bulletPoint;
 					}
-					//3D position where colliderA contacted colliderB
-					Point contactPointA = new Point(VectorMath.toVector3(bulletPoint.getPositionWorldOnA(new Vector3f())), getWorld());
-					//3D position where colliderB contacted colliderA
-					Point contactPointB = new Point(VectorMath.toVector3(bulletPoint.getPositionWorldOnB(new Vector3f())), getWorld());
-
-					//Resolve Entity -> Entity Collisions
-					if (holderA instanceof Entity) {
-						//Entity was removed before the contact point could be resolved, break
-						if (((Entity) holderA).isRemoved()) {
-							break;
-						}
+				}
+				if (deepest == null) {
+					continue;
+				}
+				//3D position where colliderA contacted colliderB
+				Point contactPointA = new Point(VectorMath.toVector3(deepest.getPositionWorldOnA(contactScratch)), getWorld());
+				//3D position where colliderB contacted colliderA
+				Point contactPointB = new Point(VectorMath.toVector3(deepest.getPositionWorldOnB(contactScratch)), getWorld());
+
+				if (holderA instanceof Entity) {
+					if (holderB instanceof Entity) {
 						//HolderA: Entity
 						//HolderB: Entity
-						if (holderB instanceof Entity) {
-							//Entity was removed before the contact point could be resolved, break
-							if (((Entity) holderB).isRemoved()) {
-								break;
-							}
-							//Call onCollide for colliderA's EntityComponents
-							for (Component component : ((Entity) holderA).values()) {
-								if (component instanceof EntityComponent) {
-									((EntityComponent) component).onCollided(contactPointA, contactPointB, (Entity) holderB);
-								}
-							}
-							//Call onCollide for colliderB's EntityComponents
-							for (Component component : ((Entity) holderB).values()) {
-								if (component instanceof EntityComponent) {
-									((EntityComponent) component).onCollided(contactPointB, contactPointA, (Entity) holderA);
-								}
-							}
+						if (notifyA) {
+							notifyCollided((Entity) holderA, contactPointA, contactPointB, (Entity) holderB);
+						}
+						if (notifyB) {
+							notifyCollided((Entity) holderB, contactPointB, contactPointA, (Entity) holderA);
+						}
+					} else {
 						//HolderA: Entity
 						//HolderB: Block
-						} else if (holderB instanceof Block) {
-							//Call onCollide for colliderA's EntityComponents
-							for (Component component : ((Entity) holderA).values()) {
-								if (component instanceof EntityComponent) {
-									((EntityComponent) component).onCollided(contactPointA, contactPointB, (Block) holderB);
-								}
-							}
+						if (notifyA) {
+							notifyCollided((Entity) holderA, contactPointA, contactPointB, (Block) holderB);
+						}
+						if (notifyB) {
 							((Block) holderB).getMaterial().onCollided(contactPointB, contactPointA, (Entity) holderA);
 						}
+					}
+				} else {
 					//HolderA: Block
 					//HolderB: Entity
-					} else if (holderA instanceof Block) {
-						if (holderB instanceof Entity) {
-							//Entity was removed before the contact point could be resolved, break
-							if (((Entity) holderB).isRemoved()) {
-								break;
-							}
-							((Block) holderA).getMaterial().onCollided(contactPointA, contactPointB, (Entity) holderB);
-							//Call onCollide for colliderB's EntityComponents
-							for (Component component : ((Entity) holderB).values()) {
-								if (component instanceof EntityComponent) {
-									((EntityComponent) component).onCollided(contactPointB, contactPointA, (Block) holderA);
-								}
-							}
-						}
+					if (notifyA) {
+						((Block) holderA).getMaterial().onCollided(contactPointA, contactPointB, (Entity) holderB);
+					}
+					if (notifyB) {
+						notifyCollided((Entity) holderB, contactPointB, contactPointA, (Block) holderA);
 					}
 				}
 			}
@@ -1042,6 +1101,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 		final float dt = delta / 1000f;
 		switch (stage) {
 		case 0: {
+			addDecodedChunks();
 			taskManager.heartbeat(delta);
 			updateAutosave();
 			updateBlockComponents(dt);
@@ -1247,7 +1307,10 @@ public class SpoutRegion extends Region implements AsyncManager {
 			snapshotFuture.run();
 		}
 
-		renderSnapshotCacheBoth.clear();
+		if (++renderSnapshotTicks >= RENDER_SNAPSHOT_MAX_AGE) {
+			renderSnapshotTicks = 0;
+			renderSnapshotCache.clear();
+		}
 		renderSnapshotCacheLight.clear();
 		renderSnapshotCacheBlock.clear();
 
@@ -1270,7 +1333,15 @@ public class SpoutRegion extends Region implements AsyncManager {
 		return this.renderChunkQueue;
 	}*/
 
-	private TInt21TripleObjectHashMap<SpoutChunkSnapshot> renderSnapshotCacheBoth = new TInt21TripleObjectHashMap<SpoutChunkSnapshot>();
+	/**
+	 * Render snapshots shared by the models of neighbouring chunks, reused across ticks until the
+	 * chunk's block or light version changes. The whole cache is dropped every
+	 * {@link #RENDER_SNAPSHOT_MAX_AGE} ticks, which also bounds how long changes to lighting manager
+	 * buffers, which are not versioned, can go unseen.
+	 */
+	private final TInt21TripleObjectHashMap<RenderSnapshot> renderSnapshotCache = new TInt21TripleObjectHashMap<RenderSnapshot>();
+	private static final int RENDER_SNAPSHOT_MAX_AGE = 20;
+	private int renderSnapshotTicks = 0;
 	private TInt21TripleObjectHashMap<SpoutChunkSnapshot> renderSnapshotCacheLight = new TInt21TripleObjectHashMap<SpoutChunkSnapshot>();
 	private TInt21TripleObjectHashMap<SpoutChunkSnapshot> renderSnapshotCacheBlock = new TInt21TripleObjectHashMap<SpoutChunkSnapshot>();
 
@@ -1375,22 +1446,41 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}*/
 
 	private ChunkSnapshot getRenderSnapshot(SpoutChunk cRef, int cx, int cy, int cz) {
-		SpoutChunkSnapshot snapshot = renderSnapshotCacheBoth.get(cx, cy, cz);
-		if (snapshot != null) {
-			return snapshot;
-		}
-
 		SpoutChunk c = getLocalChunk(cx, cy, cz, LoadOption.NO_LOAD);
 
 		if (c == null) {
 			//Spout.getLogger().info("Getting " + cx + ", " + cy + ", " + cz + ": base = " + cRef.getBase().toBlockString() + " region base " + getBase().toBlockString());
 			return null;
-		} else {
-			snapshot = c.getSnapshot(SnapshotType.BOTH, EntityType.NO_ENTITIES, ExtraData.NO_EXTRA_DATA);
-			if (snapshot != null) {
-				renderSnapshotCacheBoth.put(cx, cy, cz, snapshot);
-			}
-			return snapshot;
+		}
+
+		RenderSnapshot cached = renderSnapshotCache.get(cx, cy, cz);
+		int blockVersion = c.getBlockVersion();
+		int lightVersion = c.getLightVersion();
+		if (cached != null && cached.chunk == c && cached.blockVersion == blockVersion && cached.lightVersion == lightVersion) {
+			return cached.snapshot;
+		}
+
+		SpoutChunkSnapshot snapshot = c.getSnapshot(SnapshotType.BOTH, EntityType.NO_ENTITIES, ExtraData.NO_EXTRA_DATA);
+		if (snapshot != null) {
+			renderSnapshotCache.put(cx, cy, cz, new RenderSnapshot(c, blockVersion, lightVersion, snapshot));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * A render snapshot and the chunk versions it was taken at
+	 */
+	private static class RenderSnapshot {
+		private final SpoutChunk chunk;
+		private final int blockVersion;
+		private final int lightVersion;
+		private final SpoutChunkSnapshot snapshot;
+
+		public RenderSnapshot(SpoutChunk chunk, int blockVersion, int lightVersion, SpoutChunkSnapshot snapshot) {
+			this.chunk = chunk;
+			this.blockVersion = blockVersion;
+			this.lightVersion = lightVersion;
+			this.snapshot = snapshot;
 		}
 	}
 
@@ -1985,6 +2075,38 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}
 
 	public void addChunk(int x, int y, int z, short[] blockIds, short[] blockData, byte[] blockLight, byte[] skyLight, BiomeManager biomes) {
+		installChunk(x, y, z, createChunk(x, y, z, blockIds, blockData, blockLight, skyLight, biomes));
+	}
+
+	/**
+	 * Creates a populated chunk from raw block data, without adding it to the region.<br>
+	 * <br>
+	 * This method may be called from any thread.
+	 */
+	public SpoutChunk createChunk(int x, int y, int z, short[] blockIds, short[] blockData, byte[] blockLight, byte[] skyLight, BiomeManager biomes) {
+		x &= BLOCKS.MASK;
+		y &= BLOCKS.MASK;
+		z &= BLOCKS.MASK;
+		return new SpoutChunk(getWorld(), this, getBlockX() | x, getBlockY() | y, getBlockZ() | z, SpoutChunk.PopulationState.POPULATED, blockIds, blockData, skyLight, blockLight, new ManagedHashMap(), true);
+	}
+
+	/**
+	 * Queues a chunk created by {@link #createChunk} to be added at the start of the next tick.<br>
+	 * <br>
+	 * Chunks and unloads queued for the same coordinates are applied in the order they were queued.
+	 */
+	public void queueDecodedChunk(int x, int y, int z, SpoutChunk chunk) {
+		decodedChunkQueue.add(new DecodedChunk(x, y, z, chunk));
+	}
+
+	/**
+	 * Queues the chunk at the given coordinates to be unloaded at the start of the next tick
+	 */
+	public void queueDecodedUnload(int x, int y, int z) {
+		decodedChunkQueue.add(new DecodedChunk(x, y, z, null));
+	}
+
+	private void installChunk(int x, int y, int z, SpoutChunk newChunk) {
 		x &= BLOCKS.MASK;
 		y &= BLOCKS.MASK;
 		z &= BLOCKS.MASK;
@@ -1992,78 +2114,31 @@ public class SpoutRegion extends Region implements AsyncManager {
 		if (chunk != null) {
 			chunk.unload(false);
 		}
-		SpoutChunk newChunk = new SpoutChunk(getWorld(), this, getBlockX() | x, getBlockY() | y, getBlockZ() | z, SpoutChunk.PopulationState.POPULATED, blockIds, blockData, skyLight, blockLight, new ManagedHashMap(), true);
-		setChunk(newChunk, x, y, z, null, true);
-		checkChunkLoaded(newChunk, LoadOption.LOAD_GEN);
+		if (newChunk != null) {
+			setChunk(newChunk, x, y, z, null, true);
+			checkChunkLoaded(newChunk, LoadOption.LOAD_GEN);
+		}
 	}
 
-	private class MeshGeneratorThread extends Thread {
-
-		private WorldRenderer renderer = null;
-
-		public MeshGeneratorThread() {
-			super(SpoutRegion.this.toString() + " Mesh Generation Thread");
-			this.setDaemon(true);
-		}
-
-		public void run() {
-			//Sleep while the renderer doesn't exist
-			while(((SpoutClient) Spout.getEngine()).getRenderer() == null){
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException ie) {
-					return;
-				}
-			}
-			
-			while (renderer == null) {
-				renderer = ((SpoutClient) Spout.getEngine()).getRenderer().getWorldRenderer();
-				if (renderer == null) {
-					try {
-						Thread.sleep(100);
-					} catch (InterruptedException ie) {
-						return;
-					}
-				}
-			}
-			while (!Thread.interrupted()) {
-				try {
-					SpoutChunkSnapshotModel model;
-					while( ( model = removeFromRenderQueue() ) != null){
-						handle(model);
-					}
-				} catch (InterruptedException ie) {
-					break;
-				}
-			}
-			SpoutChunkSnapshotModel model;
-			boolean done = false;
-			while (!done) {
-				try {
-					model = removeFromRenderQueue();
-					if (model != null) {
-						handle(model);
-					} else {
-						done = true;
-					}
-				} catch (InterruptedException e) {
-				}
-			}
+	private void addDecodedChunks() {
+		DecodedChunk decoded;
+		while ((decoded = decodedChunkQueue.poll()) != null) {
+			installChunk(decoded.x, decoded.y, decoded.z, decoded.chunk);
 		}
+	}
 
-		private void handle(SpoutChunkSnapshotModel model) {
-			ChunkMesh mesh = new ChunkMesh(model);
+	private static class DecodedChunk {
+		private final int x, y, z;
+		private final SpoutChunk chunk;
 
-			mesh.update();
-			
-			//Debug
-			//System.out.println("Generate ChunkMesh take " + (System.currentTimeMillis() - mesh.getTime()) + " (in queue : " + renderChunkQueue.size() +")");
-			
-			renderer.addMeshToBatchQueue(mesh);
+		public DecodedChunk(int x, int y, int z, SpoutChunk chunk) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.chunk = chunk;
 		}
-
 	}
-	
+
 	@Override
 	public CuboidLightBuffer getLightBuffer(short id) {
 		throw new UnsupportedOperationException("Unable to get a light buffer corresponding to a region");
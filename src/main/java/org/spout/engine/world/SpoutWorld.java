@@ -91,6 +91,7 @@ import org.spout.api.util.thread.annotation.LiveRead;
 import org.spout.api.util.thread.annotation.Threadsafe;
 
 import org.spout.engine.SpoutEngine;
+import org.spout.engine.entity.EntityGrid.NearestEntities;
 import org.spout.engine.entity.SpoutEntity;
 import org.spout.engine.filesystem.versioned.WorldFiles;
 import org.spout.engine.scheduler.SpoutParallelTaskManager;
@@ -772,17 +773,44 @@ public class SpoutWorld extends BaseComponentHolder implements AsyncManager, Wor
 	@Override
 	public List<Entity> getNearbyEntities(Point position, Entity ignore, int range) {
 		ArrayList<Entity> foundEntities = new ArrayList<Entity>();
-		final int RANGE_SQUARED = range * range;
+		for (SpoutRegion region : getRegionsNear(position, range)) {
+			region.getEntityManager().getGrid().getInRange(position.getX(), position.getY(), position.getZ(), range, ignore, false, foundEntities);
+		}
+		return Collections.unmodifiableList(foundEntities);
+	}
 
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
-			if (entity != null && entity != ignore) {
-				double distance = position.distanceSquared(entity.getScene().getPosition());
-				if (distance < RANGE_SQUARED) {
-					foundEntities.add(entity);
-				}
-			}
+	/**
+	 * Gets all entities with a position inside the given box, bounds inclusive
+	 * @param min the minimum corner of the box
+	 * @param max the maximum corner of the box
+	 * @return the entities
+	 */
+	public List<Entity> getEntitiesInBox(Point min, Point max) {
+		ArrayList<Entity> foundEntities = new ArrayList<Entity>();
+		for (SpoutRegion region : getRegionsIn(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ())) {
+			region.getEntityManager().getGrid().getInBox(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ(), null, false, foundEntities);
 		}
+		return Collections.unmodifiableList(foundEntities);
+	}
 
+	/**
+	 * Gets up to count entities nearest to the point, inside of the range
+	 * @param position of the center
+	 * @param ignore Entity to ignore
+	 * @param range to look for
+	 * @param count the maximum number of entities to return
+	 * @return the entities, nearest first
+	 */
+	public List<Entity> getNearestEntities(Point position, Entity ignore, int range, int count) {
+		if (count <= 0) {
+			return Collections.emptyList();
+		}
+		NearestEntities nearest = new NearestEntities(count, range);
+		for (SpoutRegion region : getRegionsNear(position, range)) {
+			region.getEntityManager().getGrid().getNearest(position.getX(), position.getY(), position.getZ(), range, ignore, false, nearest);
+		}
+		ArrayList<Entity> foundEntities = new ArrayList<Entity>(count);
+		nearest.addTo(foundEntities);
 		return Collections.unmodifiableList(foundEntities);
 	}
 
@@ -798,19 +826,7 @@ public class SpoutWorld extends BaseComponentHolder implements AsyncManager, Wor
 
 	@Override
 	public Entity getNearestEntity(Point position, Entity ignore, int range) {
-		Entity best = null;
-		double bestDistance = range * range;
-
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
-			if (entity != null && entity != ignore) {
-				double distance = position.distanceSquared(entity.getScene().getPosition());
-				if (distance < bestDistance) {
-					bestDistance = distance;
-					best = entity;
-				}
-			}
-		}
-		return best;
+		return getNearest(position, ignore, range, false);
 	}
 
 	@Override
@@ -836,10 +852,8 @@ public class SpoutWorld extends BaseComponentHolder implements AsyncManager, Wor
 	@Threadsafe
 	public List<Player> getNearbyPlayers(Point position, Player ignore, int range) {
 		ArrayList<Player> foundPlayers = new ArrayList<Player>();
-		for (Entity entity : getNearbyEntities(position, ignore, range)) {
-			if (entity instanceof Player) {
-				foundPlayers.add((Player) entity);
-			}
+		for (SpoutRegion region : getRegionsNear(position, range)) {
+			region.getEntityManager().getGrid().getInRange(position.getX(), position.getY(), position.getZ(), range, ignore, true, foundPlayers);
 		}
 		return Collections.unmodifiableList(foundPlayers);
 	}
@@ -881,19 +895,7 @@ public class SpoutWorld extends BaseComponentHolder implements AsyncManager, Wor
 	@LiveRead
 	@Threadsafe
 	public Player getNearestPlayer(Point position, Player ignore, int range) {
-		Entity best = null;
-		double bestDistance = range * range;
-
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
-			if (entity != null && entity instanceof Player && entity != ignore) {
-				double distance = position.distanceSquared(entity.getScene().getPosition());
-				if (distance < bestDistance) {
-					bestDistance = distance;
-					best = entity;
-				}
-			}
-		}
-		return (Player) best;
+		return (Player) getNearest(position, ignore, range, true);
 	}
 
 	/**
@@ -921,30 +923,44 @@ public class SpoutWorld extends BaseComponentHolder implements AsyncManager, Wor
 		return getNearestPlayer(entity.getScene().getPosition(), range);
 	}
 
+	private Entity getNearest(Point position, Entity ignore, int range, boolean playersOnly) {
+		NearestEntities nearest = new NearestEntities(1, range);
+		for (SpoutRegion region : getRegionsNear(position, range)) {
+			region.getEntityManager().getGrid().getNearest(position.getX(), position.getY(), position.getZ(), range, ignore, playersOnly, nearest);
+		}
+		return nearest.getNearest();
+	}
+
 	/**
-	 * Finds all the players inside of the regions inside the range area
+	 * Finds the loaded regions which overlap the cube centered on the position
 	 * @param position to search from
-	 * @param range to search for regions
-	 * @return nearby region's players
+	 * @param range the half size of the cube
+	 * @return the regions
 	 */
-	private List<Entity> getEntitiesNearRegion(Point position, int range) {
-		Region center = this.getRegionFromBlock(position, LoadOption.NO_LOAD);
+	private List<SpoutRegion> getRegionsNear(Point position, int range) {
+		return getRegionsIn(position.getX() - range, position.getY() - range, position.getZ() - range, position.getX() + range, position.getY() + range, position.getZ() + range);
+	}
 
-		ArrayList<Entity> entities = new ArrayList<Entity>();
-		if (center != null) {
-			final int regions = (range + Region.BLOCKS.SIZE - 1) / Region.BLOCKS.SIZE; //round up 1 region size
-			for (int dx = -regions; dx < regions; dx++) {
-				for (int dy = -regions; dy < regions; dy++) {
-					for (int dz = -regions; dz < regions; dz++) {
-						Region region = this.getRegion(center.getX() + dx, center.getY() + dy, center.getZ() + dz, LoadOption.NO_LOAD);
-						if (region != null) {
-							entities.addAll(region.getAll());
-						}
+	/**
+	 * Finds the loaded regions which overlap the given box
+	 * @return the regions
+	 */
+	private List<SpoutRegion> getRegionsIn(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		final int rMinX = GenericMath.floor(minX) >> Region.BLOCKS.BITS, rMaxX = GenericMath.floor(maxX) >> Region.BLOCKS.BITS;
+		final int rMinY = GenericMath.floor(minY) >> Region.BLOCKS.BITS, rMaxY = GenericMath.floor(maxY) >> Region.BLOCKS.BITS;
+		final int rMinZ = GenericMath.floor(minZ) >> Region.BLOCKS.BITS, rMaxZ = GenericMath.floor(maxZ) >> Region.BLOCKS.BITS;
+		ArrayList<SpoutRegion> regions = new ArrayList<SpoutRegion>();
+		for (int rx = rMinX; rx <= rMaxX; rx++) {
+			for (int ry = rMinY; ry <= rMaxY; ry++) {
+				for (int rz = rMinZ; rz <= rMaxZ; rz++) {
+					SpoutRegion region = this.getRegion(rx, ry, rz, LoadOption.NO_LOAD);
+					if (region != null) {
+						regions.add(region);
 					}
 				}
 			}
 		}
-		return entities;
+		return regions;
 	}
 
 	/**
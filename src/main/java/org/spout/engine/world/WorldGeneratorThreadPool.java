@@ -0,0 +1,250 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spout.api.Spout;
+import org.spout.api.entity.Player;
+import org.spout.api.geo.LoadOption;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.util.cuboid.CuboidBlockMaterialBuffer;
+import org.spout.engine.SpoutConfiguration;
+import org.spout.engine.scheduler.SpoutScheduler;
+
+/**
+ * Generates regions on a pool of worker threads.<br>
+ * <br>
+ * Each region is generated as a whole by a single worker, so the output for a region is the same as
+ * when regions were generated one at a time. Regions closest to a player are generated first.
+ */
+public class WorldGeneratorThreadPool {
+	/**
+	 * How often queued regions are re-ordered to follow player movement
+	 */
+	private static final long REPRIORITIZE_INTERVAL = 1000;
+	private static final PriorityBlockingQueue<GenerationTask> queue = new PriorityBlockingQueue<GenerationTask>();
+	/**
+	 * The bases of all regions that are queued, to drop duplicate submissions
+	 */
+	private static final ConcurrentHashMap<Point, Boolean> queued = new ConcurrentHashMap<Point, Boolean>();
+	private static final AtomicLong sequence = new AtomicLong();
+	private static final AtomicLong nextReprioritize = new AtomicLong();
+	private static final WorkerThread[] pool;
+	private static volatile SpoutScheduler scheduler;
+
+	static {
+		int threads = SpoutConfiguration.GENERATOR_THREADS.getInt();
+		if (threads <= 0) {
+			threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		}
+		pool = new WorkerThread[threads];
+		for (int i = 0; i < pool.length; i++) {
+			pool[i] = new WorkerThread(i);
+		}
+	}
+
+	private WorldGeneratorThreadPool() {
+	}
+
+	public static void submitRegion(Region r) {
+		Point base = r.getBase();
+		if (queued.putIfAbsent(base, Boolean.TRUE) == null) {
+			queue.add(new GenerationTask(base, getPriority(base), sequence.getAndIncrement()));
+		}
+	}
+
+	public static void startThreads() {
+		scheduler = ((SpoutScheduler) Spout.getScheduler());
+		for (int i = 0; i < pool.length; i++) {
+			pool[i].start();
+		}
+	}
+
+	public static void finish() {
+		for (int i = 0; i < pool.length; i++) {
+			pool[i].interrupt();
+		}
+	}
+
+	public static void staticJoin() {
+		for (int i = 0; i < pool.length; i++) {
+			try {
+				pool[i].join();
+			} catch (InterruptedException ie) {
+				Spout.getLogger().info("Main thread interruped while waiting for world generator thread to end");
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of regions waiting to be generated
+	 * @return the number of regions
+	 */
+	public static int getBacklog() {
+		return queue.size();
+	}
+
+	/**
+	 * Gets the squared distance from the center of the region to the nearest player in its world
+	 */
+	private static float getPriority(Point base) {
+		float half = Region.BLOCKS.SIZE / 2;
+		float x = base.getX() + half;
+		float y = base.getY() + half;
+		float z = base.getZ() + half;
+		float best = Float.MAX_VALUE;
+		for (Player player : base.getWorld().getPlayers()) {
+			Point p = player.getScene().getPosition();
+			if (p == null) {
+				continue;
+			}
+			float dx = p.getX() - x;
+			float dy = p.getY() - y;
+			float dz = p.getZ() - z;
+			best = Math.min(best, dx * dx + dy * dy + dz * dz);
+		}
+		return best;
+	}
+
+	/**
+	 * Re-computes the priority of every queued region, at most once per interval
+	 */
+	private static void reprioritize() {
+		long now = System.currentTimeMillis();
+		long next = nextReprioritize.get();
+		if (now < next || !nextReprioritize.compareAndSet(next, now + REPRIORITIZE_INTERVAL)) {
+			return;
+		}
+		List<GenerationTask> tasks = new ArrayList<GenerationTask>(queue.size());
+		queue.drainTo(tasks);
+		for (GenerationTask task : tasks) {
+			queue.add(new GenerationTask(task.base, getPriority(task.base), task.sequence));
+		}
+	}
+
+	private static void generate(final Point base) throws InterruptedException {
+		final SpoutWorld world = (SpoutWorld) base.getWorld();
+		final int rx = base.getBlockX() >> Region.BLOCKS.BITS;
+		final int ry = base.getBlockY() >> Region.BLOCKS.BITS;
+		final int rz = base.getBlockZ() >> Region.BLOCKS.BITS;
+
+		final SpoutRegion r = scheduler.coreSafeCall("World generator thread get region", new Callable<SpoutRegion>() {
+			public SpoutRegion call() {
+				return world.getRegion(rx, ry, rz, LoadOption.LOAD_GEN);
+			}
+		});
+		final CuboidBlockMaterialBuffer buffer = r.generateChunks();
+		if (buffer == null) {
+			return;
+		}
+		final int cx = r.getChunkX();
+		final int cy = r.getChunkY();
+		final int cz = r.getChunkZ();
+		for (int x = cx; x < cx + Region.CHUNKS.SIZE; x++) {
+			for (int z = cz; z < cz + Region.CHUNKS.SIZE; z++) {
+				// Chunks are built on this thread, only adding them to the region needs to be core safe
+				final SpoutChunk[] column = new SpoutChunk[Region.CHUNKS.SIZE];
+				for (int y = 0; y < Region.CHUNKS.SIZE; y++) {
+					column[y] = r.createChunkFromBuffer(world, buffer, x, cy + y, z);
+				}
+				final int columnX = x;
+				final int columnZ = z;
+				scheduler.coreSafeRun("World generator thread buffer copy", new Runnable() {
+					public void run() {
+						SpoutRegion region = world.getRegion(rx, ry, rz, LoadOption.LOAD_GEN);
+						if (region != r) {
+							// The region was reloaded since the chunks were built, they must belong to the new one
+							for (int y = 0; y < Region.CHUNKS.SIZE; y++) {
+								column[y] = region.createChunkFromBuffer(world, buffer, columnX, cy + y, columnZ);
+							}
+						}
+						for (SpoutChunk chunk : column) {
+							region.setGeneratedChunkIfNotGenerated(chunk);
+						}
+					}
+				});
+				while (scheduler.isServerOverloaded()) {
+					Thread.sleep(50);
+				}
+			}
+		}
+	}
+
+	private static class WorkerThread extends Thread {
+		public WorkerThread(int index) {
+			super("World Generator Thread " + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				reprioritize();
+				GenerationTask task;
+				try {
+					task = queue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				queued.remove(task.base);
+				try {
+					generate(task.base);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	private static class GenerationTask implements Comparable<GenerationTask> {
+		private final Point base;
+		private final float priority;
+		private final long sequence;
+
+		public GenerationTask(Point base, float priority, long sequence) {
+			this.base = base;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(GenerationTask o) {
+			int c = Float.compare(priority, o.priority);
+			if (c != 0) {
+				return c;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.collision;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.spout.api.component.Component;
+import org.spout.api.component.type.EntityComponent;
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.cuboid.Block;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.material.BlockMaterial;
+
+/**
+ * Finds out whether entities and materials react to collisions, so contacts nobody listens to
+ * can be skipped.<br>
+ * <br>
+ * A class listens if it overrides one of the onCollided methods. The answer is cached per class.
+ */
+public final class CollisionListeners {
+	private static final ConcurrentHashMap<Class<?>, Boolean> componentListeners = new ConcurrentHashMap<Class<?>, Boolean>();
+	private static final ConcurrentHashMap<Class<?>, Boolean> materialListeners = new ConcurrentHashMap<Class<?>, Boolean>();
+
+	private CollisionListeners() {
+	}
+
+	/**
+	 * Gets if any component of the entity handles collisions
+	 * @param entity the entity
+	 * @return true if a component overrides onCollided
+	 */
+	public static boolean hasListener(Entity entity) {
+		for (Component component : entity.values()) {
+			if (component instanceof EntityComponent && isComponentListener(component.getClass())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets if the material handles collisions
+	 * @param material the material
+	 * @return true if the material overrides onCollided
+	 */
+	public static boolean hasListener(BlockMaterial material) {
+		Class<?> clazz = material.getClass();
+		Boolean listens = materialListeners.get(clazz);
+		if (listens == null) {
+			listens = overrides(clazz, BlockMaterial.class, "onCollided", Point.class, Point.class, Entity.class);
+			materialListeners.put(clazz, listens);
+		}
+		return listens;
+	}
+
+	private static boolean isComponentListener(Class<?> clazz) {
+		Boolean listens = componentListeners.get(clazz);
+		if (listens == null) {
+			listens = overrides(clazz, EntityComponent.class, "onCollided", Point.class, Point.class, Entity.class) || overrides(clazz, EntityComponent.class, "onCollided", Point.class, Point.class, Block.class);
+			componentListeners.put(clazz, listens);
+		}
+		return listens;
+	}
+
+	private static boolean overrides(Class<?> clazz, Class<?> base, String name, Class<?>... params) {
+		try {
+			Method method = clazz.getMethod(name, params);
+			Method baseMethod = base.getMethod(name, params);
+			return method.getDeclaringClass() != baseMethod.getDeclaringClass();
+		} catch (NoSuchMethodException e) {
+			// Unknown signature, assume the class listens
+			return true;
+		}
+	}
+}
@@ -26,6 +26,8 @@
  */
 package org.spout.engine.world.collision;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import javax.vecmath.Vector3f;
 
 import com.bulletphysics.collision.shapes.CollisionShape;
@@ -33,15 +35,24 @@ import com.bulletphysics.collision.shapes.voxel.CollisionSnapshot;
 import com.bulletphysics.collision.shapes.voxel.VoxelPhysicsWorld;
 
 import org.spout.api.collision.CollisionStrategy;
+import org.spout.api.geo.LoadOption;
 import org.spout.api.geo.cuboid.Region;
 import org.spout.api.material.BlockMaterial;
-import org.spout.api.math.Vector3;
 
 import org.spout.engine.world.SpoutBlock;
+import org.spout.engine.world.SpoutChunk;
 import org.spout.engine.world.SpoutRegion;
 
+/**
+ * Supplies the voxel shapes of a region to the physics simulation.<br>
+ * <br>
+ * The collision snapshot of each voxel is cached per chunk, so bodies resting on terrain do not
+ * look up and rebuild the same blocks every step. A chunk's cache is dropped when the chunk's
+ * block version changes, or when the chunk is replaced or unloaded.
+ */
 public class SpoutPhysicsWorld implements VoxelPhysicsWorld {
 	private final SpoutRegion simulation;
+	private final AtomicReferenceArray<ChunkShapes> cache = new AtomicReferenceArray<ChunkShapes>(Region.CHUNKS.VOLUME);
 
 	public SpoutPhysicsWorld(SpoutRegion simulation) {
 		if (simulation == null) {
@@ -52,21 +63,77 @@ public class SpoutPhysicsWorld implements VoxelPhysicsWorld {
 
 	@Override
 	public CollisionSnapshot getCollisionShapeAt(int x, int y, int z) {
-		final SpoutBlock block = (SpoutBlock) simulation.getBlock(x, y, z);
-		return new SpoutVoxelCollisionSnapshot(block.getMaterial(), simulation, block.getPosition());
+		final int cx = x >> SpoutChunk.BLOCKS.BITS;
+		final int cy = y >> SpoutChunk.BLOCKS.BITS;
+		final int cz = z >> SpoutChunk.BLOCKS.BITS;
+		final SpoutChunk chunk;
+		if (cx >> Region.CHUNKS.BITS == simulation.getX() && cy >> Region.CHUNKS.BITS == simulation.getY() && cz >> Region.CHUNKS.BITS == simulation.getZ()) {
+			chunk = simulation.getChunk(cx, cy, cz, LoadOption.NO_LOAD);
+		} else {
+			chunk = null;
+		}
+		if (chunk == null || !chunk.isLoaded()) {
+			// Neighbouring regions and unloaded chunks are not cached
+			final SpoutBlock block = (SpoutBlock) simulation.getBlock(x, y, z);
+			return new SpoutVoxelCollisionSnapshot(block.getMaterial(), simulation, x, y, z);
+		}
+		final int index = getIndex(cx, cy, cz);
+		// The version is read before any block, so a change made while filling the cache invalidates it
+		final int version = chunk.getBlockVersion();
+		ChunkShapes shapes = cache.get(index);
+		if (shapes == null || shapes.chunk != chunk || shapes.version != version) {
+			shapes = new ChunkShapes(chunk, version);
+			cache.set(index, shapes);
+		}
+		final int voxel = ((x & SpoutChunk.BLOCKS.MASK) << (SpoutChunk.BLOCKS.BITS << 1)) | ((y & SpoutChunk.BLOCKS.MASK) << SpoutChunk.BLOCKS.BITS) | (z & SpoutChunk.BLOCKS.MASK);
+		CollisionSnapshot snapshot = shapes.voxels[voxel];
+		if (snapshot == null) {
+			snapshot = new SpoutVoxelCollisionSnapshot(chunk.getBlockMaterial(x, y, z), simulation, x, y, z);
+			shapes.voxels[voxel] = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Drops the cached shapes of a chunk, so the cache does not keep the chunk once it is unloaded
+	 * @param chunk the unloaded chunk
+	 */
+	public void removeChunk(SpoutChunk chunk) {
+		final int index = getIndex(chunk.getX(), chunk.getY(), chunk.getZ());
+		final ChunkShapes shapes = cache.get(index);
+		if (shapes != null && shapes.chunk == chunk) {
+			cache.compareAndSet(index, shapes, null);
+		}
+	}
+
+	private static int getIndex(int cx, int cy, int cz) {
+		return ((cx & Region.CHUNKS.MASK) << (Region.CHUNKS.BITS << 1)) | ((cy & Region.CHUNKS.MASK) << Region.CHUNKS.BITS) | (cz & Region.CHUNKS.MASK);
+	}
+
+	private static class ChunkShapes {
+		private final SpoutChunk chunk;
+		private final int version;
+		private final CollisionSnapshot[] voxels = new CollisionSnapshot[SpoutChunk.BLOCKS.VOLUME];
+
+		private ChunkShapes(SpoutChunk chunk, int version) {
+			this.chunk = chunk;
+			this.version = version;
+		}
 	}
 
 	private static class SpoutVoxelCollisionSnapshot implements CollisionSnapshot {
 		private final boolean isColliding, isBlocking;
 		private final CollisionShape shape;
-		private final Vector3 position;
+		private final int x, y, z;
 		private final Region region;
 
-		public SpoutVoxelCollisionSnapshot(BlockMaterial material, Region region, Vector3 position) {
+		public SpoutVoxelCollisionSnapshot(BlockMaterial material, Region region, int x, int y, int z) {
 			this.shape = material.getCollisionShape();
 			this.isColliding = shape != null && material.getCollisionModel().getStrategy() != CollisionStrategy.NOCOLLIDE;
 			this.isBlocking = shape != null && material.getCollisionModel().getStrategy() == CollisionStrategy.SOLID;
-			this.position = position;
+			this.x = x;
+			this.y = y;
+			this.z = z;
 			this.region = region;
 		}
 
@@ -77,7 +144,7 @@ public class SpoutPhysicsWorld implements VoxelPhysicsWorld {
 
 		@Override
 		public Object getUserData() {
-			return region.getBlock(position);
+			return region.getBlock(x, y, z);
 		}
 
 		@Override
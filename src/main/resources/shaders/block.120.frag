@@ -0,0 +1,11 @@
+#version 120
+
+varying vec2 uvcoord;
+varying vec4 tile;
+uniform sampler2D Diffuse;
+
+void main() {
+	// Greedy quads carry block units and the atlas tile to wrap them into, other faces have no tile
+	vec2 uv = tile.z != 0.0 ? tile.xy + fract(uvcoord) * tile.zw : uvcoord;
+	gl_FragColor = texture2D(Diffuse, uv);
+}
@@ -0,0 +1,25 @@
+#version 120
+
+attribute vec4 vPosition;
+attribute vec4 vColor;
+attribute vec4 vNormal;
+attribute vec2 vTexCoord;
+attribute vec4 vTexTile;
+
+varying vec4 color;
+varying vec4 normal;
+varying vec2 uvcoord;
+varying vec4 tile;
+
+uniform mat4 Projection;
+uniform mat4 View;
+uniform mat4 Model;
+
+void main() {
+	gl_Position = Projection * View  * Model * vPosition;
+
+	uvcoord = vTexCoord;
+	tile = vTexTile;
+	color = vColor;
+	normal = vNormal;
+}
@@ -0,0 +1,21 @@
+#version 330
+
+in vec2 uvcoord;
+in vec4 normal;
+flat in vec4 tile;
+uniform sampler2D Diffuse;
+
+layout(location=0) out vec4 outputColor;
+layout(location=1) out vec4 normals;
+
+void main()
+{
+	// Greedy quads carry block units and the atlas tile to wrap them into, other faces have no tile
+	vec2 scale = tile.z != 0.0 ? tile.zw : vec2(1, 1);
+	vec2 uv = tile.z != 0.0 ? tile.xy + fract(uvcoord) * tile.zw : uvcoord;
+	outputColor = textureGrad(Diffuse, uv, dFdx(uvcoord * scale), dFdy(uvcoord * scale));
+	normals =  (normal + vec4(1, 1, 1, 1)) / 2;
+    if (outputColor.a == 0) {
+        discard;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.spout.api.component.impl.SceneComponent;
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.geo.discrete.Point;
+
+public class EntityGridTest {
+	private static final int REGION_BLOCKS = Region.CHUNKS.SIZE << Chunk.BLOCKS.BITS;
+	private static final int CHUNK_BLOCKS = Chunk.BLOCKS.SIZE;
+	private static final int BASE_X = REGION_BLOCKS, BASE_Y = 0, BASE_Z = -REGION_BLOCKS;
+	private final List<SpoutEntity> all = new ArrayList<SpoutEntity>();
+	private final List<float[]> positions = new ArrayList<float[]>();
+
+	private SpoutEntity entity(float x, float y, float z) {
+		SpoutEntity e = PowerMockito.mock(SpoutEntity.class);
+		SceneComponent scene = PowerMockito.mock(SceneComponent.class);
+		Mockito.when(e.getScene()).thenReturn(scene);
+		Mockito.when(scene.getPosition()).thenReturn(new Point(null, x, y, z));
+		all.add(e);
+		positions.add(new float[] {x, y, z});
+		return e;
+	}
+
+	/**
+	 * Builds a grid of random entities, and entities on every chunk and region border along a line
+	 */
+	private EntityGrid buildGrid() {
+		Random random = new Random(42);
+		for (int i = 0; i < 400; i++) {
+			// Slightly past the region bounds too, as entities may be mid move
+			entity(BASE_X - 4 + random.nextFloat() * (REGION_BLOCKS + 8), BASE_Y - 4 + random.nextFloat() * (REGION_BLOCKS + 8), BASE_Z - 4 + random.nextFloat() * (REGION_BLOCKS + 8));
+		}
+		for (int c = 0; c <= Region.CHUNKS.SIZE; c++) {
+			float border = c * CHUNK_BLOCKS;
+			entity(BASE_X + border, BASE_Y + 8, BASE_Z + 8);
+			entity(BASE_X + border - 0.001f, BASE_Y + 8, BASE_Z + 8);
+			entity(BASE_X + 8, BASE_Y + border, BASE_Z + border);
+			entity(BASE_X + 8, BASE_Y + border - 0.001f, BASE_Z + border - 0.001f);
+		}
+		return EntityGrid.build(BASE_X, BASE_Y, BASE_Z, all);
+	}
+
+	private float distanceSquared(int i, float x, float y, float z) {
+		float[] p = positions.get(i);
+		float dx = p[0] - x;
+		float dy = p[1] - y;
+		float dz = p[2] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private float[][] queryPoints() {
+		Random random = new Random(7);
+		List<float[]> points = new ArrayList<float[]>();
+		for (int i = 0; i < 100; i++) {
+			points.add(new float[] {BASE_X - 10 + random.nextFloat() * (REGION_BLOCKS + 20), BASE_Y - 10 + random.nextFloat() * (REGION_BLOCKS + 20), BASE_Z - 10 + random.nextFloat() * (REGION_BLOCKS + 20), random.nextFloat() * 48});
+		}
+		// Centered on borders
+		points.add(new float[] {BASE_X, BASE_Y, BASE_Z, 20});
+		points.add(new float[] {BASE_X + CHUNK_BLOCKS, BASE_Y + 8, BASE_Z + 8, CHUNK_BLOCKS});
+		points.add(new float[] {BASE_X + REGION_BLOCKS, BASE_Y + REGION_BLOCKS, BASE_Z + REGION_BLOCKS, 30});
+		return points.toArray(new float[points.size()][]);
+	}
+
+	@Test
+	public void testInRange() {
+		EntityGrid grid = buildGrid();
+		assertEquals(all.size(), grid.size());
+		for (float[] q : queryPoints()) {
+			List<Entity> found = new ArrayList<Entity>();
+			grid.getInRange(q[0], q[1], q[2], q[3], null, false, found);
+			HashSet<Entity> expected = new HashSet<Entity>();
+			for (int i = 0; i < all.size(); i++) {
+				if (distanceSquared(i, q[0], q[1], q[2]) < q[3] * q[3]) {
+					expected.add(all.get(i));
+				}
+			}
+			assertEquals(expected.size(), found.size());
+			assertEquals(expected, new HashSet<Entity>(found));
+		}
+	}
+
+	@Test
+	public void testInBox() {
+		EntityGrid grid = buildGrid();
+		for (float[] q : queryPoints()) {
+			float minX = q[0] - q[3], minY = q[1] - q[3] / 2, minZ = q[2] - q[3] * 2;
+			float maxX = q[0] + q[3], maxY = q[1] + q[3] / 2, maxZ = q[2] + q[3];
+			List<Entity> found = new ArrayList<Entity>();
+			grid.getInBox(minX, minY, minZ, maxX, maxY, maxZ, null, false, found);
+			HashSet<Entity> expected = new HashSet<Entity>();
+			for (int i = 0; i < all.size(); i++) {
+				float[] p = positions.get(i);
+				if (p[0] >= minX && p[0] <= maxX && p[1] >= minY && p[1] <= maxY && p[2] >= minZ && p[2] <= maxZ) {
+					expected.add(all.get(i));
+				}
+			}
+			assertEquals(expected.size(), found.size());
+			assertEquals(expected, new HashSet<Entity>(found));
+		}
+	}
+
+	@Test
+	public void testNearest() {
+		EntityGrid grid = buildGrid();
+		for (float[] q : queryPoints()) {
+			for (int count : new int[] {1, 5, 40}) {
+				EntityGrid.NearestEntities nearest = new EntityGrid.NearestEntities(count, q[3]);
+				grid.getNearest(q[0], q[1], q[2], q[3], null, false, nearest);
+				List<Entity> found = new ArrayList<Entity>();
+				nearest.addTo(found);
+
+				List<Float> expected = new ArrayList<Float>();
+				for (int i = 0; i < all.size(); i++) {
+					float distance = distanceSquared(i, q[0], q[1], q[2]);
+					if (distance < q[3] * q[3]) {
+						expected.add(distance);
+					}
+				}
+				Collections.sort(expected);
+				expected = expected.subList(0, Math.min(count, expected.size()));
+
+				// Compare distances, since entities at equal distance may come in either order
+				assertEquals(expected.size(), found.size());
+				for (int i = 0; i < found.size(); i++) {
+					assertEquals(expected.get(i), distanceSquared(all.indexOf(found.get(i)), q[0], q[1], q[2]), 0);
+				}
+				if (!found.isEmpty()) {
+					assertTrue(nearest.getNearest() == found.get(0));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNearestNone() {
+		EntityGrid grid = buildGrid();
+		EntityGrid.NearestEntities nearest = new EntityGrid.NearestEntities(0, 100);
+		grid.getNearest(BASE_X + 8, BASE_Y + 8, BASE_Z + 8, 100, null, false, nearest);
+		List<Entity> found = new ArrayList<Entity>();
+		nearest.addTo(found);
+		assertTrue(found.isEmpty());
+		assertEquals(null, nearest.getNearest());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNearestNegativeCount() {
+		new EntityGrid.NearestEntities(-1, 10);
+	}
+}
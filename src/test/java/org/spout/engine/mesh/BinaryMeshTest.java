@@ -0,0 +1,155 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.lwjgl.BufferUtils;
+import org.spout.engine.renderer.GLBufferContainer;
+import org.spout.engine.renderer.vertexformat.vertexattributes.VertexAttributes;
+
+public class BinaryMeshTest {
+	private static final int VERTICES = 6;
+
+	private static FloatBuffer floats(int count, float base) {
+		FloatBuffer buffer = BufferUtils.createFloatBuffer(count);
+		for (int i = 0; i < count; i++) {
+			buffer.put(base + i * 0.5f);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static BaseMesh mesh(boolean normal, boolean index) {
+		GLBufferContainer container = new GLBufferContainer();
+		container.element = VERTICES;
+		container.setBuffers(VertexAttributes.Position.getLayout(), floats(VERTICES * 4, 1));
+		if (normal) {
+			container.setBuffers(VertexAttributes.Normal.getLayout(), floats(VERTICES * 3, -2));
+		}
+		container.setBuffers(VertexAttributes.Texture0.getLayout(), floats(VERTICES * 2, 0.25f));
+		if (index) {
+			container.setVerticeIndex(new int[] {0, 1, 2, 2, 1, 3, 4, 5, 0});
+		}
+		return new BaseMesh(container);
+	}
+
+	private static byte[] write(BaseMesh mesh) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryMesh.write(mesh, out);
+		return out.toByteArray();
+	}
+
+	private static float[] toArray(Object buffer) {
+		FloatBuffer view = ((FloatBuffer) buffer).duplicate();
+		view.rewind();
+		float[] array = new float[view.remaining()];
+		view.get(array);
+		return array;
+	}
+
+	private static void assertSameMesh(BaseMesh expected, BaseMesh actual) {
+		GLBufferContainer a = expected.getContainer();
+		GLBufferContainer b = actual.getContainer();
+		assertEquals(a.element, b.element);
+		assertEquals(a.getBuffers().keySet(), b.getBuffers().keySet());
+		for (Integer layout : a.getBuffers().keySet()) {
+			assertArrayEquals(toArray(a.getBuffers().get(layout)), toArray(b.getBuffers().get(layout)), 0);
+		}
+		if (a.getVerticeIndex() == null) {
+			assertNull(b.getVerticeIndex());
+		} else {
+			assertArrayEquals(a.getVerticeIndex(), b.getVerticeIndex());
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		for (boolean normal : new boolean[] {false, true}) {
+			for (boolean index : new boolean[] {false, true}) {
+				BaseMesh mesh = mesh(normal, index);
+				byte[] data = write(mesh);
+				assertTrue(BinaryMesh.isBinaryMesh(data, data.length));
+				assertSameMesh(mesh, BinaryMesh.read(data, data.length));
+			}
+		}
+	}
+
+	@Test
+	public void testNotBinary() {
+		byte[] obj = "v 0 0 0\n".getBytes();
+		assertFalse(BinaryMesh.isBinaryMesh(obj, obj.length));
+		assertInvalid(obj, obj.length);
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		byte[] data = write(mesh(true, true));
+		for (int length = 0; length < data.length; length++) {
+			assertInvalid(data, length);
+		}
+	}
+
+	@Test
+	public void testBadCounts() throws IOException {
+		byte[] data = write(mesh(true, true));
+		// Vertex count, after the magic, version and flags
+		for (int vertices : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 30, VERTICES * 2}) {
+			byte[] copy = Arrays.copyOf(data, data.length);
+			ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(6, vertices);
+			assertInvalid(copy, copy.length);
+		}
+		// Index length, which follows the vertex data
+		int indexOffset = 10 + VERTICES * (4 + 3 + 2) * 4;
+		for (int indexLength : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, 10}) {
+			byte[] copy = Arrays.copyOf(data, data.length);
+			ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(indexOffset, indexLength);
+			assertInvalid(copy, copy.length);
+		}
+	}
+
+	private static void assertInvalid(byte[] data, int length) {
+		try {
+			BinaryMesh.read(data, length);
+			fail("Read an invalid mesh of " + length + " bytes");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
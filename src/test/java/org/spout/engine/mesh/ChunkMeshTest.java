@@ -0,0 +1,398 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import gnu.trove.list.array.TFloatArrayList;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.cuboid.ChunkSnapshot;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.material.BlockMaterial;
+import org.spout.api.math.Vector2;
+import org.spout.api.model.Model;
+import org.spout.api.model.mesh.CubeMeshFactory;
+import org.spout.api.model.mesh.OrientedMesh;
+import org.spout.api.render.BufferContainer;
+import org.spout.api.render.RenderMaterial;
+import org.spout.api.util.bytebit.ByteBitSet;
+import org.spout.engine.renderer.vertexformat.vertexattributes.VertexAttributes;
+import org.spout.engine.resources.ClientRenderMaterial;
+import org.spout.engine.world.SpoutChunkSnapshotModel;
+
+public class ChunkMeshTest {
+	private static final int SIZE = Chunk.BLOCKS.SIZE;
+	private static final int CX = 1, CY = -2, CZ = 3;
+	/**
+	 * Points sampled in every unit face, away from the diagonals of any quad
+	 */
+	private static final float[][] SAMPLES = {{0.5f, 0.5f}, {0.31f, 0.577f}, {0.713f, 0.193f}, {0.127f, 0.911f}};
+	private static final float EPSILON = 1e-4f;
+	private final ClientRenderMaterial terrain = new ClientRenderMaterial(null, null, true, 0, true);
+	private final ClientRenderMaterial plain = new ClientRenderMaterial(null, null, true, 0, false);
+	private final BlockMaterial air = material(0, true, null, null);
+	private final List<BlockMaterial> solids = new ArrayList<BlockMaterial>();
+	private final Map<Long, BlockMaterial> blocks = new HashMap<Long, BlockMaterial>();
+
+	/**
+	 * The corners of an atlas tile, in the order of the cube mesh loader
+	 */
+	private static Vector2[] tile(int x, int y, int rotation) {
+		float scale = 1f / 8;
+		Vector2[] corners = {
+				new Vector2(x * scale, y * scale),
+				new Vector2(x * scale, (y + 1) * scale),
+				new Vector2((x + 1) * scale, (y + 1) * scale),
+				new Vector2((x + 1) * scale, y * scale)};
+		Vector2[] rotated = new Vector2[4];
+		for (int i = 0; i < 4; i++) {
+			rotated[i] = corners[(i + rotation) & 3];
+		}
+		return rotated;
+	}
+
+	private static OrientedMesh cube(Vector2[]... faces) {
+		return CubeMeshFactory.generateCubeMesh(faces);
+	}
+
+	private static BlockMaterial material(int id, boolean invisible, RenderMaterial renderMaterial, OrientedMesh mesh) {
+		final Map<String, Object> values = new HashMap<String, Object>();
+		values.put("getId", id);
+		values.put("getData", 0);
+		values.put("isInvisible", invisible);
+		values.put("isFaceRendered", true);
+		values.put("getOcclusion", mock(ByteBitSet.class, new HashMap<String, Object>(), !invisible));
+		values.put("getMeshEffects", new HashSet<Object>());
+		Map<String, Object> model = new HashMap<String, Object>();
+		model.put("getRenderMaterial", renderMaterial);
+		model.put("getMesh", mesh);
+		values.put("getModel", mock(Model.class, model, false));
+		return mock(BlockMaterial.class, values, false);
+	}
+
+	/**
+	 * Mocks a class by method name, other boolean methods return the given default
+	 */
+	private static <T> T mock(Class<T> type, final Map<String, Object> values, final boolean bool) {
+		return Mockito.mock(type, new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				Method method = invocation.getMethod();
+				Class<?> returnType = method.getReturnType();
+				Object value = values.get(method.getName());
+				if (value instanceof Number) {
+					Number n = (Number) value;
+					if (returnType == short.class || returnType == Short.class) {
+						return n.shortValue();
+					} else if (returnType == byte.class || returnType == Byte.class) {
+						return n.byteValue();
+					}
+					return n.intValue();
+				} else if (value instanceof Collection && !returnType.isInstance(value)) {
+					return new ArrayList<Object>();
+				} else if (value == null && (returnType == boolean.class || returnType == Boolean.class)) {
+					return bool;
+				}
+				return value;
+			}
+		});
+	}
+
+	private ChunkSnapshot snapshot(final int cx, final int cy, final int cz) {
+		return Mockito.mock(ChunkSnapshot.class, new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				String name = invocation.getMethod().getName();
+				Object[] args = invocation.getArguments();
+				if (name.equals("getBlockMaterial") && args.length == 3) {
+					return getBlock((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+				} else if (name.equals("getBase")) {
+					return new Point(null, cx * SIZE, cy * SIZE, cz * SIZE);
+				}
+				return null;
+			}
+		});
+	}
+
+	private static long key(int x, int y, int z) {
+		return ((long) (x & 0xFFFFF) << 40) | ((long) (y & 0xFFFFF) << 20) | (z & 0xFFFFF);
+	}
+
+	private BlockMaterial getBlock(int x, int y, int z) {
+		BlockMaterial material = blocks.get(key(x, y, z));
+		return material == null ? air : material;
+	}
+
+	private void setBlock(int x, int y, int z, BlockMaterial material) {
+		blocks.put(key(CX * SIZE + x, CY * SIZE + y, CZ * SIZE + z), material);
+	}
+
+	private ChunkMesh mesh(boolean greedy) {
+		ChunkSnapshot[][][] chunks = new ChunkSnapshot[3][3][3];
+		for (int x = 0; x < 3; x++) {
+			for (int y = 0; y < 3; y++) {
+				for (int z = 0; z < 3; z++) {
+					chunks[x][y][z] = snapshot(CX + x - 1, CY + y - 1, CZ + z - 1);
+				}
+			}
+		}
+		ChunkMesh mesh = new ChunkMesh(new SpoutChunkSnapshotModel(null, CX, CY, CZ, chunks, 0, null, false, 0L), greedy);
+		mesh.update();
+		return mesh;
+	}
+
+	/**
+	 * What each mesh draws: the normal and texture coordinate at sample points of every unit face
+	 */
+	private static class Coverage {
+		final Map<String, float[]> samples = new TreeMap<String, float[]>();
+		final Map<String, Float> area = new TreeMap<String, Float>();
+		final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+		final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		int vertices = 0;
+
+		Coverage(ChunkMesh mesh, Map<RenderMaterial, String> names) {
+			for (Map.Entry<RenderMaterial, BufferContainer> entry : mesh.getMaterialsFaces().entrySet()) {
+				BufferContainer container = entry.getValue();
+				TFloatArrayList positions = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Position.getLayout());
+				TFloatArrayList normals = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Normal.getLayout());
+				TFloatArrayList texCoords = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture0.getLayout());
+				TFloatArrayList tiles = (TFloatArrayList) container.getBuffers().get(VertexAttributes.Texture1.getLayout());
+				int count = container.element;
+				assertEquals(count * 4, positions.size());
+				assertEquals(count * 4, normals.size());
+				assertEquals(count * 2, texCoords.size());
+				if (tiles != null) {
+					assertEquals(count * 4, tiles.size());
+				}
+				assertEquals(0, count % 3);
+				vertices += count;
+				for (int t = 0; t < count; t += 3) {
+					triangle(names.get(entry.getKey()), t, positions, normals, texCoords, tiles);
+				}
+			}
+		}
+
+		private void triangle(String name, int first, TFloatArrayList positions, TFloatArrayList normals, TFloatArrayList texCoords, TFloatArrayList tiles) {
+			float[][] p = new float[3][3];
+			for (int k = 0; k < 3; k++) {
+				for (int c = 0; c < 3; c++) {
+					p[k][c] = positions.get((first + k) * 4 + c);
+					min[c] = Math.min(min[c], p[k][c]);
+					max[c] = Math.max(max[c], p[k][c]);
+				}
+				assertEquals(1f, positions.get((first + k) * 4 + 3), 0f);
+			}
+			float[] n = cross(sub(p[1], p[0]), sub(p[2], p[0]));
+			int d = 0;
+			for (int c = 1; c < 3; c++) {
+				if (Math.abs(n[c]) > Math.abs(n[d])) {
+					d = c;
+				}
+			}
+			final int u = (d + 1) % 3, v = (d + 2) % 3;
+			assertEquals(0f, n[u], EPSILON);
+			assertEquals(0f, n[v], EPSILON);
+			String side = name + " " + d + (n[d] > 0 ? "+" : "-") + " " + p[0][d];
+			Float total = area.get(side);
+			area.put(side, (total == null ? 0f : total) + Math.abs(n[d]) / 2);
+
+			float minU = Math.min(p[0][u], Math.min(p[1][u], p[2][u]));
+			float maxU = Math.max(p[0][u], Math.max(p[1][u], p[2][u]));
+			float minV = Math.min(p[0][v], Math.min(p[1][v], p[2][v]));
+			float maxV = Math.max(p[0][v], Math.max(p[1][v], p[2][v]));
+			for (int i = (int) Math.floor(minU); i < maxU; i++) {
+				for (int j = (int) Math.floor(minV); j < maxV; j++) {
+					for (int s = 0; s < SAMPLES.length; s++) {
+						float su = i + SAMPLES[s][0], sv = j + SAMPLES[s][1];
+						float[] w = barycentric(p, u, v, su, sv);
+						if (w == null) {
+							continue;
+						}
+						float[] value = new float[5];
+						float[] uv = new float[2];
+						for (int k = 0; k < 3; k++) {
+							uv[0] += w[k] * texCoords.get((first + k) * 2);
+							uv[1] += w[k] * texCoords.get((first + k) * 2 + 1);
+						}
+						int vertex = first * 4;
+						if (tiles != null && tiles.get(vertex + 2) != 0) {
+							uv[0] = tiles.get(vertex) + fract(uv[0]) * tiles.get(vertex + 2);
+							uv[1] = tiles.get(vertex + 1) + fract(uv[1]) * tiles.get(vertex + 3);
+						}
+						value[0] = uv[0];
+						value[1] = uv[1];
+						for (int c = 0; c < 3; c++) {
+							value[2 + c] = normals.get(vertex + c);
+						}
+						String key = side + " " + i + " " + j + " " + s;
+						float[] old = samples.put(key, value);
+						if (old != null) {
+							// Only a point on a shared edge may be hit twice, and it must look the same
+							assertValue(key, old, value);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static float fract(float f) {
+		return f - (float) Math.floor(f);
+	}
+
+	private static float[] barycentric(float[][] p, int u, int v, float su, float sv) {
+		float det = (p[1][v] - p[2][v]) * (p[0][u] - p[2][u]) + (p[2][u] - p[1][u]) * (p[0][v] - p[2][v]);
+		float a = ((p[1][v] - p[2][v]) * (su - p[2][u]) + (p[2][u] - p[1][u]) * (sv - p[2][v])) / det;
+		float b = ((p[2][v] - p[0][v]) * (su - p[2][u]) + (p[0][u] - p[2][u]) * (sv - p[2][v])) / det;
+		float c = 1 - a - b;
+		if (a < -EPSILON || b < -EPSILON || c < -EPSILON) {
+			return null;
+		}
+		return new float[] {a, b, c};
+	}
+
+	private static float[] sub(float[] a, float[] b) {
+		return new float[] {a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+	}
+
+	private static float[] cross(float[] a, float[] b) {
+		return new float[] {a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+	}
+
+	private static void assertValue(String key, float[] expected, float[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(key, expected[i], actual[i], EPSILON);
+		}
+	}
+
+	private void materials() {
+		// Same texture on every side, a block with a different texture per side, and its turned copy
+		solids.add(material(1, false, terrain, cube(tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0))));
+		solids.add(material(2, false, terrain, cube(tile(1, 0, 0), tile(2, 0, 0), tile(3, 0, 0), tile(3, 1, 0), tile(3, 2, 0), tile(3, 3, 0))));
+		solids.add(material(3, false, terrain, cube(tile(1, 0, 1), tile(2, 0, 2), tile(3, 0, 3), tile(3, 1, 1), tile(3, 2, 2), tile(3, 3, 3))));
+		// Shares the texture of the first material, so its faces merge with it
+		solids.add(material(4, false, terrain, cube(tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0), tile(0, 0, 0))));
+		// Not tile wrapped, stays on the per block path
+		solids.add(material(5, false, plain, cube(tile(4, 4, 0), tile(4, 4, 0), tile(4, 4, 0), tile(4, 4, 0), tile(4, 4, 0), tile(4, 4, 0))));
+	}
+
+	private void terrain(long seed) {
+		materials();
+		Random random = new Random(seed);
+		for (int x = -1; x <= SIZE; x++) {
+			for (int z = -1; z <= SIZE; z++) {
+				int height = 8 + (int) Math.round(2 * Math.sin(x / 5.0) + 2 * Math.cos(z / 7.0));
+				for (int y = -1; y < height; y++) {
+					BlockMaterial material;
+					if (y < height - 3) {
+						material = solids.get(random.nextInt(8) == 0 ? 3 : 0);
+					} else if (y < height - 1) {
+						material = solids.get(1);
+					} else {
+						int r = random.nextInt(24);
+						material = solids.get(r == 0 ? 4 : r < 4 ? 2 : 1);
+					}
+					setBlock(x, y, z, material);
+				}
+				// Caves
+				if (random.nextInt(16) == 0) {
+					setBlock(x, height / 2, z, air);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGreedyMatchesPerBlock() {
+		terrain(1);
+		Map<RenderMaterial, String> names = new HashMap<RenderMaterial, String>();
+		names.put(terrain, "terrain");
+		names.put(plain, "plain");
+
+		ChunkMesh perBlock = mesh(false);
+		ChunkMesh greedy = mesh(true);
+		assertNull(perBlock.getMaterialsFaces().get(terrain).getBuffers().get(VertexAttributes.Texture1.getLayout()));
+		assertNotNull(greedy.getMaterialsFaces().get(terrain).getBuffers().get(VertexAttributes.Texture1.getLayout()));
+		assertNull(greedy.getMaterialsFaces().get(plain).getBuffers().get(VertexAttributes.Texture1.getLayout()));
+
+		Coverage expected = new Coverage(perBlock, names);
+		Coverage actual = new Coverage(greedy, names);
+		assertEquals(expected.samples.keySet(), actual.samples.keySet());
+		for (Map.Entry<String, float[]> entry : expected.samples.entrySet()) {
+			assertValue(entry.getKey(), entry.getValue(), actual.samples.get(entry.getKey()));
+		}
+		assertEquals(expected.area.keySet(), actual.area.keySet());
+		for (Map.Entry<String, Float> entry : expected.area.entrySet()) {
+			assertEquals(entry.getKey(), entry.getValue(), actual.area.get(entry.getKey()), EPSILON);
+		}
+		for (int c = 0; c < 3; c++) {
+			assertEquals(expected.min[c], actual.min[c], 0f);
+			assertEquals(expected.max[c], actual.max[c], 0f);
+		}
+		assertEquals(perBlock.getMaterialsFaces().get(plain).element, greedy.getMaterialsFaces().get(plain).element);
+		assertTrue("Greedy " + actual.vertices + " vertices, per block " + expected.vertices, actual.vertices * 3 < expected.vertices * 2);
+	}
+
+	@Test
+	public void testFullChunk() {
+		materials();
+		for (int x = -1; x <= SIZE; x++) {
+			for (int y = -1; y < SIZE; y++) {
+				for (int z = -1; z <= SIZE; z++) {
+					setBlock(x, y, z, solids.get(0));
+				}
+			}
+		}
+		// Only the top is visible, as a single quad
+		ChunkMesh greedy = mesh(true);
+		assertEquals(6, greedy.getMaterialsFaces().get(terrain).element);
+		Set<RenderMaterial> materials = new HashSet<RenderMaterial>(greedy.getMaterialsFaces().keySet());
+		materials.remove(terrain);
+		assertTrue(materials.isEmpty());
+		assertEquals(6 * SIZE * SIZE, mesh(false).getMaterialsFaces().get(terrain).element);
+	}
+}
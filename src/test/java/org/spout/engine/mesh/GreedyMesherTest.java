@@ -0,0 +1,176 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GreedyMesherTest {
+	private static final int SIZE = 16;
+
+	/**
+	 * A volume of material ids, 0 being air
+	 */
+	private static class Volume implements GreedyMesher.FaceSource {
+		final int[] blocks = new int[SIZE * SIZE * SIZE];
+
+		int get(int x, int y, int z) {
+			if (x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE) {
+				return 0;
+			}
+			return blocks[(x * SIZE + y) * SIZE + z];
+		}
+
+		void set(int x, int y, int z, int id) {
+			blocks[(x * SIZE + y) * SIZE + z] = id;
+		}
+
+		@Override
+		public int getFace(int x, int y, int z, int direction) {
+			int id = get(x, y, z);
+			if (id == 0) {
+				return GreedyMesher.NO_FACE;
+			}
+			int axis = direction >> 1;
+			int step = (direction & 1) == 1 ? 1 : -1;
+			int nx = x + (axis == 0 ? step : 0);
+			int ny = y + (axis == 1 ? step : 0);
+			int nz = z + (axis == 2 ? step : 0);
+			return get(nx, ny, nz) == 0 ? id : GreedyMesher.NO_FACE;
+		}
+
+		int countFaces() {
+			int faces = 0;
+			for (int x = 0; x < SIZE; x++) {
+				for (int y = 0; y < SIZE; y++) {
+					for (int z = 0; z < SIZE; z++) {
+						for (int d = 0; d < 6; d++) {
+							if (getFace(x, y, z, d) != GreedyMesher.NO_FACE) {
+								faces++;
+							}
+						}
+					}
+				}
+			}
+			return faces;
+		}
+	}
+
+	/**
+	 * Writes every quad out and checks the vertices stay on the volume
+	 */
+	private static class CheckingSink implements GreedyMesher.QuadSink {
+		final float[] positions = new float[24];
+		final float[] normals = new float[24];
+		final float[] texCoords = new float[12];
+		int vertices = 0;
+		int area = 0;
+
+		@Override
+		public void quad(int key, int direction, int x, int y, int z, int width, int height) {
+			vertices += GreedyMesher.writeQuad(direction, x, y, z, width, height, positions, 0, normals, 0, texCoords, 0);
+			area += width * height;
+			int axis = direction >> 1;
+			for (int v = 0; v < 6; v++) {
+				for (int c = 0; c < 3; c++) {
+					float p = positions[v * 4 + c];
+					assertTrue(p >= 0 && p <= SIZE);
+				}
+				assertEquals(1f, positions[v * 4 + 3], 0f);
+				assertEquals((direction & 1) == 1 ? 1f : -1f, normals[v * 4 + axis], 0f);
+			}
+			// Both triangles must face along the normal
+			for (int t = 0; t < 2; t++) {
+				float[] a = corner(t * 3), b = corner(t * 3 + 1), c = corner(t * 3 + 2);
+				float[] n = cross(sub(b, a), sub(c, a));
+				assertTrue(n[axis] * normals[axis] > 0);
+			}
+		}
+
+		float[] corner(int v) {
+			return new float[] {positions[v * 4], positions[v * 4 + 1], positions[v * 4 + 2]};
+		}
+	}
+
+	private static float[] sub(float[] a, float[] b) {
+		return new float[] {a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+	}
+
+	private static float[] cross(float[] a, float[] b) {
+		return new float[] {a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+	}
+
+	@Test
+	public void testSolidCube() {
+		Volume volume = new Volume();
+		Arrays.fill(volume.blocks, 1);
+		CheckingSink sink = new CheckingSink();
+		assertEquals(6, new GreedyMesher(SIZE).mesh(volume, sink));
+		assertEquals(36, sink.vertices);
+		assertEquals(6 * SIZE * SIZE, sink.area);
+	}
+
+	@Test
+	public void testMaterialsDoNotMerge() {
+		Volume volume = new Volume();
+		for (int x = 0; x < SIZE; x++) {
+			for (int z = 0; z < SIZE; z++) {
+				volume.set(x, 0, z, 1 + ((x + z) & 1));
+			}
+		}
+		CheckingSink sink = new CheckingSink();
+		new GreedyMesher(SIZE).mesh(volume, sink);
+		// Alternating materials never merge, so every face is its own quad
+		assertEquals(volume.countFaces(), sink.area);
+		assertEquals((2 * SIZE * SIZE + 4 * SIZE) * 6, sink.vertices);
+	}
+
+	@Test
+	public void testRandomTerrain() {
+		Random random = new Random(1);
+		Volume volume = new Volume();
+		for (int x = 0; x < SIZE; x++) {
+			for (int z = 0; z < SIZE; z++) {
+				int height = 4 + random.nextInt(4);
+				for (int y = 0; y < height; y++) {
+					volume.set(x, y, z, y < height - 1 ? 1 : 2);
+				}
+			}
+		}
+		CheckingSink sink = new CheckingSink();
+		int quads = new GreedyMesher(SIZE).mesh(volume, sink);
+		int faces = volume.countFaces();
+		// Every visible unit face is covered exactly once, by fewer quads
+		assertEquals(faces, sink.area);
+		assertTrue(quads < faces / 2);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol.builtin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.math.Vector3;
+
+public class ChunkSendQueueTest {
+	private static final Vector3 EAST = new Vector3(1, 0, 0);
+	/**
+	 * The chunks the world returns when a queued chunk was unloaded, by "x,y,z"
+	 */
+	private final Map<String, Chunk> loaded = new HashMap<String, Chunk>();
+	private final World world = Mockito.mock(World.class, new Answer<Object>() {
+		@Override
+		public Object answer(InvocationOnMock invocation) {
+			if (invocation.getMethod().getName().equals("getChunk")) {
+				Object[] args = invocation.getArguments();
+				return loaded.get(args[0] + "," + args[1] + "," + args[2]);
+			}
+			return null;
+		}
+	});
+	/**
+	 * The center of chunk 0, 0, 0
+	 */
+	private final Point position = new Point(world, Chunk.BLOCKS.HALF_SIZE, Chunk.BLOCKS.HALF_SIZE, Chunk.BLOCKS.HALF_SIZE);
+	private final ChunkSendQueue queue = new ChunkSendQueue();
+
+	private static Chunk chunk(final int x, final int y, final int z, final boolean isLoaded) {
+		return Mockito.mock(Chunk.class, new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) {
+				String name = invocation.getMethod().getName();
+				if (name.equals("getX")) {
+					return x;
+				} else if (name.equals("getY")) {
+					return y;
+				} else if (name.equals("getZ")) {
+					return z;
+				} else if (name.equals("isLoaded")) {
+					return isLoaded;
+				}
+				return null;
+			}
+		});
+	}
+
+	private Chunk add(int x, int y, int z) {
+		Chunk c = chunk(x, y, z, true);
+		queue.add(c);
+		return c;
+	}
+
+	/**
+	 * Records the chunks it is given, charging each a fixed size
+	 */
+	private static class Recorder implements ChunkSendQueue.Sender {
+		private final List<Chunk> sent = new ArrayList<Chunk>();
+		private final int bytes;
+
+		private Recorder(int bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int send(Chunk c) {
+			sent.add(c);
+			return bytes;
+		}
+	}
+
+	@Test
+	public void testOrder() {
+		Chunk far = add(3, 0, 0);
+		Chunk behind = add(-1, 0, 0);
+		Chunk side = add(0, 0, 1);
+		Chunk ahead = add(1, 0, 0);
+
+		Recorder recorder = new Recorder(1);
+		assertEquals(4, queue.send(position, EAST, Integer.MAX_VALUE, recorder));
+		assertSame(ahead, recorder.sent.get(0));
+		assertSame(side, recorder.sent.get(1));
+		assertSame(behind, recorder.sent.get(2));
+		assertSame(far, recorder.sent.get(3));
+		assertEquals(0, queue.size());
+
+		// Without a direction, only the distance counts
+		far = add(0, 2, 0);
+		Chunk near = add(0, -1, 0);
+		recorder = new Recorder(1);
+		queue.send(position, null, Integer.MAX_VALUE, recorder);
+		assertSame(near, recorder.sent.get(0));
+		assertSame(far, recorder.sent.get(1));
+	}
+
+	@Test
+	public void testBudget() {
+		for (int i = 1; i <= 5; i++) {
+			add(i, 0, 0);
+		}
+		// Each chunk is charged what the sender reports, sending stops once the budget is used up
+		Recorder recorder = new Recorder(1000);
+		assertEquals(3, queue.send(position, EAST, 2500, recorder));
+		assertEquals(3, recorder.sent.size());
+		assertEquals(2, queue.size());
+
+		// One chunk is always sent, even if it is larger than the budget
+		recorder = new Recorder(1000000);
+		assertEquals(1, queue.send(position, EAST, 0, recorder));
+		assertEquals(1, queue.size());
+
+		// Small chunks let more through for the same budget
+		for (int i = 6; i <= 10; i++) {
+			add(i, 0, 0);
+		}
+		recorder = new Recorder(100);
+		assertEquals(6, queue.send(position, EAST, 2500, recorder));
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testCancel() {
+		add(1, 0, 0);
+		add(2, 0, 0);
+		add(3, 0, 0);
+		assertTrue(queue.isPending(2, 0, 0));
+		assertTrue(queue.cancel(2, 0, 0));
+		assertFalse(queue.isPending(2, 0, 0));
+		assertFalse("A chunk can only be cancelled once", queue.cancel(2, 0, 0));
+
+		// The player leaves the last chunk while the first one is being sent
+		final List<Chunk> sent = new ArrayList<Chunk>();
+		int count = queue.send(position, EAST, Integer.MAX_VALUE, new ChunkSendQueue.Sender() {
+			@Override
+			public int send(Chunk c) {
+				sent.add(c);
+				queue.cancel(3, 0, 0);
+				return 1;
+			}
+		});
+		assertEquals(1, count);
+		assertEquals(1, sent.size());
+		assertEquals(1, sent.get(0).getX());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testUnloadedChunk() {
+		// Reloaded since it was queued, the current chunk is sent instead
+		queue.add(chunk(1, 0, 0, false));
+		Chunk current = chunk(1, 0, 0, true);
+		loaded.put("1,0,0", current);
+		// Unloaded with nothing to replace it
+		queue.add(chunk(2, 0, 0, false));
+
+		Recorder recorder = new Recorder(1);
+		assertEquals(1, queue.send(position, EAST, Integer.MAX_VALUE, recorder));
+		assertSame(current, recorder.sent.get(0));
+		assertEquals(0, queue.size());
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OcclusionCullerTest {
+	private static final int SIZE = 16;
+
+	private static final ChunkConnectivity.OpacitySource SOLID = new ChunkConnectivity.OpacitySource() {
+		@Override
+		public boolean isOpaque(int x, int y, int z) {
+			return true;
+		}
+	};
+
+	private static final ChunkConnectivity.OpacitySource AIR = new ChunkConnectivity.OpacitySource() {
+		@Override
+		public boolean isOpaque(int x, int y, int z) {
+			return false;
+		}
+	};
+
+	@Test
+	public void testConnectivity() {
+		ChunkConnectivity connectivity = new ChunkConnectivity(SIZE);
+		assertEquals(0, connectivity.compute(SOLID));
+		assertEquals(ChunkConnectivity.ALL, connectivity.compute(AIR));
+
+		// A tunnel along x only links the two x faces
+		int tunnel = connectivity.compute(new ChunkConnectivity.OpacitySource() {
+			@Override
+			public boolean isOpaque(int x, int y, int z) {
+				return y != 8 || z != 8;
+			}
+		});
+		assertTrue(ChunkConnectivity.isConnected(tunnel, 0, 1));
+		assertFalse(ChunkConnectivity.isConnected(tunnel, 0, 2));
+		assertFalse(ChunkConnectivity.isConnected(tunnel, 3, 4));
+
+		// A closed cave inside the chunk touches no face
+		int cave = connectivity.compute(new ChunkConnectivity.OpacitySource() {
+			@Override
+			public boolean isOpaque(int x, int y, int z) {
+				return x < 4 || x > 10 || y < 4 || y > 10 || z < 4 || z > 10;
+			}
+		});
+		assertEquals(0, cave);
+	}
+
+	@Test
+	public void testOpenWorldIsVisible() {
+		OcclusionCuller culler = new OcclusionCuller();
+		assertTrue(culler.update(0, 0, 0, 3));
+		assertFalse(culler.update(0, 0, 0, 3));
+		for (int x = -3; x <= 3; x++) {
+			for (int y = -3; y <= 3; y++) {
+				for (int z = -3; z <= 3; z++) {
+					assertTrue(culler.isVisible(x, y, z));
+				}
+			}
+		}
+		assertFalse(culler.isVisible(4, 0, 0));
+	}
+
+	@Test
+	public void testSolidShellHidesWhatIsBehind() {
+		OcclusionCuller culler = new OcclusionCuller();
+		// The camera chunk is surrounded by solid chunks
+		for (int x = -1; x <= 1; x++) {
+			for (int y = -1; y <= 1; y++) {
+				for (int z = -1; z <= 1; z++) {
+					if (x != 0 || y != 0 || z != 0) {
+						culler.setConnectivity(x, y, z, 0);
+					}
+				}
+			}
+		}
+		culler.update(0, 0, 0, 4);
+		// The shell itself is drawn, nothing past it is
+		assertTrue(culler.isVisible(1, 0, 0));
+		assertTrue(culler.isVisible(0, -1, 0));
+		assertFalse(culler.isVisible(2, 0, 0));
+		assertFalse(culler.isVisible(0, 0, -3));
+		assertFalse(culler.isAnyVisible(2, 2, 2, 2, 2, 2));
+
+		// Opening a tunnel along x through the shell shows the chunks behind it
+		culler.setConnectivity(1, 0, 0, new ChunkConnectivity(SIZE).compute(new ChunkConnectivity.OpacitySource() {
+			@Override
+			public boolean isOpaque(int x, int y, int z) {
+				return y != 8 || z != 8;
+			}
+		}));
+		assertTrue(culler.update(0, 0, 0, 4));
+		assertTrue(culler.isVisible(2, 0, 0));
+		assertTrue(culler.isVisible(3, 1, -1));
+		assertFalse(culler.isVisible(-2, 0, 0));
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.resources.loader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.spout.engine.mesh.BaseMesh;
+import org.spout.engine.mesh.BinaryMesh;
+import org.spout.engine.renderer.GLBufferContainer;
+
+public class MeshLoaderTest {
+	private static final String MESH = "/models/meshes/skydome.obj";
+	private static final int RUNS = 5;
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] read(InputStream stream) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static byte[] write(BaseMesh mesh) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryMesh.write(mesh, out);
+		return out.toByteArray();
+	}
+
+	private static float[] toArray(Object buffer) {
+		FloatBuffer view = ((FloatBuffer) buffer).duplicate();
+		view.rewind();
+		float[] array = new float[view.remaining()];
+		view.get(array);
+		return array;
+	}
+
+	private static void assertSameMesh(BaseMesh expected, BaseMesh actual) {
+		GLBufferContainer a = expected.getContainer();
+		GLBufferContainer b = actual.getContainer();
+		assertEquals(a.element, b.element);
+		assertEquals(a.getBuffers().keySet(), b.getBuffers().keySet());
+		for (Integer layout : a.getBuffers().keySet()) {
+			assertArrayEquals(toArray(a.getBuffers().get(layout)), toArray(b.getBuffers().get(layout)), 0);
+		}
+		if (a.getVerticeIndex() == null) {
+			assertNull(b.getVerticeIndex());
+		} else {
+			assertArrayEquals(a.getVerticeIndex(), b.getVerticeIndex());
+		}
+	}
+
+	@Test
+	public void testCompiledLoadsFaster() throws IOException {
+		byte[] obj = read(MeshLoaderTest.class.getResourceAsStream(MESH));
+		BaseMesh mesh = MeshLoader.loadObj(new ByteArrayInputStream(obj));
+		byte[] compiled = write(mesh);
+		assertSameMesh(mesh, BinaryMesh.read(compiled, compiled.length));
+
+		// Best of several runs, after a warm up, so a pause of the test machine does not decide the result
+		long objTime = Long.MAX_VALUE;
+		long compiledTime = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS * 2; i++) {
+			long start = System.nanoTime();
+			MeshLoader.loadObj(new ByteArrayInputStream(obj));
+			long middle = System.nanoTime();
+			BinaryMesh.read(compiled, compiled.length);
+			long end = System.nanoTime();
+			if (i >= RUNS) {
+				objTime = Math.min(objTime, middle - start);
+				compiledTime = Math.min(compiledTime, end - middle);
+			}
+		}
+		assertTrue("Compiled mesh took " + compiledTime + "ns, OBJ took " + objTime + "ns", compiledTime < objTime);
+	}
+
+	@Test
+	public void testConcurrentCacheWrites() throws Exception {
+		final BaseMesh mesh = MeshLoader.loadObj(MeshLoaderTest.class.getResourceAsStream(MESH));
+		final File cache = new File(folder.getRoot(), "mesh.smesh");
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			writers.add(new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10; j++) {
+						MeshLoader.writeCompiled(mesh, cache);
+					}
+				}
+			});
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		// Only the cache is left, and it was never written by two loaders at once
+		assertArrayEquals(new String[] {cache.getName()}, folder.getRoot().list());
+		byte[] data = read(new FileInputStream(cache));
+		assertSameMesh(mesh, BinaryMesh.read(data, data.length));
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.powermock.api.mockito.PowerMockito;
+import org.spout.api.scheduler.Scheduler;
+import org.spout.api.scheduler.Task;
+
+public class AsyncTaskExecutorTest {
+	private static final ThreadFactory FACTORY = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "AsyncTaskExecutorTest");
+			t.setDaemon(true);
+			return t;
+		}
+	};
+	private final CountDownLatch release = new CountDownLatch(1);
+	private AsyncTaskExecutor executor;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * A task which counts itself as started, then blocks until the test ends
+	 */
+	private Runnable blocker(final CountDownLatch started, final AtomicInteger active, final AtomicInteger maxActive) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				int now = active.incrementAndGet();
+				synchronized (maxActive) {
+					maxActive.set(Math.max(maxActive.get(), now));
+				}
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testOwnerLimits() throws InterruptedException {
+		// 4 threads, so one owner may run 2 tasks at once and queue 3 more
+		executor = new AsyncTaskExecutor(FACTORY, 4, 3);
+		Object owner = new Object();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		CountDownLatch started = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++) {
+			assertNotNull(executor.submit(owner, blocker(started, active, maxActive)));
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		CountDownLatch never = new CountDownLatch(1);
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(executor.submit(owner, blocker(never, active, maxActive)));
+		}
+		assertNull("Queue over the limit should reject", executor.submit(owner, blocker(never, active, maxActive)));
+		assertEquals(3, executor.getQueued());
+
+		// The queued tasks must wait for the owner's running ones, even with free threads
+		Thread.sleep(100);
+		assertEquals(2, maxActive.get());
+
+		// Other owners are not affected by a full queue
+		CountDownLatch other = new CountDownLatch(1);
+		assertNotNull(executor.submit(new Object(), blocker(other, active, maxActive)));
+		assertTrue(other.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancelRemovesQueuedTask() throws InterruptedException {
+		executor = new AsyncTaskExecutor(FACTORY, 2, 2);
+		Object owner = new Object();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		CountDownLatch started = new CountDownLatch(1);
+		assertNotNull(executor.submit(owner, blocker(started, active, maxActive)));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		CountDownLatch never = new CountDownLatch(1);
+		Future<?> first = executor.submit(owner, blocker(never, active, maxActive));
+		assertNotNull(executor.submit(owner, blocker(never, active, maxActive)));
+		assertNull(executor.submit(owner, blocker(never, active, maxActive)));
+
+		assertTrue(first.cancel(false));
+		assertEquals(1, executor.getQueued());
+		assertNotNull("Cancelled task should free its queue slot", executor.submit(owner, blocker(never, active, maxActive)));
+		assertEquals(2, executor.getQueued());
+	}
+
+	@Test
+	public void testBurstReachesMaxThreads() throws InterruptedException {
+		final int threads = 8;
+		executor = new AsyncTaskExecutor(FACTORY, threads, 64);
+
+		// Leave an idle worker behind, as a running server would
+		final CountDownLatch warmup = new CountDownLatch(1);
+		executor.submit(null, new Runnable() {
+			@Override
+			public void run() {
+				warmup.countDown();
+			}
+		});
+		assertTrue(warmup.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		// Each owner may use half the threads, so two owners together can fill the pool
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(threads);
+		Object[] owners = {new Object(), new Object()};
+		for (int i = 0; i < threads; i++) {
+			assertNotNull(executor.submit(owners[i % 2], blocker(started, active, maxActive)));
+		}
+		assertTrue("Burst should run on all threads at once", started.await(5, TimeUnit.SECONDS));
+		assertEquals(threads, maxActive.get());
+	}
+
+	@Test
+	public void testRejectedTaskIsReturnedStopped() throws InterruptedException {
+		executor = new AsyncTaskExecutor(FACTORY, 2, 1);
+		SpoutTaskManager manager = new SpoutTaskManager(PowerMockito.mock(Scheduler.class), Thread.currentThread(), 0L, executor);
+		Object owner = new Object();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		CountDownLatch started = new CountDownLatch(1);
+		Task running = manager.scheduleAsyncTask(owner, blocker(started, active, maxActive));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		CountDownLatch never = new CountDownLatch(1);
+		Task queued = manager.scheduleAsyncTask(owner, blocker(never, active, maxActive));
+		assertTrue(running.isAlive());
+		assertTrue(queued.isAlive());
+
+		// The queue is full, the caller still gets a task but it will never run
+		final AtomicInteger ran = new AtomicInteger();
+		Task rejected = manager.scheduleAsyncTask(owner, new Runnable() {
+			@Override
+			public void run() {
+				ran.incrementAndGet();
+			}
+		});
+		assertNotNull("Rejected tasks should not be returned as null", rejected);
+		assertFalse(rejected.isAlive());
+		assertFalse(manager.isQueued(rejected.getTaskId()));
+		assertTrue(manager.isQueued(queued.getTaskId()));
+
+		release.countDown();
+		Thread.sleep(100);
+		assertEquals(0, ran.get());
+	}
+}
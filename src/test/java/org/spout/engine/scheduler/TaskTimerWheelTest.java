@@ -0,0 +1,234 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.powermock.api.mockito.PowerMockito;
+import org.spout.api.scheduler.Scheduler;
+import org.spout.api.scheduler.Task;
+import org.spout.api.scheduler.TaskPriority;
+
+public class TaskTimerWheelTest {
+	private static final long RESOLUTION = SpoutScheduler.PULSE_EVERY / 4;
+	/**
+	 * The first tick of each level above the lowest one, and of the overflow list
+	 */
+	private static final long[] LEVEL_TICKS = {1L << 6, 1L << 12, 1L << 18, 1L << 24};
+	private SpoutTaskManager manager;
+	/**
+	 * The up time after each heartbeat
+	 */
+	private final TreeSet<Long> beats = new TreeSet<Long>();
+
+	private void start(long age) {
+		manager = new SpoutTaskManager(PowerMockito.mock(Scheduler.class), Thread.currentThread(), null, age);
+		beats.clear();
+	}
+
+	private void beat(long delta) {
+		manager.heartbeat(delta);
+		beats.add(manager.getUpTime());
+	}
+
+	/**
+	 * Runs heartbeats until the given time, with small uneven steps around it so a task firing a tick late or early is caught
+	 */
+	private void advanceTo(long time) {
+		long now = manager.getUpTime();
+		if (time - 100 > now) {
+			beat(time - 100 - now);
+		}
+		while (manager.getUpTime() < time + 100) {
+			beat(7);
+		}
+	}
+
+	private Recorder schedule(long delay, long period) {
+		Recorder r = new Recorder();
+		r.task = manager.scheduleSyncRepeatingTask(null, r, delay, period, TaskPriority.NORMAL);
+		assertNotNull(r.task);
+		return r;
+	}
+
+	/**
+	 * The first heartbeat at or after the given time, which is when a task due at that time has to run
+	 */
+	private long expected(long due) {
+		Long beat = beats.ceiling(due);
+		assertNotNull("No heartbeat at or after " + due, beat);
+		return beat;
+	}
+
+	private void checkDelays(long age) {
+		start(age);
+		List<Long> delays = new ArrayList<Long>(Arrays.asList(0L, 1L, RESOLUTION - 1, RESOLUTION, RESOLUTION + 1, 100L, 250000000L));
+		for (long ticks : LEVEL_TICKS) {
+			long edge = ticks * RESOLUTION;
+			delays.addAll(Arrays.asList(edge - RESOLUTION, edge - 1, edge, edge + 1, edge + RESOLUTION, edge * 2 + 5));
+		}
+		// Delays which cross a level boundary of the wheel relative to the start time
+		long startTick = age / RESOLUTION;
+		for (long ticks : LEVEL_TICKS) {
+			long boundary = (startTick / ticks + 1) * ticks * RESOLUTION - age;
+			delays.addAll(Arrays.asList(boundary - 1, boundary, boundary + 1));
+		}
+		List<Recorder> tasks = new ArrayList<Recorder>();
+		TreeSet<Long> due = new TreeSet<Long>();
+		for (long delay : delays) {
+			tasks.add(schedule(delay, -1));
+			due.add(age + delay);
+		}
+		for (long time : due) {
+			advanceTo(time);
+		}
+		for (int i = 0; i < tasks.size(); i++) {
+			Recorder r = tasks.get(i);
+			long time = age + delays.get(i);
+			assertEquals("Runs for delay " + delays.get(i) + " from " + age, 1, r.runs.size());
+			assertEquals("Run time for delay " + delays.get(i) + " from " + age, expected(time), (long) r.runs.get(0));
+			assertFalse(r.task.isAlive());
+		}
+		assertTrue(manager.getPendingTasks().isEmpty());
+	}
+
+	@Test
+	public void testDelaysAcrossLevels() {
+		checkDelays(0);
+		checkDelays(1000003);
+		// Just before the top level wraps
+		checkDelays(LEVEL_TICKS[3] * RESOLUTION - 5);
+	}
+
+	@Test
+	public void testRepeating() {
+		start(17);
+		long[][] params = {{0, 30}, {5, 50}, {40, 1000}, {1000, 12345}, {60000, 777}};
+		List<Recorder> tasks = new ArrayList<Recorder>();
+		for (long[] p : params) {
+			tasks.add(schedule(p[0], p[1]));
+		}
+		long end = 17 + 200000;
+		while (manager.getUpTime() < end) {
+			beat(SpoutScheduler.PULSE_EVERY);
+		}
+		for (int i = 0; i < tasks.size(); i++) {
+			Recorder r = tasks.get(i);
+			long period = params[i][1];
+			long next = 17 + params[i][0];
+			List<Long> runs = new ArrayList<Long>();
+			while (beats.ceiling(next) != null) {
+				long time = expected(next);
+				runs.add(time);
+				next += period;
+				if (next <= time) {
+					next = time + 1;
+				}
+			}
+			assertEquals("Runs for period " + period, runs, r.runs);
+			assertTrue(r.task.isAlive());
+		}
+		assertEquals(tasks.size(), manager.getPendingTasks().size());
+	}
+
+	@Test
+	public void testCancel() {
+		start(0);
+		Recorder soon = schedule(100, -1);
+		Recorder later = schedule(LEVEL_TICKS[2] * RESOLUTION + 1, -1);
+		Recorder repeating = schedule(0, 100);
+		Recorder kept = schedule(1000, -1);
+		Recorder unscheduled = new Recorder();
+		SpoutTask dead = new SpoutTask(manager, null, null, unscheduled, true, 0, -1, TaskPriority.NORMAL, false);
+		dead.stop();
+		manager.schedule(dead);
+
+		soon.task.cancel();
+		later.task.cancel();
+		beat(SpoutScheduler.PULSE_EVERY);
+		beat(SpoutScheduler.PULSE_EVERY);
+		beat(SpoutScheduler.PULSE_EVERY);
+		assertEquals(2, repeating.runs.size());
+		manager.cancelTask(repeating.task);
+
+		List<Task> pending = manager.getPendingTasks();
+		assertEquals(1, pending.size());
+		assertTrue(pending.contains(kept.task));
+
+		advanceTo(LEVEL_TICKS[2] * RESOLUTION * 2);
+		assertTrue(soon.runs.isEmpty());
+		assertTrue(later.runs.isEmpty());
+		assertTrue(unscheduled.runs.isEmpty());
+		assertEquals(2, repeating.runs.size());
+		assertEquals(Arrays.asList(expected(1000)), kept.runs);
+		assertTrue(manager.getPendingTasks().isEmpty());
+		assertFalse(manager.isQueued(repeating.task.getTaskId()));
+	}
+
+	@Test
+	public void testPendingTasks() {
+		start(0);
+		Recorder once = schedule(100, -1);
+		Recorder repeating = schedule(50, 200);
+		Recorder far = schedule(LEVEL_TICKS[3] * RESOLUTION + 1, -1);
+
+		List<Task> pending = manager.getPendingTasks();
+		assertEquals(3, pending.size());
+		assertTrue(pending.containsAll(Arrays.asList(once.task, repeating.task, far.task)));
+
+		advanceTo(100);
+		assertEquals(1, once.runs.size());
+		pending = manager.getPendingTasks();
+		assertEquals(2, pending.size());
+		assertFalse(pending.contains(once.task));
+		assertFalse(manager.isQueued(once.task.getTaskId()));
+
+		advanceTo(LEVEL_TICKS[3] * RESOLUTION + 1);
+		assertEquals(1, far.runs.size());
+		pending = manager.getPendingTasks();
+		assertEquals(Arrays.asList((Task) repeating.task), pending);
+	}
+
+	private class Recorder implements Runnable {
+		private final List<Long> runs = new ArrayList<Long>();
+		private Task task;
+
+		@Override
+		public void run() {
+			runs.add(manager.getUpTime());
+		}
+	}
+}
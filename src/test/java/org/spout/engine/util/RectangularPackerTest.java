@@ -0,0 +1,210 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.render.Texture;
+import org.spout.engine.resources.server.ServerTexture;
+import org.spout.engine.util.RectangularPacker.Node;
+
+public class RectangularPackerTest {
+	/**
+	 * Offset of the first placement in the cache file, after the magic, key and count
+	 */
+	private static final int FIRST_PLACEMENT = 4 + 8 + 4;
+	private File cache;
+
+	@Before
+	public void setUp() throws IOException {
+		cache = File.createTempFile("packer", ".cache");
+		cache.delete();
+	}
+
+	@After
+	public void tearDown() {
+		cache.delete();
+	}
+
+	private static List<Texture> randomTextures(int count, int maxSide, long seed) {
+		Random random = new Random(seed);
+		List<Texture> textures = new ArrayList<Texture>(count);
+		for (int i = 0; i < count; i++) {
+			int w = 1 + random.nextInt(maxSide);
+			int h = 1 + random.nextInt(maxSide);
+			int[] pixels = new int[w * h];
+			for (int p = 0; p < pixels.length; p++) {
+				pixels[p] = random.nextInt();
+			}
+			textures.add(new ServerTexture(pixels, w, h));
+		}
+		return textures;
+	}
+
+	/**
+	 * Checks every texture is placed inside a page, at its own size, without overlapping another
+	 */
+	private static void assertValid(RectangularPacker packer, List<Texture> textures, int maxSize) {
+		List<Node> nodes = new ArrayList<Node>();
+		for (Texture texture : textures) {
+			Node node = packer.getFits().get(texture);
+			assertTrue(node != null);
+			assertEquals(texture.getWidth(), node.getWidth());
+			assertEquals(texture.getHeight(), node.getHeight());
+			assertTrue(node.getPage() >= 0 && node.getPage() < packer.getPageCount());
+			assertTrue(node.getX() >= 0 && node.getX() + node.getWidth() <= maxSize);
+			assertTrue(node.getY() >= 0 && node.getY() + node.getHeight() <= maxSize);
+			for (Node other : nodes) {
+				boolean overlaps = node.getPage() == other.getPage()
+						&& node.getX() < other.getX() + other.getWidth() && other.getX() < node.getX() + node.getWidth()
+						&& node.getY() < other.getY() + other.getHeight() && other.getY() < node.getY() + node.getHeight();
+				assertFalse(overlaps);
+			}
+			nodes.add(node);
+		}
+	}
+
+	@Test
+	public void testNoOverlaps() {
+		for (long seed = 0; seed < 5; seed++) {
+			List<Texture> textures = randomTextures(200, 48, seed);
+			RectangularPacker packer = new RectangularPacker(256);
+			packer.addAll(textures);
+			assertValid(packer, textures, 256);
+		}
+	}
+
+	@Test
+	public void testPageOverflow() {
+		List<Texture> textures = new ArrayList<Texture>();
+		for (int i = 0; i < 5; i++) {
+			textures.add(new ServerTexture(new int[64 * 64], 64, 64));
+		}
+		RectangularPacker packer = new RectangularPacker(64);
+		packer.addAll(textures);
+		assertEquals(5, packer.getPageCount());
+		assertValid(packer, textures, 64);
+
+		// Small textures still go into the first page with room
+		Texture small = new ServerTexture(new int[4], 2, 2);
+		RectangularPacker mixed = new RectangularPacker(64);
+		mixed.add(new ServerTexture(new int[64 * 32], 64, 32));
+		assertEquals(0, mixed.add(small).getPage());
+		assertEquals(1, mixed.getPageCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		new RectangularPacker(64).add(new ServerTexture(new int[65], 65, 1));
+	}
+
+	@Test
+	public void testCacheRoundTrip() {
+		List<Texture> textures = randomTextures(100, 32, 1);
+		RectangularPacker packed = RectangularPacker.packTextures(textures, 256, cache);
+		assertTrue(cache.exists());
+		RectangularPacker cached = RectangularPacker.packTextures(textures, 256, cache);
+		assertEquals(packed.getPageCount(), cached.getPageCount());
+		for (Texture texture : textures) {
+			Node a = packed.getFits().get(texture);
+			Node b = cached.getFits().get(texture);
+			assertEquals(a.getPage(), b.getPage());
+			assertEquals(a.getX(), b.getX());
+			assertEquals(a.getY(), b.getY());
+		}
+	}
+
+	@Test
+	public void testAddAfterCacheLoad() {
+		List<Texture> textures = randomTextures(60, 32, 2);
+		RectangularPacker.packTextures(textures, 128, cache);
+		RectangularPacker cached = RectangularPacker.packTextures(textures, 128, cache);
+
+		// New textures must not land on the placements restored from the cache
+		List<Texture> all = new ArrayList<Texture>(textures);
+		List<Texture> more = randomTextures(60, 32, 3);
+		for (Texture texture : more) {
+			cached.add(texture);
+		}
+		all.addAll(more);
+		assertValid(cached, all, 128);
+	}
+
+	@Test
+	public void testCorruptCache() throws IOException {
+		List<Texture> textures = randomTextures(50, 32, 4);
+		int[][] corruptions = {
+				{0, -1}, // negative page
+				{0, Integer.MAX_VALUE}, // huge page
+				{1, 1000000}, // x past the page
+				{2, -5}, // negative y
+				{1, 128 - textures.get(0).getWidth() + 1}, // x just past the edge
+		};
+		for (int[] corruption : corruptions) {
+			RectangularPacker.packTextures(textures, 128, cache);
+			RandomAccessFile file = new RandomAccessFile(cache, "rw");
+			try {
+				file.seek(FIRST_PLACEMENT + corruption[0] * 4);
+				file.writeInt(corruption[1]);
+			} finally {
+				file.close();
+			}
+			RectangularPacker packer = RectangularPacker.packTextures(textures, 128, cache);
+			assertValid(packer, textures, 128);
+			cache.delete();
+		}
+
+		// Two textures at the same spot
+		RectangularPacker.packTextures(textures, 128, cache);
+		RandomAccessFile file = new RandomAccessFile(cache, "rw");
+		try {
+			file.seek(FIRST_PLACEMENT + 12);
+			file.writeInt(0);
+			file.writeInt(0);
+			file.writeInt(0);
+			file.seek(FIRST_PLACEMENT);
+			file.writeInt(0);
+			file.writeInt(0);
+			file.writeInt(0);
+		} finally {
+			file.close();
+		}
+		assertValid(RectangularPacker.packTextures(textures, 128, cache), textures, 128);
+	}
+}
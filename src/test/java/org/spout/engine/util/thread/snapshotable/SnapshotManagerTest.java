@@ -0,0 +1,130 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SnapshotManagerTest {
+	private static final int SHARDS = 4;
+	private static final int COUNT = SnapshotManager.SHARD_SIZE * 8;
+	private final SnapshotManager manager = new SnapshotManager(SHARDS);
+
+	/**
+	 * Records the threads it was copied on
+	 */
+	private static class Recorder implements DirtySnapshotable {
+		private final Set<Thread> threads;
+		private volatile boolean dirty = true;
+		private int copies = 0;
+
+		private Recorder(SnapshotManager manager, Set<Thread> threads) {
+			this.threads = threads;
+			manager.add(this);
+		}
+
+		@Override
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		@Override
+		public void copySnapshot() {
+			threads.add(Thread.currentThread());
+			copies++;
+			dirty = false;
+		}
+	}
+
+	@Test
+	public void testParallelCopy() {
+		SnapshotableInt[] ints = new SnapshotableInt[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			ints[i] = new SnapshotableInt(manager, -1);
+		}
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < COUNT; i++) {
+				ints[i].set(i * 31 + round);
+			}
+			manager.copyAllSnapshots();
+			for (int i = 0; i < COUNT; i++) {
+				assertEquals(i * 31 + round, ints[i].get());
+			}
+			assertEquals(SHARDS, manager.getLastShards());
+		}
+	}
+
+	@Test
+	public void testShardsUseThreads() {
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		Recorder[] recorders = new Recorder[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			recorders[i] = new Recorder(manager, threads);
+		}
+		manager.copyAllSnapshots();
+		for (Recorder r : recorders) {
+			assertEquals(1, r.copies);
+		}
+		assertEquals(SHARDS, manager.getLastShards());
+		// The first shard is copied on the calling thread, the others on the pool
+		assertTrue(threads.contains(Thread.currentThread()));
+		assertTrue(threads.size() >= 2);
+		assertTrue(threads.size() <= SHARDS);
+	}
+
+	@Test
+	public void testOnlyDirtyCounts() {
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		Recorder[] recorders = new Recorder[COUNT];
+		for (int i = 0; i < COUNT; i++) {
+			recorders[i] = new Recorder(manager, threads);
+		}
+		manager.copyAllSnapshots();
+
+		// A few dirty snapshotables among many clean ones are copied on the calling thread
+		threads.clear();
+		for (int i = 0; i < COUNT; i += COUNT / 4) {
+			recorders[i].dirty = true;
+		}
+		manager.copyAllSnapshots();
+		assertEquals(1, manager.getLastShards());
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+		for (int i = 0; i < COUNT; i++) {
+			assertEquals(i % (COUNT / 4) == 0 ? 2 : 1, recorders[i].copies);
+		}
+
+		// Nothing to copy
+		manager.copyAllSnapshots();
+		assertEquals(0, manager.getLastShards());
+	}
+}
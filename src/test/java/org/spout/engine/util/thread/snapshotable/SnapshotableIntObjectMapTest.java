@@ -0,0 +1,188 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SnapshotableIntObjectMapTest {
+	private final SnapshotManager manager = new SnapshotManager();
+	private final SnapshotableIntObjectMap<String> map = new SnapshotableIntObjectMap<String>(manager);
+	private final SnapshotableHashMap<Integer, String> reference = new SnapshotableHashMap<Integer, String>(manager);
+
+	private void snapshot() {
+		assertEquals(reference.isDirty(), map.isDirty());
+		map.copySnapshot();
+		reference.copySnapshot();
+		assertFalse(map.isDirty());
+	}
+
+	/**
+	 * Compares both maps for every key in the range, live and snapshot
+	 */
+	private void compare(int minKey, int maxKey) {
+		for (int key = minKey; key <= maxKey; key++) {
+			assertSame(reference.getLive().get(key), map.getLive(key));
+			assertSame(reference.get().get(key), map.get(key));
+			String live = reference.getLive().get(key);
+			assertSame(live != null ? live : reference.get().get(key), map.getValue(key));
+		}
+		assertValues(reference.getLive(), map.getLive());
+		assertValues(reference.get(), map.get());
+	}
+
+	private static void assertValues(Map<Integer, String> expected, Collection<String> actual) {
+		List<String> a = new ArrayList<String>(expected.values());
+		List<String> b = new ArrayList<String>(actual);
+		Collections.sort(a);
+		Collections.sort(b);
+		assertEquals(a, b);
+		assertEquals(expected.size(), actual.size());
+	}
+
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(1);
+		int range = 300;
+		for (int step = 0; step < 20000; step++) {
+			int key = random.nextInt(range) - range / 2;
+			String value = "v" + step;
+			switch (random.nextInt(5)) {
+				case 0:
+				case 1:
+					assertSame(reference.put(key, value), map.put(key, value));
+					break;
+				case 2:
+					assertSame(reference.putIfAbsent(key, value), map.putIfAbsent(key, value));
+					break;
+				case 3:
+					assertSame(reference.remove(key), map.remove(key));
+					break;
+				default:
+					String current = reference.getLive().get(key);
+					String expected = random.nextBoolean() ? current : value;
+					assertEquals(reference.remove(key, expected), map.remove(key, expected));
+			}
+			if (random.nextInt(50) == 0) {
+				snapshot();
+				compare(-range, range);
+			}
+			// Shift the key range now and then, so tables fill with removed keys and resize
+			if (step % 5000 == 4999) {
+				range = range * 2;
+			}
+		}
+		snapshot();
+		compare(-range, range);
+	}
+
+	@Test
+	public void testResizeWithPendingRemovals() {
+		for (int i = 0; i < 100; i++) {
+			String value = "a" + i;
+			map.put(i, value);
+			reference.put(i, value);
+		}
+		snapshot();
+		// Removals not yet copied to the snapshot must survive the resize
+		for (int i = 0; i < 50; i++) {
+			map.remove(i);
+			reference.remove(i);
+		}
+		for (int i = 1000; i < 3000; i++) {
+			String value = "b" + i;
+			map.put(i, value);
+			reference.put(i, value);
+		}
+		for (int i = 0; i < 50; i++) {
+			assertEquals("a" + i, map.get(i));
+		}
+		compare(0, 3000);
+		snapshot();
+		for (int i = 0; i < 50; i++) {
+			assertNull(map.get(i));
+		}
+		compare(0, 3000);
+
+		// A key removed and put back before the snapshot keeps its new value
+		map.remove(60);
+		reference.remove(60);
+		String value = "c";
+		map.put(60, value);
+		reference.put(60, value);
+		snapshot();
+		assertEquals("c", map.get(60));
+		compare(0, 3000);
+	}
+
+	@Test
+	public void testRemoveAllThenSnapshot() {
+		for (int i = 0; i < 500; i++) {
+			String value = "a" + i;
+			map.put(i * 7919, value);
+			reference.put(i * 7919, value);
+		}
+		snapshot();
+		for (int i = 0; i < 500; i++) {
+			map.remove(i * 7919);
+			reference.remove(i * 7919);
+		}
+		snapshot();
+		assertTrue(map.get().isEmpty());
+		assertTrue(map.getLive().isEmpty());
+		compare(0, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReservedKey() {
+		map.put(SnapshotableIntObjectMap.FREE, "a");
+	}
+
+	@Test
+	public void testReservedKeyIsNeverMapped() {
+		for (int i = 0; i < 10; i++) {
+			map.put(i, "a" + i);
+		}
+		map.copySnapshot();
+		assertNull(map.get(SnapshotableIntObjectMap.FREE));
+		assertNull(map.getLive(SnapshotableIntObjectMap.FREE));
+		assertNull(map.remove(SnapshotableIntObjectMap.FREE));
+		assertFalse(map.remove(SnapshotableIntObjectMap.FREE, "a0"));
+	}
+}